@@ -0,0 +1,29 @@
+package abbot.collection.util.range.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar.  Accepts the usual JMH command line options, but always attaches the GC profiler
+ * so allocation rates are reported, and writes the results as JSON unless another format is requested so runs can be
+ * diffed between releases.
+ */
+public final class BenchmarkRunner {
+    private BenchmarkRunner() {/* static utility */}
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(commandLine.getResultFormat().orElse(ResultFormatType.JSON))
+                .result(commandLine.getResult().orElse("range-utils-benchmarks.json"))
+                .build();
+
+        new Runner(options).run();
+    }
+}
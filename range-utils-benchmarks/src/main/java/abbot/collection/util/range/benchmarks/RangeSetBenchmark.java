@@ -0,0 +1,123 @@
+package abbot.collection.util.range.benchmarks;
+
+import abbot.collection.util.range.BufferedRangeSet;
+import abbot.collection.util.range.RangeSets;
+import abbot.collection.util.range.TreeRangeSet;
+import com.google.common.collect.DiscreteDomains;
+import com.google.common.collect.Range;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import static abbot.collection.util.range.benchmarks.RangeSetState.Implementation.DISCRETE;
+
+/**
+ * Benchmarks of the core {@link TreeRangeSet} operations.  The point queries report the time of a single lookup, while
+ * the whole set operations report the time to process every range in the fixture.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class RangeSetBenchmark {
+
+    /**
+     * A full copy of the fixture set for every invocation, so the ranges can be removed from it.
+     */
+    @State(Scope.Thread)
+    public static class Removal {
+        TreeRangeSet<Long> rangeSet;
+
+        @Setup(Level.Invocation)
+        public void setUp(RangeSetState state) {
+            rangeSet = state.filled(state.ranges);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public TreeRangeSet<Long> add(RangeSetState state) {
+        TreeRangeSet<Long> rangeSet = state.newRangeSet();
+        for (Range<Long> range : state.ranges)
+            rangeSet.add(range);
+
+        return rangeSet;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int addBuffered(RangeSetState state) {
+        BufferedRangeSet<Long> rangeSet = new BufferedRangeSet<Long>(state.newRangeSet());
+        for (Range<Long> range : state.ranges)
+            rangeSet.add(range);
+
+        //Reading the size merges whatever is still buffered, so the full cost is measured.
+        return rangeSet.size();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public TreeRangeSet<Long> remove(RangeSetState state, Removal removal) {
+        for (Range<Long> range : state.ranges)
+            removal.rangeSet.remove(range);
+
+        return removal.rangeSet;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean contains(RangeSetState state) {
+        return state.rangeSet.contains(state.points[state.nextProbe()]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean encloses(RangeSetState state) {
+        return state.rangeSet.encloses(state.windows.get(state.nextProbe()));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void complement(RangeSetState state, Blackhole blackhole) {
+        for (Range<Long> range : state.rangeSet.complement())
+            blackhole.consume(range);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @SuppressWarnings("unchecked")
+    public Object union(RangeSetState state) {
+        if (state.implementation == DISCRETE)
+            return RangeSets.union(DiscreteDomains.longs(), state.rangeSet, state.otherRangeSet);
+
+        return RangeSets.union(state.rangeSet, state.otherRangeSet);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @SuppressWarnings("unchecked")
+    public Object intersection(RangeSetState state) {
+        if (state.implementation == DISCRETE)
+            return RangeSets.intersection(DiscreteDomains.longs(), state.rangeSet, state.otherRangeSet);
+
+        return RangeSets.intersection(state.rangeSet, state.otherRangeSet);
+    }
+}
@@ -0,0 +1,114 @@
+package abbot.collection.util.range.benchmarks;
+
+import abbot.collection.util.range.DiscreteTreeRangeSet;
+import abbot.collection.util.range.TreeRangeSet;
+import com.google.common.collect.DiscreteDomains;
+import com.google.common.collect.Range;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static com.google.common.collect.Ranges.closedOpen;
+
+/**
+ * Shared fixture for the range set benchmarks.  Generates disjoint ranges of 1 to 64 values, separated by gaps whose
+ * average length relative to the ranges is set by the fragmentation, and fills a range set of the chosen implementation
+ * with them.
+ */
+@State(Scope.Benchmark)
+public class RangeSetState {
+
+    public enum Implementation {
+        TREE, DISCRETE
+    }
+
+    public enum Order {
+        SORTED, RANDOM
+    }
+
+    private static final int MAX_RANGE_LENGTH = 64;
+    private static final int PROBES = 1 << 16;
+
+    @Param({"1000", "100000", "10000000"})
+    public int size;
+
+    //Average gap length as a multiple of the average range length.
+    @Param({"0.1", "1", "10"})
+    public double fragmentation;
+
+    @Param({"SORTED", "RANDOM"})
+    public Order order;
+
+    @Param({"TREE", "DISCRETE"})
+    public Implementation implementation;
+
+    public List<Range<Long>> ranges;
+    public List<Range<Long>> otherRanges;
+    public TreeRangeSet<Long> rangeSet;
+    public TreeRangeSet<Long> otherRangeSet;
+
+    public long[] points;
+    public List<Range<Long>> windows;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(size);
+        ranges = generate(random);
+        otherRanges = generate(random);
+
+        rangeSet = filled(ranges);
+        otherRangeSet = filled(otherRanges);
+
+        long span = ranges.get(ranges.size() - 1).upperEndpoint();
+        points = new long[PROBES];
+        windows = new ArrayList<Range<Long>>(PROBES);
+        for (int i = 0; i < PROBES; i++) {
+            points[i] = (long) (random.nextDouble() * span);
+            windows.add(closedOpen(points[i], points[i] + 1 + random.nextInt(MAX_RANGE_LENGTH)));
+        }
+    }
+
+    private List<Range<Long>> generate(Random random) {
+        List<Range<Long>> generated = new ArrayList<Range<Long>>(size);
+        int maxGap = Math.max(1, (int) (fragmentation * MAX_RANGE_LENGTH));
+        long lower = 0;
+        for (int i = 0; i < size; i++) {
+            long upper = lower + 1 + random.nextInt(MAX_RANGE_LENGTH);
+            generated.add(closedOpen(lower, upper));
+            lower = upper + 1 + random.nextInt(maxGap);
+        }
+
+        if (order == Order.RANDOM)
+            Collections.shuffle(generated, random);
+
+        return generated;
+    }
+
+    public TreeRangeSet<Long> newRangeSet() {
+        return (implementation == Implementation.DISCRETE ?
+                new DiscreteTreeRangeSet<Long>(DiscreteDomains.longs()) :
+                new TreeRangeSet<Long>());
+    }
+
+    public TreeRangeSet<Long> filled(List<Range<Long>> ranges) {
+        TreeRangeSet<Long> filled = newRangeSet();
+        filled.addAll(ranges);
+        return filled;
+    }
+
+    /**
+     * Returns the index of the next probe, cycling through them so consecutive calls do not hit the same range.
+     */
+    public int nextProbe() {
+        cursor = (cursor + 1) & (PROBES - 1);
+        return cursor;
+    }
+}
@@ -0,0 +1,146 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.Range;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Skeletal implementation of {@link RangeSet} to minimize the effort required to write a new implementation.  The bulk
+ * operations are all written in terms of the single range operations, so an implementation only needs to provide those
+ * along with {@link #size()}, {@link #iterator()} and friends.
+ * @param <T>
+ */
+public abstract class AbstractRangeSet<T extends Comparable<T>> implements RangeSet<T> {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean add(RangeSet<T> tRangeSet) {
+        return addAll(tRangeSet);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean addAll(Iterable<? extends Range<T>> tRanges) {
+        boolean modified = false;
+        for (Range<T> tRange : tRanges)
+            modified |= add(tRange);
+
+        return modified;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean remove(RangeSet<T> tRangeSet) {
+        return removeAll(tRangeSet);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean removeAll(Iterable<? extends Range<T>> tRanges) {
+        boolean modified = false;
+        for (Range<T> tRange : tRanges)
+            modified |= remove(tRange);
+
+        return modified;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean containsAll(Iterable<? extends T> items) {
+        for (T item : items)
+            if (!contains(item))
+                return false;
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * This implementation scans the ranges in order, so implementations over discrete domains should canonicalize the
+     * range before calling it.
+     */
+    @Override
+    public boolean intersects(Range<T> range) {
+        for (Range<T> current : this) {
+            if (current.isConnected(range) && !current.intersection(range).isEmpty())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Range<T> rangeContaining(T item) {
+        for (Range<T> current : this)
+            if (current.contains(item))
+                return current;
+
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Range<T> span() {
+        Iterator<Range<T>> i = iterator();
+        if (!i.hasNext())
+            throw new NoSuchElementException();
+
+        Range<T> first = i.next();
+        Range<T> last = first;
+        while (i.hasNext())
+            last = i.next();
+
+        return first.span(last);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * This implementation filters the full iterator of this range set, so iterating the view is O(N).
+     */
+    @Override
+    public RangeSet<T> subRangeSet(Range<T> range) {
+        return new SubRangeSetView<T>(this, range) {
+            @Override
+            Iterator<Range<T>> candidates() {
+                return AbstractRangeSet.this.iterator();
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Range<T> range : this)
+            sb.append(range);
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,143 @@
+package abbot.collection.util.range;
+
+import java.io.Serializable;
+import java.util.Comparator;
+
+/**
+ * The balanced binary tree shared by indexes whose nodes also record a summary of their subtree, such as the largest
+ * gap in {@link GapIndex} or the greatest upper bound in {@link IntervalIndex}.
+ *
+ * Nodes are ordered by their key, and every node on the path of an insert or delete, along with every rotated node, has
+ * its height and summary recomputed from its children by {@link Node#augment()}.  Insert and delete are O(log N).
+ */
+final class AugmentedAvlTree {
+
+    private AugmentedAvlTree() {/* static utility */}
+
+    /**
+     * A node of the tree, which subclasses give a key and a summary of their subtree.
+     * @param <K> the key the nodes are ordered by.
+     * @param <N> the node type itself.
+     */
+    abstract static class Node<K, N extends Node<K, N>> implements Serializable {
+        N left;
+        N right;
+        int height = 1;
+
+        abstract K key();
+
+        /**
+         * Recomputes the summary of this node's subtree from the node and its children.
+         */
+        abstract void augment();
+    }
+
+    /**
+     * Returns a node whose key is equal to the key, or null if there is none.
+     */
+    static <K, N extends Node<K, N>> N find(N node, K key, Comparator<? super K> comparator) {
+        while (node != null) {
+            int compare = comparator.compare(key, node.key());
+            if (compare == 0)
+                return node;
+
+            node = (compare < 0 ? node.left : node.right);
+        }
+        return null;
+    }
+
+    /**
+     * Inserts the node, after any nodes with an equal key.
+     * @return the new root of the subtree.
+     */
+    static <K, N extends Node<K, N>> N insert(N node, N added, Comparator<? super K> comparator) {
+        if (node == null)
+            return added;
+
+        if (comparator.compare(added.key(), node.key()) < 0)
+            node.left = insert(node.left, added, comparator);
+        else
+            node.right = insert(node.right, added, comparator);
+
+        return balance(node);
+    }
+
+    /**
+     * Deletes a node whose key is equal to the key, which must be in the subtree.
+     * @return the new root of the subtree.
+     */
+    static <K, N extends Node<K, N>> N delete(N node, K key, Comparator<? super K> comparator) {
+        int compare = comparator.compare(key, node.key());
+        if (compare < 0) {
+            node.left = delete(node.left, key, comparator);
+        } else if (compare > 0) {
+            node.right = delete(node.right, key, comparator);
+        } else {
+            if (node.left == null)
+                return node.right;
+            if (node.right == null)
+                return node.left;
+
+            //Replace the node with the smallest node of its right subtree.
+            N successor = node.right;
+            while (successor.left != null)
+                successor = successor.left;
+
+            successor.right = deleteMin(node.right);
+            successor.left = node.left;
+            node = successor;
+        }
+        return balance(node);
+    }
+
+    private static <K, N extends Node<K, N>> N deleteMin(N node) {
+        if (node.left == null)
+            return node.right;
+
+        node.left = deleteMin(node.left);
+        return balance(node);
+    }
+
+    private static int height(Node<?, ?> node) {
+        return (node == null ? 0 : node.height);
+    }
+
+    private static void update(Node<?, ?> node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        node.augment();
+    }
+
+    private static <K, N extends Node<K, N>> N balance(N node) {
+        update(node);
+        int balance = height(node.left) - height(node.right);
+        if (balance > 1) {
+            if (height(node.left.left) < height(node.left.right))
+                node.left = rotateLeft(node.left);
+            return rotateRight(node);
+        }
+        if (balance < -1) {
+            if (height(node.right.right) < height(node.right.left))
+                node.right = rotateRight(node.right);
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private static <K, N extends Node<K, N>> N rotateLeft(N node) {
+        N right = node.right;
+        node.right = right.left;
+        right.left = node;
+        update(node);
+        update(right);
+        return right;
+    }
+
+    private static <K, N extends Node<K, N>> N rotateRight(N node) {
+        N left = node.left;
+        node.left = left.right;
+        left.right = node;
+        update(node);
+        update(left);
+        return left;
+    }
+}
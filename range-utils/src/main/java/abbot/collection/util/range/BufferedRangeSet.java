@@ -0,0 +1,255 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.Range;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A write buffered decorator for {@link TreeRangeSet}, for workloads made of many small adds and few reads, such as
+ * recording the byte ranges of received packets.
+ *
+ * Adds do not touch the tree.  A range which is connected to the previous one added simply extends it, and any other
+ * range is appended to an unsorted buffer, so an add is O(1).  The buffer is merged into the tree in one pass with
+ * {@link TreeRangeSet#addAll(Iterable)}, which sorts and coalesces the ranges first, when it reaches the flush threshold
+ * or before any other operation.  Every read therefore sees every range added so far.
+ *
+ * Since the tree is not consulted, {@link #add(Range)} returns true for any non empty range, unless the range is
+ * enclosed by the previous range added, even if the range set already contained it.  Views returned by
+ * {@link #asSet()} and {@link #subRangeSet(Range)} are backed by the tree, so they do not see ranges added after they
+ * were created until the buffer is next flushed.  This class is not thread safe.
+ *
+ * @param <T>
+ */
+public class BufferedRangeSet<T extends Comparable<T>> extends AbstractRangeSet<T> {
+
+    private static final int DEFAULT_FLUSH_THRESHOLD = 4096;
+
+    private final TreeRangeSet<T> backing;
+    private final int flushThreshold;
+    private final List<Range<T>> buffer;
+
+    //The most recently added range, which later adds may extend, or null if there is none.
+    private Range<T> pending;
+
+    /**
+     * @param backing the set the buffered ranges are merged into, which should not be modified other than through this
+     * decorator.
+     */
+    public BufferedRangeSet(TreeRangeSet<T> backing) {
+        this(backing, DEFAULT_FLUSH_THRESHOLD);
+    }
+
+    /**
+     * @param backing the set the buffered ranges are merged into, which should not be modified other than through this
+     * decorator.
+     * @param flushThreshold number of buffered ranges which triggers a merge into the tree.
+     * @throws IllegalArgumentException if the threshold is not positive.
+     */
+    public BufferedRangeSet(TreeRangeSet<T> backing, int flushThreshold) {
+        if (flushThreshold <= 0)
+            throw new IllegalArgumentException("Flush threshold must be positive: " + flushThreshold);
+
+        this.backing = backing;
+        this.flushThreshold = flushThreshold;
+        this.buffer = new ArrayList<Range<T>>(Math.min(flushThreshold, DEFAULT_FLUSH_THRESHOLD));
+    }
+
+    /**
+     * Merges every buffered range into the tree.
+     */
+    public void flush() {
+        if (pending != null) {
+            buffer.add(pending);
+            pending = null;
+        }
+        if (!buffer.isEmpty()) {
+            backing.addAll(buffer);
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Returns the number of ranges waiting to be merged into the tree.
+     */
+    public int buffered() {
+        return buffer.size() + (pending == null ? 0 : 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The range is buffered rather than added to the tree.
+     * @return true unless the range is empty or enclosed by the previous range added.
+     */
+    @Override
+    public boolean add(Range<T> tRange) {
+        if (tRange == null || tRange.isEmpty())
+            return false;
+
+        tRange = backing.canonical(tRange);
+        if (tRange.isEmpty())
+            return false;
+
+        if (pending != null && pending.isConnected(tRange)) {
+            if (pending.encloses(tRange))
+                return false;
+
+            pending = pending.span(tRange);
+            return true;
+        }
+
+        if (pending != null) {
+            buffer.add(pending);
+            pending = null;
+            if (buffer.size() >= flushThreshold)
+                flush();
+        }
+        pending = tRange;
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The ranges are merged into the tree along with the buffer.
+     */
+    @Override
+    public boolean addAll(Iterable<? extends Range<T>> tRanges) {
+        flush();
+        return backing.addAll(tRanges);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean remove(Range<T> tRange) {
+        flush();
+        return backing.remove(tRange);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean removeAll(Iterable<? extends Range<T>> tRanges) {
+        flush();
+        return backing.removeAll(tRanges);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        flush();
+        return backing.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        return pending == null && backing.isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(T item) {
+        if (pending != null && pending.contains(item))
+            return true;
+
+        flush();
+        return backing.contains(item);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean encloses(Range<T> range) {
+        flush();
+        return backing.encloses(range);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean intersects(Range<T> range) {
+        flush();
+        return backing.intersects(range);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Range<T> rangeContaining(T item) {
+        flush();
+        return backing.rangeContaining(item);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Range<T> span() {
+        flush();
+        return backing.span();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RangeSet<T> subRangeSet(Range<T> range) {
+        flush();
+        return backing.subRangeSet(range);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The complement is an independent copy, since a view of the tree would miss ranges buffered after it was created.
+     */
+    @Override
+    public RangeSet<T> complement() {
+        flush();
+        return backing.complement().materialize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        pending = null;
+        buffer.clear();
+        backing.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Range<T>> iterator() {
+        flush();
+        return backing.iterator();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Range<T>> asSet() {
+        flush();
+        return backing.asSet();
+    }
+}
@@ -0,0 +1,211 @@
+package abbot.collection.util.range;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Range;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.SortedSet;
+
+import static abbot.collection.util.range.RangeIterators.flip;
+import static com.google.common.collect.Iterators.transform;
+import static com.google.common.collect.Ranges.downTo;
+import static com.google.common.collect.Ranges.upTo;
+
+/**
+ * A live view of the complement of a {@link TreeRangeSet}, as returned by {@link TreeRangeSet#complement()}.
+ *
+ * Nothing is copied when the view is created.  {@link #contains(Comparable)} and {@link #encloses(Range)} are answered
+ * with O(log N) lookups against the backing set, {@link #size()} is derived from the backing set in O(log N), and
+ * iteration generates the gaps between adjacent ranges of the backing set on the fly.  Changes to the backing set are
+ * immediately visible through the view.
+ *
+ * The view is read only, and every method which would modify it throws an {@link UnsupportedOperationException}.  Use
+ * {@link #materialize()} to get an independent copy of the complement which can be modified.
+ *
+ * @param <T>
+ */
+public class ComplementRangeSet<T extends Comparable<T>> extends AbstractRangeSet<T> implements Serializable {
+
+    private final TreeRangeSet<T> backing;
+
+    ComplementRangeSet(TreeRangeSet<T> backing) {
+        this.backing = backing;
+    }
+
+    /**
+     * Creates an independent copy of the complement in O(N).
+     * @return A new range set containing the ranges currently in this view.
+     */
+    public TreeRangeSet<T> materialize() {
+        TreeRangeSet<T> copy = backing.emptyCopy();
+        copy.loadSorted(iterator());
+        return copy;
+    }
+
+    /**
+     * Returns the canonical form of the gap, or null if it is empty.
+     */
+    private Range<T> gap(Range<T> gap) {
+        gap = backing.canonical(gap);
+        return (gap.isEmpty() ? null : gap);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        SortedSet<Range<T>> ranges = backing.asSet();
+        if (ranges.isEmpty())
+            return 1;
+
+        //There is a gap between every pair of ranges, and possibly one before the first and one after the last.
+        int size = ranges.size() - 1;
+        Range<T> first = ranges.first();
+        if (first.hasLowerBound() && gap(upTo(first.lowerEndpoint(), flip(first.lowerBoundType()))) != null)
+            size++;
+
+        Range<T> last = ranges.last();
+        if (last.hasUpperBound() && gap(downTo(last.upperEndpoint(), flip(last.upperBoundType()))) != null)
+            size++;
+
+        return size;
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.
+     * @throws UnsupportedOperationException always; modify a copy from {@link #materialize()} instead.
+     */
+    @Override
+    public boolean add(Range<T> tRange) {
+        throw new UnsupportedOperationException("Complement views are read only, use materialize() for a modifiable copy");
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.
+     * @throws UnsupportedOperationException always; modify a copy from {@link #materialize()} instead.
+     */
+    @Override
+    public boolean addAll(Iterable<? extends Range<T>> tRanges) {
+        throw new UnsupportedOperationException("Complement views are read only, use materialize() for a modifiable copy");
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.
+     * @throws UnsupportedOperationException always; modify a copy from {@link #materialize()} instead.
+     */
+    @Override
+    public boolean remove(Range<T> tRange) {
+        throw new UnsupportedOperationException("Complement views are read only, use materialize() for a modifiable copy");
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.
+     * @throws UnsupportedOperationException always; modify a copy from {@link #materialize()} instead.
+     */
+    @Override
+    public boolean removeAll(Iterable<? extends Range<T>> tRanges) {
+        throw new UnsupportedOperationException("Complement views are read only, use materialize() for a modifiable copy");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(T item) {
+        return !backing.contains(item);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean encloses(Range<T> range) {
+        return !backing.intersects(backing.canonical(range));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean intersects(Range<T> range) {
+        range = backing.canonical(range);
+        return !range.isEmpty() && !backing.encloses(range);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The complement of this view is the backing range set itself.
+     */
+    @Override
+    public TreeRangeSet<T> complement() {
+        return backing;
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.
+     * @throws UnsupportedOperationException always; modify a copy from {@link #materialize()} instead.
+     */
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("Complement views are read only, use materialize() for a modifiable copy");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The iterator generates the gaps of the backing set as it goes and does not support removal.
+     */
+    @Override
+    public Iterator<Range<T>> iterator() {
+        return RangeIterators.coalesce(transform(RangeIterators.complement(backing.iterator()), new Function<Range<T>, Range<T>>() {
+            @Override
+            public Range<T> apply(Range<T> gap) {
+                return backing.canonical(gap);
+            }
+        }));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Range<T>> asSet() {
+        return new AbstractSet<Range<T>>() {
+            @Override
+            public Iterator<Range<T>> iterator() {
+                return ComplementRangeSet.this.iterator();
+            }
+
+            @Override
+            public int size() {
+                return ComplementRangeSet.this.size();
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ComplementRangeSet that = (ComplementRangeSet) o;
+
+        return backing.equals(that.backing);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return ~backing.hashCode();
+    }
+}
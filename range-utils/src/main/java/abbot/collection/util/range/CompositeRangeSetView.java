@@ -0,0 +1,260 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.Range;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static abbot.collection.util.range.RangeComparators.lowerOnlyComparator;
+import static abbot.collection.util.range.RangeIterators.iterators;
+
+/**
+ * Read-only view combining several range sets, as returned by {@link RangeSets#unionView(RangeSet[])} and
+ * {@link RangeSets#intersectionView(RangeSet[])}.
+ *
+ * Nothing is copied when the view is created or queried.  Point and range queries are delegated to the inputs and stop
+ * as soon as the answer is known, and iteration is a streaming merge of the iterators of the inputs.  Because of this
+ * {@link #size()} is O(N) in the total number of ranges of the inputs.  Changes to the inputs are visible through the
+ * view, and every method which would modify the view throws an {@link UnsupportedOperationException}.
+ *
+ * @param <T>
+ */
+abstract class CompositeRangeSetView<T extends Comparable<T>> extends AbstractRangeSet<T> {
+
+    final List<RangeSet<T>> rangeSets;
+    final DiscreteDomain<T> discreteDomain;
+
+    CompositeRangeSetView(List<RangeSet<T>> rangeSets, DiscreteDomain<T> discreteDomain) {
+        this.rangeSets = rangeSets;
+        this.discreteDomain = discreteDomain;
+    }
+
+    /**
+     * Merges the iterators of the inputs.
+     */
+    abstract Iterator<Range<T>> merge(List<Iterator<Range<T>>> iterators);
+
+    List<RangeSet<T>> complements() {
+        List<RangeSet<T>> complements = new ArrayList<RangeSet<T>>(rangeSets.size());
+        for (RangeSet<T> rangeSet : rangeSets)
+            complements.add(rangeSet.complement());
+
+        return complements;
+    }
+
+    Range<T> canonical(Range<T> range) {
+        return (discreteDomain == null ? range : range.canonical(discreteDomain));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Range<T>> iterator() {
+        List<Iterator<Range<T>>> iterators = iterators(rangeSets);
+        if (discreteDomain == null)
+            return merge(iterators);
+
+        return merge(RangeIterators.canonical(iterators, discreteDomain));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (Iterator<Range<T>> i = iterator(); i.hasNext(); i.next())
+            size++;
+
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        return !iterator().hasNext();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean intersects(Range<T> range) {
+        return super.intersects(canonical(range));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Range<T>> asSet() {
+        return new AbstractSet<Range<T>>() {
+            @Override
+            public Iterator<Range<T>> iterator() {
+                return CompositeRangeSetView.this.iterator();
+            }
+
+            @Override
+            public int size() {
+                return CompositeRangeSetView.this.size();
+            }
+        };
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean add(Range<T> tRange) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean addAll(Iterable<? extends Range<T>> tRanges) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean remove(Range<T> tRange) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean removeAll(Iterable<? extends Range<T>> tRanges) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    static final class Union<T extends Comparable<T>> extends CompositeRangeSetView<T> {
+
+        Union(List<RangeSet<T>> rangeSets, DiscreteDomain<T> discreteDomain) {
+            super(rangeSets, discreteDomain);
+        }
+
+        @Override
+        Iterator<Range<T>> merge(List<Iterator<Range<T>>> iterators) {
+            return RangeIterators.union(iterators);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean contains(T item) {
+            for (RangeSet<T> rangeSet : rangeSets)
+                if (rangeSet.contains(item))
+                    return true;
+
+            return false;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * If no single input encloses the range, the merged ranges are streamed until the range is found to be enclosed
+         * or the merge has passed its lower bound.
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean encloses(Range<T> range) {
+            for (RangeSet<T> rangeSet : rangeSets)
+                if (rangeSet.encloses(range))
+                    return true;
+
+            range = canonical(range);
+            for (Iterator<Range<T>> i = iterator(); i.hasNext(); ) {
+                Range<T> merged = i.next();
+                if (lowerOnlyComparator().compare(merged, range) > 0)
+                    return false;
+
+                if (merged.encloses(range))
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * The complement is the intersection view of the complements of the inputs.
+         */
+        @Override
+        public RangeSet<T> complement() {
+            return new Intersection<T>(complements(), discreteDomain);
+        }
+    }
+
+    static final class Intersection<T extends Comparable<T>> extends CompositeRangeSetView<T> {
+
+        Intersection(List<RangeSet<T>> rangeSets, DiscreteDomain<T> discreteDomain) {
+            super(rangeSets, discreteDomain);
+        }
+
+        @Override
+        Iterator<Range<T>> merge(List<Iterator<Range<T>>> iterators) {
+            return RangeIterators.intersection(iterators);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean contains(T item) {
+            for (RangeSet<T> rangeSet : rangeSets)
+                if (!rangeSet.contains(item))
+                    return false;
+
+            return true;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean encloses(Range<T> range) {
+            for (RangeSet<T> rangeSet : rangeSets)
+                if (!rangeSet.encloses(range))
+                    return false;
+
+            return true;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * The complement is the union view of the complements of the inputs.
+         */
+        @Override
+        public RangeSet<T> complement() {
+            return new Union<T>(complements(), discreteDomain);
+        }
+    }
+}
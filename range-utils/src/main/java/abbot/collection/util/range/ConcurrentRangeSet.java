@@ -0,0 +1,286 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Range;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.SortedSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.Arrays.asList;
+
+/**
+ * A thread-safe implementation of {@link RangeSet} whose reads never block.
+ *
+ * The ranges are held in an {@link ImmutableRangeSet} published through a volatile field.  Readers simply load the
+ * current snapshot and binary search it, so {@link #contains(Comparable)} and {@link #encloses(Range)} are wait-free and
+ * scale with the number of cores regardless of any writes in flight.  Writers are serialized by a lock and build a new
+ * snapshot with the change applied, coalescing ranges exactly as {@link TreeRangeSet} does, before swapping it in.
+ * Iterators and {@link #asSet()} views are backed by the snapshot current when they were created, so they are always
+ * consistent and never throw {@link java.util.ConcurrentModificationException}.
+ *
+ * Every write copies the set, making it O(N).  This is intended for read-mostly workloads with occasional updates, and
+ * batches of changes should be applied with {@link #addAll(Iterable)} or {@link #removeAll(Iterable)} to pay that cost
+ * only once.
+ *
+ * @param <T>
+ */
+public class ConcurrentRangeSet<T extends Comparable<T>> extends AbstractRangeSet<T> implements Serializable {
+
+    private final DiscreteDomain<T> discreteDomain;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile ImmutableRangeSet<T> snapshot;
+
+    public ConcurrentRangeSet() {
+        this((DiscreteDomain<T>) null);
+    }
+
+    /**
+     * Creates a range set which canonicalizes all of its ranges using the provided domain.
+     * @param discreteDomain
+     */
+    public ConcurrentRangeSet(DiscreteDomain<T> discreteDomain) {
+        this.discreteDomain = discreteDomain;
+        this.snapshot = ImmutableRangeSet.fromSorted(Iterators.<Range<T>>emptyIterator(), discreteDomain);
+    }
+
+    /**
+     * Creates a range set with the same ranges as the provided range set.  If the provided set is a
+     * {@link DiscreteTreeRangeSet}, {@link ImmutableRangeSet} or ConcurrentRangeSet which canonicalizes its ranges, the
+     * new set uses the same domain.
+     * @param rangeSet
+     */
+    public ConcurrentRangeSet(RangeSet<T> rangeSet) {
+        this(RangeSets.discreteDomainOf(rangeSet), rangeSet);
+    }
+
+    /**
+     * Creates a range set with the same ranges as the provided range set, which canonicalizes all of its ranges using
+     * the provided domain.
+     * @param discreteDomain
+     * @param rangeSet
+     */
+    public ConcurrentRangeSet(DiscreteDomain<T> discreteDomain, RangeSet<T> rangeSet) {
+        this(discreteDomain);
+        addAll(rangeSet);
+    }
+
+    /**
+     * Returns the domain the ranges are canonicalized with, or null if they are not.
+     */
+    DiscreteDomain<T> discreteDomain() {
+        return discreteDomain;
+    }
+
+    /**
+     * Returns the current contents of this range set.  The returned set will not reflect any later changes.
+     * @return an immutable copy of this range set.
+     */
+    public ImmutableRangeSet<T> snapshot() {
+        return snapshot;
+    }
+
+    private Range<T> canonical(Range<T> tRange) {
+        return (discreteDomain == null ? tRange : tRange.canonical(discreteDomain));
+    }
+
+    /**
+     * Publishes the new ranges if they differ from the current ones.  Must be called while holding the write lock.
+     */
+    private boolean publish(Iterator<Range<T>> sorted) {
+        ImmutableRangeSet<T> updated = ImmutableRangeSet.fromSorted(sorted, discreteDomain);
+        if (updated.equals(snapshot))
+            return false;
+
+        snapshot = updated;
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return snapshot.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean add(Range<T> tRange) {
+        if (tRange == null || tRange.isEmpty())
+            return false;
+
+        tRange = canonical(tRange);
+        writeLock.lock();
+        try {
+            ImmutableRangeSet<T> current = snapshot;
+            if (tRange.isEmpty() || current.encloses(tRange))
+                return false;
+
+            return publish(RangeIterators.union(asList(current.iterator(), asList(tRange).iterator())));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean addAll(Iterable<? extends Range<T>> tRanges) {
+        RangeSet<T> batch = RangeSets.copyOf(tRanges);
+        if (batch.isEmpty())
+            return false;
+
+        writeLock.lock();
+        try {
+            return publish(RangeIterators.union(asList(snapshot.iterator(), batch.iterator())));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean remove(Range<T> tRange) {
+        if (tRange == null || tRange.isEmpty())
+            return false;
+
+        tRange = canonical(tRange);
+        writeLock.lock();
+        try {
+            return publish(RangeIterators.difference(snapshot.iterator(), asList(tRange).iterator()));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean removeAll(Iterable<? extends Range<T>> tRanges) {
+        RangeSet<T> batch = RangeSets.copyOf(tRanges);
+        if (batch.isEmpty())
+            return false;
+
+        writeLock.lock();
+        try {
+            return publish(RangeIterators.difference(snapshot.iterator(), batch.iterator()));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(T item) {
+        return snapshot.contains(item);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean encloses(Range<T> range) {
+        return snapshot.encloses(range);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean intersects(Range<T> range) {
+        return snapshot.intersects(range);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Range<T> rangeContaining(T item) {
+        return snapshot.rangeContaining(item);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Range<T> span() {
+        return snapshot.span();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The complement is computed from the current snapshot and will not reflect any later changes.
+     */
+    @Override
+    public ImmutableRangeSet<T> complement() {
+        return snapshot.complement();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        writeLock.lock();
+        try {
+            publish(ImmutableRangeSet.<T>of().iterator());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The iterator is backed by the current snapshot and does not support removal.
+     */
+    @Override
+    public Iterator<Range<T>> iterator() {
+        return snapshot.iterator();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The returned set is backed by the current snapshot and will not reflect any later changes.
+     */
+    @Override
+    public SortedSet<Range<T>> asSet() {
+        return snapshot.asSet();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ConcurrentRangeSet that = (ConcurrentRangeSet) o;
+
+        return snapshot.equals(that.snapshot);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return snapshot.hashCode();
+    }
+}
@@ -2,28 +2,56 @@ package abbot.collection.util.range;
 
 
 import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.DiscreteDomains;
+import com.google.common.collect.ForwardingIterator;
 import com.google.common.collect.Range;
-import com.google.common.collect.Ranges;
+
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+
+import static com.google.common.collect.Ranges.atLeast;
+import static com.google.common.collect.Ranges.closedOpen;
 
 /**
  * An implementation of {@link TreeRangeSet} which handles all required operations to work with {@link DiscreteDomain} ranges
  * such as {@link com.google.common.collect.DiscreteDomains#integers()}.  All of the ranges used within this implementation
  * will be canonicalized using the {@link DiscreteDomain} provided.
+ *
+ * The set also answers allocator queries over its gaps, such as {@link #allocate(long)}, which make it suitable for
+ * tracking allocated IDs or slots.  The first such query builds an index of the gaps in O(N log N), which is then kept
+ * up to date by every add and remove in O(log N) per range affected, so later queries are O(log N).  Bulk operations
+ * which rebuild the set discard the index until it is next needed.
  * @param <T>
  */
 public class DiscreteTreeRangeSet<T extends Comparable<T>> extends TreeRangeSet<T>{
     private final DiscreteDomain<T> discreteDomain;
 
+    //Built on first use by the allocator queries, null until then.
+    private transient GapIndex<T> gaps;
+
     public DiscreteTreeRangeSet(DiscreteDomain<T> discreteDomain) {
         this.discreteDomain = discreteDomain;
     }
 
+    /**
+     * Returns the domain the ranges are canonicalized with.
+     */
+    DiscreteDomain<T> discreteDomain() {
+        return discreteDomain;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public boolean add(Range<T> tRange) {
-        return super.add(tRange.canonical(discreteDomain));
+        Range<T> canonical = tRange.canonical(discreteDomain);
+        boolean modified = super.add(canonical);
+        if (gaps != null && !canonical.isEmpty())
+            updateGaps(canonical);
+
+        return modified;
     }
 
     /**
@@ -31,7 +59,227 @@ public class DiscreteTreeRangeSet<T extends Comparable<T>> extends TreeRangeSet<
      */
     @Override
     public boolean remove(Range<T> tRange) {
-        return super.remove(tRange.canonical(discreteDomain));
+        Range<T> canonical = tRange.canonical(discreteDomain);
+        boolean modified = super.remove(canonical);
+        if (gaps != null && !canonical.isEmpty())
+            updateGaps(canonical);
+
+        return modified;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        super.clear();
+        gaps = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void loadSorted(Iterator<Range<T>> sorted) {
+        super.loadSorted(sorted);
+        gaps = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Range<T>> iterator() {
+        return invalidatingGaps(super.iterator());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Range<T>> descendingIterator() {
+        return invalidatingGaps(super.descendingIterator());
+    }
+
+    /**
+     * Discards the gap index if a range is removed through the iterator.
+     */
+    private Iterator<Range<T>> invalidatingGaps(final Iterator<Range<T>> iterator) {
+        return new ForwardingIterator<Range<T>>() {
+            @Override
+            protected Iterator<Range<T>> delegate() {
+                return iterator;
+            }
+
+            @Override
+            public void remove() {
+                super.remove();
+                gaps = null;
+            }
+        };
+    }
+
+    /**
+     * Finds the first value at or after the provided value which is not in this set, along with the rest of the gap
+     * which follows it.  This is O(log N).
+     * @param value
+     * @return The gap starting at the first free value, or null if every value from the provided value onwards is in
+     * this set.
+     */
+    public Range<T> firstGapAtOrAfter(T value) {
+        T start = value;
+        Range<T> containing = rangeContaining(value);
+        if (containing != null) {
+            if (!containing.hasUpperBound())
+                return null;
+
+            start = containing.upperEndpoint();
+        }
+
+        Range<T> next = higherRange(start);
+        return (next == null ? atLeast(start).canonical(discreteDomain) : closedOpen(start, next.lowerEndpoint()));
+    }
+
+    /**
+     * Finds the lowest gap between the ranges in this set which holds at least size values.  Gaps are searched in
+     * ascending order from the minimum value of the domain, or from the first range if the domain has no minimum.
+     * @param size
+     * @return The whole of the lowest gap which is large enough, or null if there is none.
+     * @throws IllegalArgumentException if the size is not positive.
+     */
+    public Range<T> nextGapOfAtLeast(long size) {
+        if (size <= 0)
+            throw new IllegalArgumentException("Size must be positive: " + size);
+
+        return gaps().firstOfAtLeast(size);
+    }
+
+    /**
+     * Finds the lowest block of size contiguous values which are not in this set and adds it to the set as a single
+     * operation.  Finding the block is O(log N).  Its upper endpoint is computed directly for
+     * {@link DiscreteDomains#longs()} and {@link DiscreteDomains#integers()}, and is found by stepping through any other
+     * domain, which is O(size).  Like the rest of this class, this is not thread safe.
+     * @param size
+     * @return The block which was allocated, or null if no gap is large enough.
+     * @throws IllegalArgumentException if the size is not positive.
+     */
+    public Range<T> allocate(long size) {
+        Range<T> gap = nextGapOfAtLeast(size);
+        if (gap == null)
+            return null;
+
+        T start = gap.lowerEndpoint();
+        T end = offset(start, size);
+        Range<T> block = (end == null ? atLeast(start).canonical(discreteDomain) : closedOpen(start, end));
+        add(block);
+        return block;
+    }
+
+    /**
+     * Returns the value size values after start, or null if that is past the greatest value of the domain.
+     */
+    @SuppressWarnings("unchecked")
+    private T offset(T start, long size) {
+        if (discreteDomain.equals(DiscreteDomains.longs())) {
+            long value = (Long) start;
+            return (value > Long.MAX_VALUE - size ? null : (T) Long.valueOf(value + size));
+        }
+        if (discreteDomain.equals(DiscreteDomains.integers())) {
+            long value = (Integer) start + size;
+            return (value > Integer.MAX_VALUE ? null : (T) Integer.valueOf((int) value));
+        }
+
+        T end = start;
+        for (long i = 0; i < size && end != null; i++)
+            end = discreteDomain.next(end);
+        return end;
+    }
+
+    private GapIndex<T> gaps() {
+        if (gaps == null) {
+            gaps = new GapIndex<T>();
+            addGaps(navigableRanges(), true, true);
+        }
+        return gaps;
+    }
+
+    /**
+     * Replaces the gaps around a range which was just added or removed.  The closest ranges either side which are not
+     * connected to it cannot have been changed, so only the gaps between them need to be recomputed.
+     */
+    private void updateGaps(Range<T> changed) {
+        NavigableSet<Range<T>> ranges = navigableRanges();
+
+        Range<T> before = null;
+        if (changed.hasLowerBound()) {
+            before = floorRange(changed.lowerEndpoint());
+            if (before != null && before.isConnected(changed))
+                before = ranges.lower(before);
+        }
+
+        Range<T> after = null;
+        if (changed.hasUpperBound()) {
+            after = ceilingRange(changed.upperEndpoint());
+            if (after != null && after.isConnected(changed))
+                after = ranges.higher(after);
+        }
+
+        gaps.removeAll(
+                (before == null ? null : before.upperEndpoint()),
+                (after == null ? null : after.lowerEndpoint())
+        );
+
+        NavigableSet<Range<T>> affected = ranges;
+        if (before != null)
+            affected = affected.tailSet(before, true);
+        if (after != null)
+            affected = affected.headSet(after, true);
+
+        addGaps(affected, before == null, after == null);
+    }
+
+    /**
+     * Adds the gaps between the consecutive ranges, along with the gap before the first range if leading is set and the
+     * gap after the last if trailing is set.
+     */
+    private void addGaps(Iterable<Range<T>> ranges, boolean leading, boolean trailing) {
+        T start = (leading ? minValue() : null);
+        for (Range<T> range : ranges) {
+            if (start != null && range.hasLowerBound() && start.compareTo(range.lowerEndpoint()) < 0)
+                gaps.add(start, range.lowerEndpoint(), discreteDomain.distance(start, range.lowerEndpoint()));
+
+            start = (range.hasUpperBound() ? range.upperEndpoint() : null);
+        }
+
+        if (trailing && start != null) {
+            T max = maxValue();
+            long size = (max == null ? Long.MAX_VALUE : discreteDomain.distance(start, max));
+            gaps.add(start, null, (size == Long.MAX_VALUE ? size : size + 1));
+        }
+    }
+
+    private T minValue() {
+        try {
+            return discreteDomain.minValue();
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
+
+    private T maxValue() {
+        try {
+            return discreteDomain.maxValue();
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Range<T> canonical(Range<T> tRange) {
+        return tRange.canonical(discreteDomain);
     }
 
     /**
@@ -46,11 +294,25 @@ public class DiscreteTreeRangeSet<T extends Comparable<T>> extends TreeRangeSet<
      * {@inheritDoc}
      */
     @Override
-    public DiscreteTreeRangeSet<T> complement() {
-        DiscreteTreeRangeSet<T> complement = new DiscreteTreeRangeSet<T>(discreteDomain);
-        complement.add(Ranges.<T>all());
-        complement.remove(this);
-        return complement;
+    public boolean intersects(Range<T> range) {
+        return super.intersects(range.canonical(discreteDomain));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    DiscreteTreeRangeSet<T> emptyCopy() {
+        return new DiscreteTreeRangeSet<T>(discreteDomain);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public ImmutableRangeSet<T> snapshot() {
+        return new ImmutableRangeSet<T>(asSet().toArray(new Range[size()]), discreteDomain);
     }
 
     /**
@@ -0,0 +1,35 @@
+package abbot.collection.util.range;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes and reads the endpoints of ranges for {@link RangeSetCodec}.
+ *
+ * Endpoints are always written in ascending order, and each one is given the endpoint written immediately before it so
+ * that implementations are free to store only the difference between the two.  See {@link EndpointCodecs} for the
+ * standard implementations.
+ *
+ * @param <T>
+ */
+public interface EndpointCodec<T extends Comparable<T>> {
+
+    /**
+     * Writes an endpoint.
+     * @param out
+     * @param previous the endpoint written before this one, or null if this is the first endpoint.
+     * @param endpoint
+     * @throws IOException
+     */
+    void write(DataOutput out, T previous, T endpoint) throws IOException;
+
+    /**
+     * Reads an endpoint written by {@link #write(DataOutput, Comparable, Comparable)}.
+     * @param in
+     * @param previous the endpoint read before this one, or null if this is the first endpoint.
+     * @return the endpoint
+     * @throws IOException
+     */
+    T read(DataInput in, T previous) throws IOException;
+}
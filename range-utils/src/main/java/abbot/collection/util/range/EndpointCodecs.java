@@ -0,0 +1,121 @@
+package abbot.collection.util.range;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+/**
+ * Standard implementations of {@link EndpointCodec}.
+ */
+public class EndpointCodecs {
+
+    private static final EndpointCodec<Long> LONGS = new EndpointCodec<Long>() {
+        @Override
+        public void write(DataOutput out, Long previous, Long endpoint) throws IOException {
+            writeSignedVarLong(out, endpoint - (previous == null ? 0 : previous));
+        }
+
+        @Override
+        public Long read(DataInput in, Long previous) throws IOException {
+            return readSignedVarLong(in) + (previous == null ? 0 : previous);
+        }
+    };
+
+    private static final EndpointCodec<Integer> INTEGERS = new EndpointCodec<Integer>() {
+        @Override
+        public void write(DataOutput out, Integer previous, Integer endpoint) throws IOException {
+            writeSignedVarLong(out, (long) endpoint - (previous == null ? 0 : previous));
+        }
+
+        @Override
+        public Integer read(DataInput in, Integer previous) throws IOException {
+            return (int) (readSignedVarLong(in) + (previous == null ? 0 : previous));
+        }
+    };
+
+    private static final EndpointCodec<String> STRINGS = new EndpointCodec<String>() {
+        @Override
+        public void write(DataOutput out, String previous, String endpoint) throws IOException {
+            int shared = 0;
+            if (previous != null) {
+                int max = Math.min(previous.length(), endpoint.length());
+                while (shared < max && previous.charAt(shared) == endpoint.charAt(shared))
+                    shared++;
+            }
+            writeUnsignedVarLong(out, shared);
+            out.writeUTF(endpoint.substring(shared));
+        }
+
+        @Override
+        public String read(DataInput in, String previous) throws IOException {
+            long shared = readUnsignedVarLong(in);
+            if (shared > (previous == null ? 0 : previous.length()))
+                throw new StreamCorruptedException("Shared prefix longer than the previous endpoint");
+
+            String suffix = in.readUTF();
+            return (shared == 0 ? suffix : previous.substring(0, (int) shared) + suffix);
+        }
+    };
+
+    private EndpointCodecs() {/* static utility */}
+
+    /**
+     * Stores each endpoint as the zigzag encoded varint difference from the previous endpoint, so ranges which are
+     * close together take only a byte or two per endpoint regardless of their magnitude.
+     */
+    public static EndpointCodec<Long> longs() {
+        return LONGS;
+    }
+
+    /**
+     * Stores each endpoint as the zigzag encoded varint difference from the previous endpoint.
+     * @see #longs()
+     */
+    public static EndpointCodec<Integer> integers() {
+        return INTEGERS;
+    }
+
+    /**
+     * Stores each endpoint as the length of the prefix it shares with the previous endpoint followed by the remaining
+     * characters.
+     */
+    public static EndpointCodec<String> strings() {
+        return STRINGS;
+    }
+
+    /**
+     * Writes the value seven bits at a time, least significant first, with the high bit of each byte marking that more
+     * bytes follow.
+     */
+    static void writeUnsignedVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readUnsignedVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+
+    /**
+     * Zigzag encodes the value so that small negative values are as short as small positive ones.
+     */
+    static void writeSignedVarLong(DataOutput out, long value) throws IOException {
+        writeUnsignedVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    static long readSignedVarLong(DataInput in) throws IOException {
+        long value = readUnsignedVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,107 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Range;
+
+import static abbot.collection.util.range.AugmentedAvlTree.delete;
+import static abbot.collection.util.range.AugmentedAvlTree.insert;
+import static com.google.common.collect.Ranges.atLeast;
+import static com.google.common.collect.Ranges.closedOpen;
+
+/**
+ * Index of the free gaps between the ranges of a {@link DiscreteTreeRangeSet}, used to answer allocator queries.
+ *
+ * The gaps are kept in a balanced binary tree ordered by their first value, where every node also records the size of
+ * the largest gap in its subtree.  This allows the lowest gap of at least a given size to be found in O(log N) by
+ * descending only into subtrees which are known to contain one.
+ *
+ * @param <T>
+ */
+final class GapIndex<T extends Comparable<T>> {
+
+    private Node<T> root;
+
+    private static final class Node<T extends Comparable<T>> extends AugmentedAvlTree.Node<T, Node<T>> {
+        final T start;
+        final T end;
+        final long size;
+        long maxSize;
+
+        Node(T start, T end, long size) {
+            this.start = start;
+            this.end = end;
+            this.size = size;
+            this.maxSize = size;
+        }
+
+        Range<T> gap() {
+            return (end == null ? atLeast(start) : closedOpen(start, end));
+        }
+
+        @Override
+        T key() {
+            return start;
+        }
+
+        /**
+         * Recomputes the largest gap in the subtree.
+         */
+        @Override
+        void augment() {
+            maxSize = size;
+            if (left != null)
+                maxSize = Math.max(maxSize, left.maxSize);
+            if (right != null)
+                maxSize = Math.max(maxSize, right.maxSize);
+        }
+    }
+
+    /**
+     * Adds the gap [start, end), or [start, +inf) if end is null, which holds size values.
+     */
+    void add(T start, T end, long size) {
+        root = insert(root, new Node<T>(start, end, size), Ordering.<T>natural());
+    }
+
+    /**
+     * Removes every gap whose first value is at or above from and below to.  A null bound is unbounded.
+     */
+    void removeAll(T from, T to) {
+        Node<T> node;
+        while ((node = ceiling(from)) != null && (to == null || node.start.compareTo(to) < 0))
+            root = delete(root, node.start, Ordering.<T>natural());
+    }
+
+    void clear() {
+        root = null;
+    }
+
+    /**
+     * Returns the lowest gap holding at least size values, or null if there is none.
+     */
+    Range<T> firstOfAtLeast(long size) {
+        Node<T> node = root;
+        while (node != null && node.maxSize >= size) {
+            if (node.left != null && node.left.maxSize >= size)
+                node = node.left;
+            else if (node.size >= size)
+                return node.gap();
+            else
+                node = node.right;
+        }
+        return null;
+    }
+
+    private Node<T> ceiling(T value) {
+        Node<T> ceiling = null;
+        for (Node<T> node = root; node != null; ) {
+            if (value == null || node.start.compareTo(value) >= 0) {
+                ceiling = node;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return ceiling;
+    }
+}
@@ -0,0 +1,299 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.Range;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+import static abbot.collection.util.range.RangeComparators.lowerOnlyComparator;
+import static com.google.common.base.Objects.equal;
+import static com.google.common.collect.BoundType.CLOSED;
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * Immutable implementation of {@link RangeSet} which stores its ranges in a sorted array.
+ *
+ * The array allows {@link #contains(Comparable)} and {@link #encloses(Range)} to be answered by a binary search over the
+ * range endpoints without walking tree nodes, and since nothing can change once the set is built it can be shared
+ * between threads without any locking.  Every method which would modify the set throws an
+ * {@link UnsupportedOperationException}.
+ *
+ * Instances are created with {@link #copyOf(RangeSet)} or {@link TreeRangeSet#snapshot()}.
+ *
+ * @param <T>
+ */
+public final class ImmutableRangeSet<T extends Comparable<T>> extends AbstractRangeSet<T> implements Serializable {
+
+    private final Range<T>[] ranges;
+    private final DiscreteDomain<T> discreteDomain;
+
+    /**
+     * @param ranges sorted, disjoint and coalesced ranges.  The array is not copied so it must not be modified.
+     * @param discreteDomain domain used to canonicalize ranges, or null if the ranges are not discrete.
+     */
+    ImmutableRangeSet(Range<T>[] ranges, DiscreteDomain<T> discreteDomain) {
+        this.ranges = ranges;
+        this.discreteDomain = discreteDomain;
+    }
+
+    /**
+     * Returns the domain the ranges are canonicalized with, or null if the ranges are not discrete.
+     */
+    DiscreteDomain<T> discreteDomain() {
+        return discreteDomain;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T extends Comparable<T>> ImmutableRangeSet<T> fromSorted(Iterator<Range<T>> sorted, DiscreteDomain<T> discreteDomain) {
+        if (discreteDomain != null)
+            sorted = RangeIterators.canonical(sorted, discreteDomain);
+
+        List<Range<T>> ranges = newArrayList(RangeIterators.coalesce(sorted));
+        return new ImmutableRangeSet<T>(ranges.toArray(new Range[ranges.size()]), discreteDomain);
+    }
+
+    /**
+     * Returns an empty immutable range set.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Comparable<T>> ImmutableRangeSet<T> of() {
+        return new ImmutableRangeSet<T>(new Range[0], null);
+    }
+
+    /**
+     * Returns an immutable copy of the provided range set.  If the range set canonicalizes its ranges, such as a
+     * {@link DiscreteTreeRangeSet}, {@link ConcurrentRangeSet} or {@link ShardedRangeSet} created with a domain, the copy
+     * will canonicalize ranges using the same domain.
+     */
+    public static <T extends Comparable<T>> ImmutableRangeSet<T> copyOf(RangeSet<T> rangeSet) {
+        if (rangeSet instanceof ImmutableRangeSet)
+            return (ImmutableRangeSet<T>) rangeSet;
+
+        if (rangeSet instanceof TreeRangeSet)
+            return ((TreeRangeSet<T>) rangeSet).snapshot();
+
+        if (rangeSet instanceof ConcurrentRangeSet)
+            return ((ConcurrentRangeSet<T>) rangeSet).snapshot();
+
+        return fromSorted(rangeSet.iterator(), RangeSets.discreteDomainOf(rangeSet));
+    }
+
+    /**
+     * Returns an immutable copy of the provided range set with every range canonicalized using the domain.
+     */
+    public static <T extends Comparable<T>> ImmutableRangeSet<T> copyOf(DiscreteDomain<T> domain, RangeSet<T> rangeSet) {
+        return fromSorted(rangeSet.iterator(), domain);
+    }
+
+    /**
+     * Returns the index of the last range whose lower bound is at or below the item, or -1 if there is none.
+     */
+    private int floorIndex(T item) {
+        int low = 0;
+        int high = ranges.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Range<T> range = ranges[mid];
+
+            int compare = (range.hasLowerBound() ? range.lowerEndpoint().compareTo(item) : -1);
+            if (compare < 0 || (compare == 0 && range.lowerBoundType() == CLOSED))
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        return high;
+    }
+
+    /**
+     * Returns the index of the last range whose lower bound is at or below the lower bound of the given range, or -1 if
+     * there is none.
+     */
+    @SuppressWarnings("unchecked")
+    private int floorIndex(Range<T> range) {
+        int index = Arrays.binarySearch(ranges, range, lowerOnlyComparator());
+        return (index >= 0 ? index : -index - 2);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return ranges.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(T item) {
+        int index = floorIndex(item);
+        return index >= 0 && ranges[index].contains(item);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean encloses(Range<T> range) {
+        if (discreteDomain != null)
+            range = range.canonical(discreteDomain);
+
+        int index = floorIndex(range);
+        return index >= 0 && ranges[index].encloses(range);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean intersects(Range<T> range) {
+        if (discreteDomain != null)
+            range = range.canonical(discreteDomain);
+
+        //Only the range at or before the lower bound and the one after it can intersect without it being enclosed.
+        int index = floorIndex(range);
+        for (int i = Math.max(index, 0); i <= index + 1 && i < ranges.length; i++)
+            if (ranges[i].isConnected(range) && !ranges[i].intersection(range).isEmpty())
+                return true;
+
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Range<T> rangeContaining(T item) {
+        int index = floorIndex(item);
+        return (index >= 0 && ranges[index].contains(item) ? ranges[index] : null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Range<T> span() {
+        if (ranges.length == 0)
+            throw new NoSuchElementException();
+
+        return ranges[0].span(ranges[ranges.length - 1]);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ImmutableRangeSet<T> complement() {
+        return fromSorted(RangeIterators.complement(iterator()), discreteDomain);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Range<T>> iterator() {
+        return asSet().iterator();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The returned set is a read-only view over the same array backing this range set.
+     */
+    @Override
+    public SortedSet<Range<T>> asSet() {
+        return new SortedRangeArray<T>(ranges);
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean add(Range<T> tRange) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean add(RangeSet<T> tRangeSet) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean addAll(Iterable<? extends Range<T>> tRanges) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean remove(Range<T> tRange) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean remove(RangeSet<T> tRangeSet) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean removeAll(Iterable<? extends Range<T>> tRanges) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ImmutableRangeSet that = (ImmutableRangeSet) o;
+
+        return Arrays.equals(ranges, that.ranges) && equal(discreteDomain, that.discreteDomain);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int result = Arrays.hashCode(ranges);
+        result = 31 * result + (discreteDomain != null ? discreteDomain.hashCode() : 0);
+        return result;
+    }
+}
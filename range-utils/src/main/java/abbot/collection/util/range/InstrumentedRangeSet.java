@@ -0,0 +1,297 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.Range;
+
+import java.util.Iterator;
+import java.util.Set;
+
+import static abbot.collection.util.range.RangeSetMetrics.Operation.*;
+
+/**
+ * A decorator for any {@link RangeSet} which reports the latency of {@link #add(Range)}, {@link #remove(Range)},
+ * {@link #contains(Comparable)}, {@link #encloses(Range)} and {@link #complement()} to a {@link RangeSetMetrics} sink,
+ * along with how each change merged or split ranges and the resulting range count and estimated heap.  This makes it
+ * possible to see when a set has become fragmented, or when adds are coalescing many ranges at a time.
+ *
+ * Merges and splits are derived from the range count before and after each change, so they are exact for single range
+ * adds and removes.  Bulk adds and removes only report their latency and the resulting size.  Changes made through
+ * iterators or {@link #subRangeSet(Range)} views go straight to the decorated set and are not measured.
+ *
+ * The range count is only read when it is cheap and consistent with the change, which is the case for
+ * {@link TreeRangeSet} and its subclasses and for {@link LongRangeSet}.  For any other set, such as a
+ * {@link BufferedRangeSet} whose size forces a flush or a {@link ConcurrentRangeSet} which other threads are changing,
+ * only latencies are reported.
+ *
+ * Instrumentation can be turned off with {@link #setEnabled(boolean)}, after which every call is forwarded with nothing
+ * more than a volatile read.
+ *
+ * @param <T>
+ */
+public class InstrumentedRangeSet<T extends Comparable<T>> extends AbstractRangeSet<T> {
+
+    private final RangeSet<T> delegate;
+    private final RangeSetMetrics metrics;
+    private final int bytesPerRange;
+    private final boolean countsRanges;
+    private volatile boolean enabled = true;
+
+    /**
+     * @param delegate the range set to measure, which should not be modified other than through this decorator.
+     * @param metrics receives the measurements.
+     */
+    public InstrumentedRangeSet(RangeSet<T> delegate, RangeSetMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.bytesPerRange = estimateBytesPerRange(delegate);
+        this.countsRanges = (delegate instanceof TreeRangeSet || delegate instanceof LongRangeSet);
+    }
+
+    /**
+     * Returns a rough estimate of the heap used by each range in the set, on a 64 bit JVM with compressed pointers.
+     */
+    private static int estimateBytesPerRange(RangeSet<?> rangeSet) {
+        //Two primitive longs per range.
+        if (rangeSet instanceof LongRangeSet)
+            return 16;
+
+        //An array slot per range, with the Range, its two Cuts and two boxed endpoints.
+        if (rangeSet instanceof ImmutableRangeSet || rangeSet instanceof ConcurrentRangeSet)
+            return 92;
+
+        //A tree entry per range along with the Range, its two Cuts and two boxed endpoints.
+        return 128;
+    }
+
+    /**
+     * Turns instrumentation on or off.  It is on when the decorator is created.
+     * @param enabled
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns true if operations are currently being measured.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns a rough estimate of the heap retained by the ranges in the set.  The estimate assumes boxed endpoints are
+     * not shared and does not account for spare capacity.
+     * @return the estimate in bytes.
+     */
+    public long estimatedRetainedBytes() {
+        return (long) delegate.size() * bytesPerRange;
+    }
+
+    private void recordSize(int rangeCount) {
+        metrics.recordSize(rangeCount, (long) rangeCount * bytesPerRange);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        return delegate.isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean add(Range<T> tRange) {
+        if (!enabled)
+            return delegate.add(tRange);
+
+        int before = (countsRanges ? delegate.size() : 0);
+        long start = System.nanoTime();
+        boolean modified = delegate.add(tRange);
+        metrics.recordLatency(ADD, System.nanoTime() - start);
+
+        if (modified && countsRanges) {
+            int after = delegate.size();
+            metrics.recordMutation(ADD, before + 1 - after, 0);
+            recordSize(after);
+        }
+        return modified;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean addAll(Iterable<? extends Range<T>> tRanges) {
+        if (!enabled)
+            return delegate.addAll(tRanges);
+
+        long start = System.nanoTime();
+        boolean modified = delegate.addAll(tRanges);
+        metrics.recordLatency(ADD, System.nanoTime() - start);
+
+        if (modified && countsRanges)
+            recordSize(delegate.size());
+
+        return modified;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean remove(Range<T> tRange) {
+        if (!enabled)
+            return delegate.remove(tRange);
+
+        int before = (countsRanges ? delegate.size() : 0);
+        long start = System.nanoTime();
+        boolean modified = delegate.remove(tRange);
+        metrics.recordLatency(REMOVE, System.nanoTime() - start);
+
+        if (modified && countsRanges) {
+            //A single range can only grow the count by splitting one range in two.
+            int after = delegate.size();
+            metrics.recordMutation(REMOVE, 0, (after > before ? 1 : 0));
+            recordSize(after);
+        }
+        return modified;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean removeAll(Iterable<? extends Range<T>> tRanges) {
+        if (!enabled)
+            return delegate.removeAll(tRanges);
+
+        long start = System.nanoTime();
+        boolean modified = delegate.removeAll(tRanges);
+        metrics.recordLatency(REMOVE, System.nanoTime() - start);
+
+        if (modified && countsRanges)
+            recordSize(delegate.size());
+
+        return modified;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(T item) {
+        if (!enabled)
+            return delegate.contains(item);
+
+        long start = System.nanoTime();
+        boolean contains = delegate.contains(item);
+        metrics.recordLatency(CONTAINS, System.nanoTime() - start);
+        return contains;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean encloses(Range<T> range) {
+        if (!enabled)
+            return delegate.encloses(range);
+
+        long start = System.nanoTime();
+        boolean encloses = delegate.encloses(range);
+        metrics.recordLatency(ENCLOSES, System.nanoTime() - start);
+        return encloses;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The complement is returned from the decorated set as is, and is not itself instrumented.
+     */
+    @Override
+    public RangeSet<T> complement() {
+        if (!enabled)
+            return delegate.complement();
+
+        long start = System.nanoTime();
+        RangeSet<T> complement = delegate.complement();
+        metrics.recordLatency(COMPLEMENT, System.nanoTime() - start);
+        return complement;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean intersects(Range<T> range) {
+        return delegate.intersects(range);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Range<T> rangeContaining(T item) {
+        return delegate.rangeContaining(item);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Range<T> span() {
+        return delegate.span();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RangeSet<T> subRangeSet(Range<T> range) {
+        return delegate.subRangeSet(range);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        delegate.clear();
+        if (enabled)
+            recordSize(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Range<T>> iterator() {
+        return delegate.iterator();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Range<T>> asSet() {
+        return delegate.asSet();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
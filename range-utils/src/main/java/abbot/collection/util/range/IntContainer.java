@@ -0,0 +1,687 @@
+package abbot.collection.util.range;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Holds the low 16 bits of the values in a single 64K chunk of an {@link IntRangeSet}.
+ *
+ * There are three representations: a sorted array of values for sparse chunks, a bitmap of 1024 words for dense chunks,
+ * and a list of runs for chunks made up of long ranges.  {@link #fromWords(long[])} picks whichever is smallest.
+ * Every operation returns the resulting container, or null when the result is empty.
+ *
+ * Run containers are immutable.  Array and bitmap containers are updated in place by {@link #add(int, int)} and
+ * {@link #remove(int, int)}, and only change representation when the array grows past {@link #ARRAY_MAX} values or the
+ * bitmap shrinks to it.  A container which is handed to another range set must be marked with {@link #share()}, after
+ * which add and remove return a modified copy and leave it untouched.
+ */
+abstract class IntContainer implements Serializable {
+
+    static final int SIZE = 1 << 16;
+    static final int MAX = SIZE - 1;
+    static final int WORDS = SIZE / 64;
+    static final int ARRAY_MAX = 4096;
+
+    static final IntContainer FULL = new RunContainer(new char[]{0}, new char[]{MAX}, 1);
+
+    abstract boolean contains(int value);
+
+    abstract int cardinality();
+
+    abstract int runCount();
+
+    /**
+     * Returns the first value at or after from in this container, or -1 if there is none.
+     */
+    abstract int nextSetBit(int from);
+
+    /**
+     * Returns the first value at or after from which is not in this container, or {@link #SIZE} if there is none.
+     */
+    abstract int nextClearBit(int from);
+
+    /**
+     * Sets the bit of every value in this container in the words.
+     */
+    abstract void orInto(long[] words);
+
+    long[] toWords() {
+        long[] words = new long[WORDS];
+        orInto(words);
+        return words;
+    }
+
+    boolean isFull() {
+        return nextClearBit(0) == SIZE;
+    }
+
+    /**
+     * Marks this container as used by more than one range set, so it will not be modified in place.
+     */
+    IntContainer share() {
+        return this;
+    }
+
+    IntContainer add(int first, int last) {
+        long[] words = toWords();
+        setRange(words, first, last);
+        return fromWords(words);
+    }
+
+    IntContainer remove(int first, int last) {
+        long[] words = toWords();
+        clearRange(words, first, last);
+        return fromWords(words);
+    }
+
+    IntContainer or(IntContainer other) {
+        if (isFull() || other.isFull())
+            return FULL;
+
+        long[] words = toWords();
+        other.orInto(words);
+        return fromWords(words);
+    }
+
+    IntContainer and(IntContainer other) {
+        long[] words = toWords();
+        long[] otherWords = other.toWords();
+        for (int i = 0; i < WORDS; i++)
+            words[i] &= otherWords[i];
+
+        return fromWords(words);
+    }
+
+    IntContainer andNot(IntContainer other) {
+        long[] words = toWords();
+        long[] otherWords = other.toWords();
+        for (int i = 0; i < WORDS; i++)
+            words[i] &= ~otherWords[i];
+
+        return fromWords(words);
+    }
+
+    IntContainer not() {
+        long[] words = toWords();
+        for (int i = 0; i < WORDS; i++)
+            words[i] = ~words[i];
+
+        return fromWords(words);
+    }
+
+    /**
+     * Creates a container holding the values from first to last inclusive.
+     */
+    static IntContainer range(int first, int last) {
+        if (first == 0 && last == MAX)
+            return FULL;
+
+        return new RunContainer(new char[]{(char) first}, new char[]{(char) last}, 1);
+    }
+
+    static void setRange(long[] words, int first, int last) {
+        int firstWord = first >>> 6;
+        int lastWord = last >>> 6;
+        long firstMask = -1L << first;
+        long lastMask = -1L >>> (63 - (last & 63));
+        if (firstWord == lastWord) {
+            words[firstWord] |= firstMask & lastMask;
+            return;
+        }
+
+        words[firstWord] |= firstMask;
+        for (int i = firstWord + 1; i < lastWord; i++)
+            words[i] = -1L;
+        words[lastWord] |= lastMask;
+    }
+
+    static void clearRange(long[] words, int first, int last) {
+        int firstWord = first >>> 6;
+        int lastWord = last >>> 6;
+        long firstMask = -1L << first;
+        long lastMask = -1L >>> (63 - (last & 63));
+        if (firstWord == lastWord) {
+            words[firstWord] &= ~(firstMask & lastMask);
+            return;
+        }
+
+        words[firstWord] &= ~firstMask;
+        for (int i = firstWord + 1; i < lastWord; i++)
+            words[i] = 0;
+        words[lastWord] &= ~lastMask;
+    }
+
+    /**
+     * Counts the bits set in the words from first to last inclusive.
+     */
+    static int countRange(long[] words, int first, int last) {
+        int firstWord = first >>> 6;
+        int lastWord = last >>> 6;
+        long firstMask = -1L << first;
+        long lastMask = -1L >>> (63 - (last & 63));
+        if (firstWord == lastWord)
+            return Long.bitCount(words[firstWord] & firstMask & lastMask);
+
+        int count = Long.bitCount(words[firstWord] & firstMask);
+        for (int i = firstWord + 1; i < lastWord; i++)
+            count += Long.bitCount(words[i]);
+        return count + Long.bitCount(words[lastWord] & lastMask);
+    }
+
+    static int nextSetBit(long[] words, int from) {
+        if (from >= SIZE)
+            return -1;
+
+        int index = from >>> 6;
+        long word = words[index] & (-1L << from);
+        while (word == 0) {
+            if (++index == WORDS)
+                return -1;
+            word = words[index];
+        }
+        return (index << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    static int nextClearBit(long[] words, int from) {
+        if (from >= SIZE)
+            return SIZE;
+
+        int index = from >>> 6;
+        long word = ~words[index] & (-1L << from);
+        while (word == 0) {
+            if (++index == WORDS)
+                return SIZE;
+            word = ~words[index];
+        }
+        return (index << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Counts the runs in the words, which is the number of set bits whose preceding bit is clear.
+     */
+    static int runCount(long[] words) {
+        int runs = 0;
+        long carry = 0;
+        for (long word : words) {
+            runs += Long.bitCount(word & ~((word << 1) | carry));
+            carry = word >>> 63;
+        }
+        return runs;
+    }
+
+    /**
+     * Creates the smallest container holding the values set in the words, or returns null if no values are set.  The
+     * words may be used by the container and must not be modified afterwards.
+     */
+    static IntContainer fromWords(long[] words) {
+        int cardinality = 0;
+        for (long word : words)
+            cardinality += Long.bitCount(word);
+
+        if (cardinality == 0)
+            return null;
+
+        int runs = runCount(words);
+        if (4 * runs <= Math.min(2 * cardinality, 8 * WORDS))
+            return RunContainer.fromWords(words, runs);
+
+        if (cardinality <= ARRAY_MAX)
+            return ArrayContainer.fromWords(words, cardinality);
+
+        return new BitmapContainer(words, cardinality);
+    }
+
+    /**
+     * Containers are equal if they hold the same values, regardless of their representation.
+     */
+    @Override
+    public final boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof IntContainer)) return false;
+
+        IntContainer that = (IntContainer) o;
+        int position = 0;
+        while (true) {
+            int start = nextSetBit(position);
+            if (start != that.nextSetBit(position))
+                return false;
+            if (start == -1)
+                return true;
+
+            position = nextClearBit(start);
+            if (position != that.nextClearBit(start))
+                return false;
+        }
+    }
+
+    @Override
+    public final int hashCode() {
+        int hash = 1;
+        for (int start = nextSetBit(0); start != -1; ) {
+            int end = nextClearBit(start);
+            hash = 31 * (31 * hash + start) + end;
+            start = nextSetBit(end);
+        }
+        return hash;
+    }
+
+    static final class ArrayContainer extends IntContainer {
+
+        private char[] values;
+        private int cardinality;
+        private boolean shared;
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        static ArrayContainer fromWords(long[] words, int cardinality) {
+            char[] values = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < WORDS; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1)
+                    values[count++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+            }
+            return new ArrayContainer(values, cardinality);
+        }
+
+        @Override
+        boolean contains(int value) {
+            return Arrays.binarySearch(values, 0, cardinality, (char) value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int runCount() {
+            int runs = 0;
+            for (int i = 0; i < cardinality; i++)
+                if (i == 0 || values[i] != values[i - 1] + 1)
+                    runs++;
+
+            return runs;
+        }
+
+        @Override
+        int nextSetBit(int from) {
+            if (from >= SIZE)
+                return -1;
+
+            int index = Arrays.binarySearch(values, 0, cardinality, (char) from);
+            if (index >= 0)
+                return from;
+
+            index = -index - 1;
+            return (index < cardinality ? values[index] : -1);
+        }
+
+        @Override
+        int nextClearBit(int from) {
+            if (from >= SIZE)
+                return SIZE;
+
+            int index = Arrays.binarySearch(values, 0, cardinality, (char) from);
+            if (index < 0)
+                return from;
+
+            while (index + 1 < cardinality && values[index + 1] == values[index] + 1)
+                index++;
+
+            return values[index] + 1;
+        }
+
+        @Override
+        void orInto(long[] words) {
+            for (int i = 0; i < cardinality; i++)
+                words[values[i] >>> 6] |= 1L << values[i];
+        }
+
+        @Override
+        IntContainer share() {
+            shared = true;
+            return this;
+        }
+
+        /**
+         * Returns the index of the first value at or above the value, or the cardinality if there is none.
+         */
+        private int ceilingIndex(int value) {
+            if (value > MAX)
+                return cardinality;
+
+            int index = Arrays.binarySearch(values, 0, cardinality, (char) value);
+            return (index >= 0 ? index : -index - 1);
+        }
+
+        @Override
+        IntContainer add(int first, int last) {
+            //Values from index from up to to already lie within the range and are replaced by it.
+            int from = ceilingIndex(first);
+            int to = ceilingIndex(last + 1);
+            int added = last - first + 1;
+            if (to - from == added)
+                return this;
+
+            int size = cardinality - (to - from) + added;
+            if (size > ARRAY_MAX)
+                return super.add(first, last);
+
+            char[] target = values;
+            if (shared || size > values.length) {
+                target = new char[Math.min(Math.max(size, values.length + (values.length >> 1) + 1), ARRAY_MAX)];
+                System.arraycopy(values, 0, target, 0, from);
+            }
+            System.arraycopy(values, to, target, from + added, cardinality - to);
+            for (int i = 0; i < added; i++)
+                target[from + i] = (char) (first + i);
+
+            if (shared)
+                return new ArrayContainer(target, size);
+
+            values = target;
+            cardinality = size;
+            return this;
+        }
+
+        @Override
+        IntContainer remove(int first, int last) {
+            int from = ceilingIndex(first);
+            int to = ceilingIndex(last + 1);
+            if (from == to)
+                return this;
+            if (to - from == cardinality)
+                return null;
+
+            int size = cardinality - (to - from);
+            if (shared) {
+                char[] target = new char[size];
+                System.arraycopy(values, 0, target, 0, from);
+                System.arraycopy(values, to, target, from, cardinality - to);
+                return new ArrayContainer(target, size);
+            }
+
+            System.arraycopy(values, to, values, from, cardinality - to);
+            cardinality = size;
+            return this;
+        }
+    }
+
+    static final class BitmapContainer extends IntContainer {
+
+        private long[] words;
+        private int cardinality;
+        private boolean shared;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        boolean contains(int value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int runCount() {
+            return runCount(words);
+        }
+
+        @Override
+        int nextSetBit(int from) {
+            return nextSetBit(words, from);
+        }
+
+        @Override
+        int nextClearBit(int from) {
+            return nextClearBit(words, from);
+        }
+
+        @Override
+        void orInto(long[] words) {
+            for (int i = 0; i < WORDS; i++)
+                words[i] |= this.words[i];
+        }
+
+        @Override
+        long[] toWords() {
+            return words.clone();
+        }
+
+        @Override
+        IntContainer share() {
+            shared = true;
+            return this;
+        }
+
+        /**
+         * Returns this container if it can be modified in place, or a copy of it otherwise.
+         */
+        private BitmapContainer writable() {
+            return (shared ? new BitmapContainer(words.clone(), cardinality) : this);
+        }
+
+        @Override
+        IntContainer add(int first, int last) {
+            int missing = last - first + 1 - countRange(words, first, last);
+            if (missing == 0)
+                return this;
+
+            BitmapContainer target = writable();
+            setRange(target.words, first, last);
+            target.cardinality += missing;
+            return target;
+        }
+
+        @Override
+        IntContainer remove(int first, int last) {
+            int present = countRange(words, first, last);
+            if (present == 0)
+                return this;
+            if (present == cardinality)
+                return null;
+
+            //Switch back to an array once the values fit in one, reading the words before they are cleared in place.
+            if (cardinality - present <= ARRAY_MAX) {
+                long[] remaining = words.clone();
+                clearRange(remaining, first, last);
+                return ArrayContainer.fromWords(remaining, cardinality - present);
+            }
+
+            BitmapContainer target = writable();
+            clearRange(target.words, first, last);
+            target.cardinality -= present;
+            return target;
+        }
+    }
+
+    /**
+     * Holds disjoint, non-adjacent runs of values as sorted inclusive start and end pairs.  Adding and removing ranges
+     * splices the runs directly rather than going through a bitmap.
+     */
+    static final class RunContainer extends IntContainer {
+
+        private final char[] starts;
+        private final char[] ends;
+        private final int runs;
+
+        RunContainer(char[] starts, char[] ends, int runs) {
+            this.starts = starts;
+            this.ends = ends;
+            this.runs = runs;
+        }
+
+        static RunContainer fromWords(long[] words, int runs) {
+            char[] starts = new char[runs];
+            char[] ends = new char[runs];
+            int count = 0;
+            for (int start = nextSetBit(words, 0); start != -1; ) {
+                int end = nextClearBit(words, start);
+                starts[count] = (char) start;
+                ends[count] = (char) (end - 1);
+                count++;
+                start = nextSetBit(words, end);
+            }
+            return new RunContainer(starts, ends, runs);
+        }
+
+        /**
+         * Returns the index of the last run starting at or before the value, or -1 if there is none.
+         */
+        private int floorIndex(int value) {
+            int low = 0;
+            int high = runs - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (starts[mid] <= value)
+                    low = mid + 1;
+                else
+                    high = mid - 1;
+            }
+            return high;
+        }
+
+        @Override
+        boolean contains(int value) {
+            int index = floorIndex(value);
+            return index >= 0 && ends[index] >= value;
+        }
+
+        @Override
+        int cardinality() {
+            int cardinality = 0;
+            for (int i = 0; i < runs; i++)
+                cardinality += ends[i] - starts[i] + 1;
+
+            return cardinality;
+        }
+
+        @Override
+        int runCount() {
+            return runs;
+        }
+
+        @Override
+        int nextSetBit(int from) {
+            if (from >= SIZE)
+                return -1;
+
+            int index = floorIndex(from);
+            if (index >= 0 && ends[index] >= from)
+                return from;
+
+            return (index + 1 < runs ? starts[index + 1] : -1);
+        }
+
+        @Override
+        int nextClearBit(int from) {
+            if (from >= SIZE)
+                return SIZE;
+
+            int index = floorIndex(from);
+            return (index >= 0 && ends[index] >= from ? ends[index] + 1 : from);
+        }
+
+        @Override
+        void orInto(long[] words) {
+            for (int i = 0; i < runs; i++)
+                setRange(words, starts[i], ends[i]);
+        }
+
+        @Override
+        boolean isFull() {
+            return runs == 1 && starts[0] == 0 && ends[0] == MAX;
+        }
+
+        /**
+         * Replaces the runs from index from up to to with the provided runs.
+         */
+        private IntContainer splice(int from, int to, char[] newStarts, char[] newEnds, int count) {
+            int size = runs - (to - from) + count;
+            if (size == 0)
+                return null;
+
+            char[] starts = new char[size];
+            char[] ends = new char[size];
+            System.arraycopy(this.starts, 0, starts, 0, from);
+            System.arraycopy(this.ends, 0, ends, 0, from);
+            System.arraycopy(newStarts, 0, starts, from, count);
+            System.arraycopy(newEnds, 0, ends, from, count);
+            System.arraycopy(this.starts, to, starts, from + count, runs - to);
+            System.arraycopy(this.ends, to, ends, from + count, runs - to);
+
+            RunContainer container = new RunContainer(starts, ends, size);
+            return (4 * size > 8 * WORDS ? fromWords(container.toWords()) : container);
+        }
+
+        @Override
+        IntContainer add(int first, int last) {
+            //Runs from index from up to to touch or overlap the new run and are merged into it.
+            int from = floorIndex(first - 1);
+            if (from < 0 || ends[from] + 1 < first)
+                from++;
+            int to = floorIndex(last + 1) + 1;
+
+            if (from == to - 1 && starts[from] <= first && ends[from] >= last)
+                return this;
+
+            int start = (from < to ? Math.min(starts[from], first) : first);
+            int end = (from < to ? Math.max(ends[to - 1], last) : last);
+            return splice(from, to, new char[]{(char) start}, new char[]{(char) end}, 1);
+        }
+
+        @Override
+        IntContainer remove(int first, int last) {
+            //Runs from index from up to to overlap the removed values.
+            int from = floorIndex(first);
+            if (from < 0 || ends[from] < first)
+                from++;
+            int to = floorIndex(last) + 1;
+
+            if (from >= to)
+                return this;
+
+            char[] newStarts = new char[2];
+            char[] newEnds = new char[2];
+            int count = 0;
+            if (starts[from] < first) {
+                newStarts[count] = starts[from];
+                newEnds[count++] = (char) (first - 1);
+            }
+            if (ends[to - 1] > last) {
+                newStarts[count] = (char) (last + 1);
+                newEnds[count++] = ends[to - 1];
+            }
+            return splice(from, to, newStarts, newEnds, count);
+        }
+
+        @Override
+        IntContainer not() {
+            char[] newStarts = new char[runs + 1];
+            char[] newEnds = new char[runs + 1];
+            int count = 0;
+            int next = 0;
+            for (int i = 0; i < runs; i++) {
+                if (starts[i] > next) {
+                    newStarts[count] = (char) next;
+                    newEnds[count++] = (char) (starts[i] - 1);
+                }
+                next = ends[i] + 1;
+            }
+            if (next <= MAX) {
+                newStarts[count] = (char) next;
+                newEnds[count++] = MAX;
+            }
+            return (count == 0 ? null : new RunContainer(newStarts, newEnds, count));
+        }
+    }
+}
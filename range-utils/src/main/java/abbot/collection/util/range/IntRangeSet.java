@@ -0,0 +1,563 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.DiscreteDomains;
+import com.google.common.collect.Range;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Set;
+
+import static abbot.collection.util.range.IntContainer.MAX;
+import static abbot.collection.util.range.IntContainer.SIZE;
+import static com.google.common.collect.Ranges.atLeast;
+import static com.google.common.collect.Ranges.closedOpen;
+import static java.lang.Integer.MAX_VALUE;
+import static java.lang.Integer.MIN_VALUE;
+
+/**
+ * Implementation of {@link RangeSet} for integers which stores values rather than ranges, in the style of a Roaring
+ * bitmap.
+ *
+ * The 32-bit space is split into 64K chunks by the high 16 bits of each value.  Each chunk that holds any values has a
+ * container for the low 16 bits, which is a sorted array of values when the chunk is sparse, a bitmap when it is dense,
+ * or a list of runs when it is made of long ranges, whichever is smallest.  Memory therefore depends on how the values
+ * are distributed rather than on the number of ranges, and many short runs and isolated points cost a few bytes each
+ * instead of a tree node and a {@link Range} each.
+ *
+ * {@link #union(IntRangeSet)}, {@link #intersection(IntRangeSet)}, {@link #difference(IntRangeSet)} and
+ * {@link #complement()} work one container at a time using word level bit operations, and {@link #addAll(Iterable)} and
+ * {@link #removeAll(Iterable)} do the same when given another {@code IntRangeSet}.  {@link #size()} is the number of
+ * maximal ranges and is computed from the containers.
+ *
+ * All ranges are canonicalized using {@link DiscreteDomains#integers()}.
+ */
+public class IntRangeSet extends AbstractRangeSet<Integer> implements Serializable {
+
+    private static final DiscreteDomain<Integer> DOMAIN = DiscreteDomains.integers();
+
+    private enum Operation {
+        UNION, INTERSECTION, DIFFERENCE
+    }
+
+    //Keys are the high 16 bits of the values with the sign bit flipped so they sort in the same order as the values.
+    private char[] keys;
+    private IntContainer[] containers;
+    private int count;
+    private transient int modCount;
+
+    public IntRangeSet() {
+        this(16);
+    }
+
+    private IntRangeSet(int capacity) {
+        keys = new char[capacity];
+        containers = new IntContainer[capacity];
+    }
+
+    private static int key(int value) {
+        return (value ^ MIN_VALUE) >>> 16;
+    }
+
+    private static int low(int value) {
+        return value & MAX;
+    }
+
+    private static int value(int key, int low) {
+        return ((key << 16) | low) ^ MIN_VALUE;
+    }
+
+    /**
+     * Returns the index of the key, or (-(insertion point) - 1) if it is not present.
+     */
+    private int indexOf(int key) {
+        return Arrays.binarySearch(keys, 0, count, (char) key);
+    }
+
+    /**
+     * Returns the index of the first key at or after the key.
+     */
+    private int ceilingIndex(int key) {
+        if (key >= SIZE)
+            return count;
+
+        int index = indexOf(key);
+        return (index >= 0 ? index : -index - 1);
+    }
+
+    private void append(int key, IntContainer container) {
+        if (count == keys.length) {
+            keys = Arrays.copyOf(keys, count * 2 + 1);
+            containers = Arrays.copyOf(containers, count * 2 + 1);
+        }
+        keys[count] = (char) key;
+        containers[count] = container;
+        count++;
+    }
+
+    /**
+     * Replaces the containers from index from up to to with the provided containers.
+     */
+    private void splice(int from, int to, char[] newKeys, IntContainer[] newContainers, int newCount) {
+        int size = count - (to - from) + newCount;
+        if (size > keys.length) {
+            keys = Arrays.copyOf(keys, Math.max(size, keys.length * 2));
+            containers = Arrays.copyOf(containers, keys.length);
+        }
+        System.arraycopy(keys, to, keys, from + newCount, count - to);
+        System.arraycopy(containers, to, containers, from + newCount, count - to);
+        System.arraycopy(newKeys, 0, keys, from, newCount);
+        System.arraycopy(newContainers, 0, containers, from, newCount);
+        for (int i = size; i < count; i++)
+            containers[i] = null;
+
+        count = size;
+        modCount++;
+    }
+
+    /**
+     * Adds the closed-open range [lower, upper) to this range set.  If the range is empty, nothing is added.
+     * @param lower inclusive lower endpoint
+     * @param upper exclusive upper endpoint
+     * @return true if this range set was modified, false otherwise.
+     */
+    public boolean add(int lower, int upper) {
+        return upper > lower && addInclusive(lower, upper - 1);
+    }
+
+    /**
+     * Removes the closed-open range [lower, upper) from this range set.
+     * @param lower inclusive lower endpoint
+     * @param upper exclusive upper endpoint
+     * @return true if this range set was modified, false otherwise.
+     */
+    public boolean remove(int lower, int upper) {
+        return upper > lower && removeInclusive(lower, upper - 1);
+    }
+
+    /**
+     * Determines if this range set contains the provided value without boxing.
+     * @param value
+     * @return True if any range contains the value, false otherwise.
+     */
+    public boolean contains(int value) {
+        int index = indexOf(key(value));
+        return index >= 0 && containers[index].contains(low(value));
+    }
+
+    private boolean addInclusive(int first, int last) {
+        if (enclosesInclusive(first, last))
+            return false;
+
+        int firstKey = key(first);
+        int lastKey = key(last);
+        int from = ceilingIndex(firstKey);
+        int to = ceilingIndex(lastKey + 1);
+
+        //Every chunk between the first and last is completely filled.
+        char[] newKeys = new char[lastKey - firstKey + 1];
+        IntContainer[] newContainers = new IntContainer[newKeys.length];
+        for (int key = firstKey, index = from; key <= lastKey; key++) {
+            int lo = (key == firstKey ? low(first) : 0);
+            int hi = (key == lastKey ? low(last) : MAX);
+
+            IntContainer existing = null;
+            if (index < to && keys[index] == key)
+                existing = containers[index++];
+
+            newKeys[key - firstKey] = (char) key;
+            boolean replace = (existing == null || (lo == 0 && hi == MAX));
+            newContainers[key - firstKey] = (replace ? IntContainer.range(lo, hi) : existing.add(lo, hi));
+        }
+        splice(from, to, newKeys, newContainers, newKeys.length);
+        return true;
+    }
+
+    private boolean removeInclusive(int first, int last) {
+        if (!intersectsInclusive(first, last))
+            return false;
+
+        int firstKey = key(first);
+        int lastKey = key(last);
+        int from = ceilingIndex(firstKey);
+        int to = ceilingIndex(lastKey + 1);
+
+        //Only the first and last chunks can keep any values.
+        char[] newKeys = new char[2];
+        IntContainer[] newContainers = new IntContainer[2];
+        int newCount = 0;
+        for (int index = from; index < to; index++) {
+            int key = keys[index];
+            if (key != firstKey && key != lastKey)
+                continue;
+
+            IntContainer remaining = containers[index].remove(key == firstKey ? low(first) : 0, key == lastKey ? low(last) : MAX);
+            if (remaining != null) {
+                newKeys[newCount] = (char) key;
+                newContainers[newCount++] = remaining;
+            }
+        }
+        splice(from, to, newKeys, newContainers, newCount);
+        return true;
+    }
+
+    private boolean enclosesInclusive(int first, int last) {
+        int firstKey = key(first);
+        int lastKey = key(last);
+        int index = indexOf(firstKey);
+        if (index < 0 || index + (lastKey - firstKey) >= count || keys[index + (lastKey - firstKey)] != lastKey)
+            return false;
+
+        //Since the keys are contiguous, each chunk must be filled from its lower to its upper value.
+        for (int key = firstKey; key <= lastKey; key++, index++) {
+            int lo = (key == firstKey ? low(first) : 0);
+            int hi = (key == lastKey ? low(last) : MAX);
+            if (containers[index].nextClearBit(lo) <= hi)
+                return false;
+        }
+        return true;
+    }
+
+    private boolean intersectsInclusive(int first, int last) {
+        int firstKey = key(first);
+        int lastKey = key(last);
+        for (int index = ceilingIndex(firstKey); index < count && keys[index] <= lastKey; index++) {
+            int lo = (keys[index] == firstKey ? low(first) : 0);
+            int hi = (keys[index] == lastKey ? low(last) : MAX);
+            int next = containers[index].nextSetBit(lo);
+            if (next != -1 && next <= hi)
+                return true;
+        }
+        return false;
+    }
+
+    private static int first(Range<Integer> canonical) {
+        return canonical.hasLowerBound() ? canonical.lowerEndpoint() : MIN_VALUE;
+    }
+
+    private static int last(Range<Integer> canonical) {
+        return canonical.hasUpperBound() ? canonical.upperEndpoint() - 1 : MAX_VALUE;
+    }
+
+    /**
+     * Returns the number of integers in this range set.
+     */
+    public long cardinality() {
+        long cardinality = 0;
+        for (int i = 0; i < count; i++)
+            cardinality += containers[i].cardinality();
+
+        return cardinality;
+    }
+
+    /**
+     * Converts every container to its smallest representation.  Containers are normally only converted when they are
+     * combined with another set, so this is useful after a long series of individual additions and removals.
+     */
+    public void optimize() {
+        for (int i = 0; i < count; i++)
+            containers[i] = IntContainer.fromWords(containers[i].toWords());
+    }
+
+    /**
+     * Returns a new range set containing the integers in either range set.
+     */
+    public IntRangeSet union(IntRangeSet other) {
+        return combine(this, other, Operation.UNION);
+    }
+
+    /**
+     * Returns a new range set containing the integers in both range sets.
+     */
+    public IntRangeSet intersection(IntRangeSet other) {
+        return combine(this, other, Operation.INTERSECTION);
+    }
+
+    /**
+     * Returns a new range set containing the integers in this range set which are not in the other.
+     */
+    public IntRangeSet difference(IntRangeSet other) {
+        return combine(this, other, Operation.DIFFERENCE);
+    }
+
+    /**
+     * Merges the keys of the two sets, combining containers with matching keys and sharing the rest.
+     */
+    private static IntRangeSet combine(IntRangeSet first, IntRangeSet second, Operation operation) {
+        IntRangeSet result = new IntRangeSet(first.count + (operation == Operation.UNION ? second.count : 0) + 1);
+        int i = 0;
+        int j = 0;
+        while (i < first.count || j < second.count) {
+            int firstKey = (i < first.count ? first.keys[i] : SIZE);
+            int secondKey = (j < second.count ? second.keys[j] : SIZE);
+
+            if (firstKey < secondKey) {
+                if (operation != Operation.INTERSECTION)
+                    result.append(firstKey, first.containers[i].share());
+                i++;
+            } else if (secondKey < firstKey) {
+                if (operation == Operation.UNION)
+                    result.append(secondKey, second.containers[j].share());
+                j++;
+            } else {
+                IntContainer combined;
+                switch (operation) {
+                    case UNION:
+                        combined = first.containers[i].or(second.containers[j]);
+                        break;
+                    case INTERSECTION:
+                        combined = first.containers[i].and(second.containers[j]);
+                        break;
+                    default:
+                        combined = first.containers[i].andNot(second.containers[j]);
+                }
+                if (combined != null)
+                    result.append(firstKey, combined);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the contents of this set with the other, returning true if the contents changed.
+     */
+    private boolean replaceWith(IntRangeSet other) {
+        boolean modified = !equals(other);
+        keys = other.keys;
+        containers = other.containers;
+        count = other.count;
+        modCount++;
+        return modified;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The number of ranges is derived from the number of runs in each container, joining runs which continue from the
+     * end of one chunk into the next.
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            size += containers[i].runCount();
+            if (i > 0 && keys[i] == keys[i - 1] + 1 && containers[i - 1].contains(MAX) && containers[i].contains(0))
+                size--;
+        }
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean add(Range<Integer> tRange) {
+        if (tRange == null || tRange.isEmpty())
+            return false;
+
+        Range<Integer> canonical = tRange.canonical(DOMAIN);
+        return !canonical.isEmpty() && addInclusive(first(canonical), last(canonical));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * If the ranges are another {@code IntRangeSet}, the two are merged a container at a time.
+     */
+    @Override
+    public boolean addAll(Iterable<? extends Range<Integer>> tRanges) {
+        if (tRanges instanceof IntRangeSet)
+            return replaceWith(union((IntRangeSet) tRanges));
+
+        return super.addAll(tRanges);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean remove(Range<Integer> tRange) {
+        if (tRange == null || tRange.isEmpty())
+            return false;
+
+        Range<Integer> canonical = tRange.canonical(DOMAIN);
+        return !canonical.isEmpty() && removeInclusive(first(canonical), last(canonical));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * If the ranges are another {@code IntRangeSet}, the two are merged a container at a time.
+     */
+    @Override
+    public boolean removeAll(Iterable<? extends Range<Integer>> tRanges) {
+        if (tRanges instanceof IntRangeSet)
+            return replaceWith(difference((IntRangeSet) tRanges));
+
+        return super.removeAll(tRanges);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(Integer item) {
+        return contains(item.intValue());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean encloses(Range<Integer> range) {
+        Range<Integer> canonical = range.canonical(DOMAIN);
+        return !canonical.isEmpty() && enclosesInclusive(first(canonical), last(canonical));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean intersects(Range<Integer> range) {
+        Range<Integer> canonical = range.canonical(DOMAIN);
+        return !canonical.isEmpty() && intersectsInclusive(first(canonical), last(canonical));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Chunks without a container become full containers and the rest are inverted, so this is O(65536) regardless of
+     * the size of the set.
+     */
+    @Override
+    public IntRangeSet complement() {
+        IntRangeSet complement = new IntRangeSet(SIZE - count + 1);
+        for (int key = 0, index = 0; key < SIZE; key++) {
+            if (index < count && keys[index] == key) {
+                IntContainer inverted = containers[index++].not();
+                if (inverted != null)
+                    complement.append(key, inverted);
+            } else {
+                complement.append(key, IntContainer.FULL);
+            }
+        }
+        return complement;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(containers, 0, count, null);
+        count = 0;
+        modCount++;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The iterator builds each range by joining the runs of adjacent chunks and does not support removal.
+     */
+    @Override
+    public Iterator<Range<Integer>> iterator() {
+        return new AbstractIterator<Range<Integer>>() {
+            private final int expectedModCount = modCount;
+            private int index = 0;
+            private int position = 0;
+
+            @Override
+            protected Range<Integer> computeNext() {
+                if (modCount != expectedModCount)
+                    throw new ConcurrentModificationException();
+
+                int start = -1;
+                while (index < count && (start = containers[index].nextSetBit(position)) == -1) {
+                    index++;
+                    position = 0;
+                }
+                if (index == count)
+                    return endOfData();
+
+                int first = value(keys[index], start);
+                int end = containers[index].nextClearBit(start);
+                while (end == SIZE && index + 1 < count && keys[index + 1] == keys[index] + 1 && containers[index + 1].contains(0)) {
+                    index++;
+                    end = containers[index].nextClearBit(0);
+                }
+
+                if (end == SIZE && keys[index] == MAX) {
+                    index = count;
+                    return atLeast(first);
+                }
+
+                int last = value(keys[index], end - 1);
+                position = end;
+                return closedOpen(first, last + 1);
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Range<Integer>> asSet() {
+        return new AbstractSet<Range<Integer>>() {
+            @Override
+            public Iterator<Range<Integer>> iterator() {
+                return IntRangeSet.this.iterator();
+            }
+
+            @Override
+            public int size() {
+                return IntRangeSet.this.size();
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        IntRangeSet that = (IntRangeSet) o;
+        if (count != that.count)
+            return false;
+
+        for (int i = 0; i < count; i++)
+            if (keys[i] != that.keys[i] || !containers[i].equals(that.containers[i]))
+                return false;
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = 0; i < count; i++)
+            result = 31 * (31 * result + keys[i]) + containers[i].hashCode();
+
+        return result;
+    }
+}
@@ -0,0 +1,231 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.Range;
+import com.google.common.collect.Ranges;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static abbot.collection.util.range.AugmentedAvlTree.delete;
+import static abbot.collection.util.range.AugmentedAvlTree.find;
+import static abbot.collection.util.range.AugmentedAvlTree.insert;
+import static abbot.collection.util.range.RangeComparators.lowerBiasedComparator;
+import static abbot.collection.util.range.RangeComparators.upperOnlyComparator;
+import static com.google.common.base.Objects.equal;
+import static com.google.common.collect.BoundType.OPEN;
+
+/**
+ * An index of possibly overlapping ranges, each with an attached value, which finds every range containing a point or
+ * overlapping another range.
+ *
+ * Unlike a {@link RangeSet}, ranges are never merged, and the same range may be added any number of times with
+ * different values.  The ranges are kept in a balanced binary tree ordered by
+ * {@link RangeComparators#lowerBiasedComparator()}, where every node also records the greatest upper bound in its
+ * subtree.  Queries skip any subtree whose greatest upper bound lies before the query and stop once ranges start after
+ * it, so {@link #stab(Comparable)} and {@link #overlapping(Range)} are O(log N + K) for K results, and
+ * {@link #add(Range, Object)} and {@link #remove(Range, Object)} are O(log N).
+ *
+ * @param <T>
+ * @param <V>
+ */
+public class IntervalIndex<T extends Comparable<T>, V> implements Iterable<Map.Entry<Range<T>, V>>, Serializable {
+
+    private Node<T, V> root;
+    private int size;
+
+    private static final class Node<T extends Comparable<T>, V> extends AugmentedAvlTree.Node<Range<T>, Node<T, V>> {
+        final Range<T> range;
+        final List<V> values = new ArrayList<V>(1);
+        Range<T> maxUpper;
+
+        Node(Range<T> range, V value) {
+            this.range = range;
+            this.maxUpper = range;
+            values.add(value);
+        }
+
+        @Override
+        Range<T> key() {
+            return range;
+        }
+
+        /**
+         * Recomputes the greatest upper bound in the subtree.
+         */
+        @Override
+        void augment() {
+            maxUpper = range;
+            if (left != null && upperOnlyComparator().compare(left.maxUpper, maxUpper) > 0)
+                maxUpper = left.maxUpper;
+            if (right != null && upperOnlyComparator().compare(right.maxUpper, maxUpper) > 0)
+                maxUpper = right.maxUpper;
+        }
+    }
+
+    /**
+     * Retrieves the number of ranges in the index, counting each value of a range added more than once.
+     * @return size of the index.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if there are no ranges in the index.
+     * @return true if there are no ranges, false otherwise
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all of the ranges from the index.
+     */
+    public void clear() {
+        root = null;
+        size = 0;
+    }
+
+    /**
+     * Adds the range with the attached value.  Ranges already in the index are unaffected, even if they overlap.
+     * @param range
+     * @param value
+     */
+    public void add(Range<T> range, V value) {
+        Node<T, V> node = find(root, range, lowerBiasedComparator());
+        if (node == null)
+            root = insert(root, new Node<T, V>(range, value), lowerBiasedComparator());
+        else
+            node.values.add(value);
+
+        size++;
+    }
+
+    /**
+     * Removes one occurrence of the range with the attached value.
+     * @param range
+     * @param value
+     * @return true if the index contained the range with the value, false otherwise.
+     */
+    public boolean remove(Range<T> range, V value) {
+        Node<T, V> node = find(root, range, lowerBiasedComparator());
+        if (node == null || !removeValue(node.values, value))
+            return false;
+
+        //The node only needs to be unlinked once its last value is gone, since otherwise its range is unchanged.
+        if (node.values.isEmpty())
+            root = delete(root, range, lowerBiasedComparator());
+
+        size--;
+        return true;
+    }
+
+    private static <V> boolean removeValue(List<V> values, V value) {
+        for (Iterator<V> i = values.iterator(); i.hasNext(); ) {
+            if (equal(i.next(), value)) {
+                i.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds every range which contains the point.
+     * @param point
+     * @return the matching ranges and their values, in ascending order of the ranges.
+     */
+    public List<Map.Entry<Range<T>, V>> stab(T point) {
+        return overlapping(Ranges.singleton(point));
+    }
+
+    /**
+     * Finds every range which shares at least one value with the provided range.
+     * @param range
+     * @return the matching ranges and their values, in ascending order of the ranges.
+     */
+    public List<Map.Entry<Range<T>, V>> overlapping(Range<T> range) {
+        List<Map.Entry<Range<T>, V>> results = new ArrayList<Map.Entry<Range<T>, V>>();
+        if (!range.isEmpty())
+            collect(root, range, results);
+
+        return results;
+    }
+
+    private static <T extends Comparable<T>, V> void collect(Node<T, V> node, Range<T> query, List<Map.Entry<Range<T>, V>> results) {
+        while (node != null && !endsBefore(node.maxUpper, query)) {
+            collect(node.left, query, results);
+
+            //Every range in the right subtree starts at or after this one.
+            if (startsAfter(node.range, query))
+                return;
+
+            if (!endsBefore(node.range, query))
+                for (V value : node.values)
+                    results.add(new AbstractMap.SimpleImmutableEntry<Range<T>, V>(node.range, value));
+
+            node = node.right;
+        }
+    }
+
+    /**
+     * Returns true if every value in the range is below every value in the query.
+     */
+    private static <T extends Comparable<T>> boolean endsBefore(Range<T> range, Range<T> query) {
+        if (!range.hasUpperBound() || !query.hasLowerBound())
+            return false;
+
+        int compare = range.upperEndpoint().compareTo(query.lowerEndpoint());
+        return compare < 0 || (compare == 0 && (range.upperBoundType() == OPEN || query.lowerBoundType() == OPEN));
+    }
+
+    /**
+     * Returns true if every value in the range is above every value in the query.
+     */
+    private static <T extends Comparable<T>> boolean startsAfter(Range<T> range, Range<T> query) {
+        if (!range.hasLowerBound() || !query.hasUpperBound())
+            return false;
+
+        int compare = range.lowerEndpoint().compareTo(query.upperEndpoint());
+        return compare > 0 || (compare == 0 && (range.lowerBoundType() == OPEN || query.upperBoundType() == OPEN));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The iterator returns every range and value in ascending order of the ranges from a copy of the index, and does not
+     * support removal.
+     */
+    @Override
+    public Iterator<Map.Entry<Range<T>, V>> iterator() {
+        List<Map.Entry<Range<T>, V>> entries = new ArrayList<Map.Entry<Range<T>, V>>(size);
+        addAll(root, entries);
+        return entries.iterator();
+    }
+
+    private static <T extends Comparable<T>, V> void addAll(Node<T, V> node, List<Map.Entry<Range<T>, V>> entries) {
+        for (; node != null; node = node.right) {
+            addAll(node.left, entries);
+            for (V value : node.values)
+                entries.add(new AbstractMap.SimpleImmutableEntry<Range<T>, V>(node.range, value));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (Map.Entry<Range<T>, V> entry : this) {
+            if (sb.length() > 1)
+                sb.append(", ");
+            sb.append(entry);
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,166 @@
+package abbot.collection.util.range;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Implementation of {@link RangeSetMetrics} which keeps counts and latency histograms in memory and publishes them as
+ * an MXBean, so they can be watched from JConsole or any other JMX client.
+ *
+ * Every method is thread safe, and recording is a few atomic increments.  One instance is normally used per
+ * {@link InstrumentedRangeSet}, so the range count and size reflect that set.
+ */
+public class JmxRangeSetMetrics implements RangeSetMetrics, RangeSetMetricsMXBean {
+
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<Operation, LatencyHistogram>(Operation.class);
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong split = new AtomicLong();
+    private volatile int rangeCount;
+    private volatile long estimatedBytes;
+
+    public JmxRangeSetMetrics() {
+        for (Operation operation : Operation.values())
+            latencies.put(operation, new LatencyHistogram());
+    }
+
+    /**
+     * Registers this instance with the platform MBean server.
+     * @param name for example "abbot.collection.util.range:type=RangeSetMetrics,name=acls".
+     * @return the registered name.
+     * @throws JMException if the name is invalid or already registered.
+     */
+    public ObjectName register(String name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        return server.registerMBean(this, new ObjectName(name)).getObjectName();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recordLatency(Operation operation, long nanos) {
+        latencies.get(operation).record(nanos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recordMutation(Operation operation, int merged, int split) {
+        if (merged > 0)
+            this.merged.addAndGet(merged);
+        if (split > 0)
+            this.split.addAndGet(split);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recordSize(int rangeCount, long estimatedBytes) {
+        this.rangeCount = rangeCount;
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    /**
+     * Returns the number of calls made to the operation.
+     */
+    public long count(Operation operation) {
+        return latencies.get(operation).count();
+    }
+
+    /**
+     * Returns the latency of the operation at the percentile in nanoseconds, accurate to within a factor of two.
+     * @param operation
+     * @param percentile between 0 and 100.
+     */
+    public long percentileNanos(Operation operation, double percentile) {
+        return latencies.get(operation).percentileNanos(percentile);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        for (Map.Entry<Operation, LatencyHistogram> entry : latencies.entrySet())
+            counts.put(entry.getKey().name(), entry.getValue().count());
+
+        return counts;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getMeanLatencyNanos() {
+        Map<String, Long> means = new LinkedHashMap<String, Long>();
+        for (Map.Entry<Operation, LatencyHistogram> entry : latencies.entrySet())
+            means.put(entry.getKey().name(), entry.getValue().meanNanos());
+
+        return means;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> getLatency99thPercentileNanos() {
+        Map<String, Long> percentiles = new LinkedHashMap<String, Long>();
+        for (Map.Entry<Operation, LatencyHistogram> entry : latencies.entrySet())
+            percentiles.put(entry.getKey().name(), entry.getValue().percentileNanos(99));
+
+        return percentiles;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRangesMerged() {
+        return merged.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRangesSplit() {
+        return split.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getRangeCount() {
+        return rangeCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getEstimatedRetainedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : latencies.values())
+            histogram.reset();
+
+        merged.set(0);
+        split.set(0);
+    }
+}
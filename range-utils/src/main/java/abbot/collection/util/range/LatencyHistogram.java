@@ -0,0 +1,62 @@
+package abbot.collection.util.range;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe histogram of latencies in nanoseconds, with one bucket per power of two.  Recording is a handful of
+ * atomic increments, and percentiles are accurate to within a factor of two, which is enough to tell a slow set from a
+ * fast one.
+ */
+final class LatencyHistogram {
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+
+        //Bucket i holds latencies in [2^(i-1), 2^i), with zero in bucket 0.
+        buckets.incrementAndGet(Math.min(64 - Long.numberOfLeadingZeros(nanos), 63));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+    }
+
+    long count() {
+        return count.get();
+    }
+
+    long meanNanos() {
+        long count = this.count.get();
+        return (count == 0 ? 0 : totalNanos.get() / count);
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the percentile, or zero if nothing has been recorded.
+     * @param percentile between 0 and 100.
+     */
+    long percentileNanos(double percentile) {
+        long count = this.count.get();
+        if (count == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < 64; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank && seen > 0)
+                return (i == 0 ? 0 : (i == 63 ? Long.MAX_VALUE : (1L << i) - 1));
+        }
+        return Long.MAX_VALUE;
+    }
+
+    void reset() {
+        for (int i = 0; i < 64; i++)
+            buckets.set(i, 0);
+
+        count.set(0);
+        totalNanos.set(0);
+    }
+}
@@ -0,0 +1,196 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.DiscreteDomains;
+import com.google.common.collect.Range;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static java.lang.Long.MAX_VALUE;
+import static java.lang.Long.MIN_VALUE;
+
+/**
+ * Iterates every value in a range set of longs or integers in ascending order, without boxing the values when using
+ * {@link #nextLong()}.
+ *
+ * The ranges are copied when the iterator is created, so later changes to the range set are not reflected, but the
+ * values themselves are generated on the fly.  An iterator can be split with {@link #trySplit()}, which hands off the
+ * first half of its remaining values, measured by count rather than by ranges, to a new iterator.  Splitting repeatedly
+ * gives evenly sized pieces of work which can be processed on separate threads.
+ */
+public final class LongElementIterator implements Iterator<Long> {
+
+    //Shared between the iterators split from the same range set and never modified.
+    private final long[] firsts;
+    private final long[] lasts;
+    //Number of values before each range, or null if the range set holds more than Long.MAX_VALUE values.
+    private final long[] before;
+
+    private int index;
+    private long next;
+    private final int endIndex;
+    private final long endValue;
+
+    private LongElementIterator(long[] firsts, long[] lasts, long[] before, int index, long next, int endIndex, long endValue) {
+        this.firsts = firsts;
+        this.lasts = lasts;
+        this.before = before;
+        this.index = index;
+        this.next = next;
+        this.endIndex = endIndex;
+        this.endValue = endValue;
+    }
+
+    private static LongElementIterator create(int size, long[] firsts, long[] lasts) {
+        long[] before = new long[size + 1];
+        for (int i = 0; i < size && before != null; i++) {
+            long count = lasts[i] - firsts[i] + 1;
+            before[i + 1] = before[i] + count;
+            if (count <= 0 || before[i + 1] <= 0)
+                before = null;
+        }
+
+        if (size == 0)
+            return new LongElementIterator(firsts, lasts, before, 0, 0, -1, 0);
+
+        return new LongElementIterator(firsts, lasts, before, 0, firsts[0], size - 1, lasts[size - 1]);
+    }
+
+    /**
+     * Creates an iterator over every value in the range set.
+     * @param rangeSet
+     * @return an iterator positioned before the lowest value.
+     */
+    public static LongElementIterator longs(RangeSet<Long> rangeSet) {
+        long[] firsts = new long[rangeSet.size()];
+        long[] lasts = new long[firsts.length];
+        int size = 0;
+        for (Range<Long> range : rangeSet) {
+            range = range.canonical(DiscreteDomains.longs());
+            if (range.isEmpty())
+                continue;
+
+            firsts[size] = (range.hasLowerBound() ? range.lowerEndpoint() : MIN_VALUE);
+            lasts[size] = (range.hasUpperBound() ? range.upperEndpoint() - 1 : MAX_VALUE);
+            size++;
+        }
+        return create(size, firsts, lasts);
+    }
+
+    /**
+     * Creates an iterator over every value in the range set.
+     * @param rangeSet
+     * @return an iterator positioned before the lowest value.
+     */
+    public static LongElementIterator integers(RangeSet<Integer> rangeSet) {
+        long[] firsts = new long[rangeSet.size()];
+        long[] lasts = new long[firsts.length];
+        int size = 0;
+        for (Range<Integer> range : rangeSet) {
+            range = range.canonical(DiscreteDomains.integers());
+            if (range.isEmpty())
+                continue;
+
+            firsts[size] = (range.hasLowerBound() ? range.lowerEndpoint() : Integer.MIN_VALUE);
+            lasts[size] = (range.hasUpperBound() ? range.upperEndpoint() - 1L : Integer.MAX_VALUE);
+            size++;
+        }
+        return create(size, firsts, lasts);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNext() {
+        return index <= endIndex;
+    }
+
+    /**
+     * Returns the next value without boxing it.
+     * @return the next value.
+     * @throws NoSuchElementException if there are no more values.
+     */
+    public long nextLong() {
+        if (index > endIndex)
+            throw new NoSuchElementException();
+
+        long value = next;
+        if (value == (index == endIndex ? endValue : lasts[index])) {
+            index++;
+            if (index <= endIndex)
+                next = firsts[index];
+        } else {
+            next++;
+        }
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Long next() {
+        return nextLong();
+    }
+
+    /**
+     * Returns the number of values left in this iterator.
+     * @return the number of values left, or Long.MAX_VALUE if there are too many to count.
+     */
+    public long remaining() {
+        if (index > endIndex)
+            return 0;
+        if (before == null)
+            return MAX_VALUE;
+
+        return position(endIndex, endValue) - position(index, next) + 1;
+    }
+
+    private long position(int rangeIndex, long value) {
+        return before[rangeIndex] + (value - firsts[rangeIndex]);
+    }
+
+    /**
+     * Splits off the first half of the remaining values into a new iterator, leaving this iterator with the rest.  The
+     * split point is found with a binary search over the ranges, so this is O(log N).
+     * @return an iterator over the first half of the remaining values, or null if there are too few values to split or
+     * too many to count.
+     */
+    public LongElementIterator trySplit() {
+        long remaining = remaining();
+        if (remaining < 2 || remaining == MAX_VALUE)
+            return null;
+
+        //Find the range holding the first value of the second half.
+        long middle = position(index, next) + remaining / 2;
+        int low = index;
+        int high = endIndex;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (before[mid] <= middle)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        long middleValue = firsts[low] + (middle - before[low]);
+
+        //The first half ends with the value before the middle, which may be the end of the previous range.
+        LongElementIterator prefix = (middleValue == firsts[low] ?
+                new LongElementIterator(firsts, lasts, before, index, next, low - 1, lasts[low - 1]) :
+                new LongElementIterator(firsts, lasts, before, index, next, low, middleValue - 1));
+
+        index = low;
+        next = middleValue;
+        return prefix;
+    }
+
+    /**
+     * Guaranteed to throw an exception.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,571 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.DiscreteDomains;
+import com.google.common.collect.Range;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static com.google.common.collect.Ranges.atLeast;
+import static com.google.common.collect.Ranges.closedOpen;
+import static java.lang.Long.MAX_VALUE;
+import static java.lang.Long.MIN_VALUE;
+
+/**
+ * Implementation of {@link RangeSet} specialized for {@link Long} values.  Ranges are canonicalized the same way
+ * {@link DiscreteTreeRangeSet} does with {@link DiscreteDomains#longs()}, so every range returned from this set is
+ * closed-open, except for a range which reaches {@link Long#MAX_VALUE} which is unbounded above.
+ *
+ * Rather than a tree of {@link Range} objects, the ranges are stored in a pair of sorted primitive arrays holding the
+ * first and last value of each range.  This brings the cost of a range down to 16 bytes and allows {@link #contains(long)}
+ * and {@link #encloses(long, long)} to be answered by a binary search without boxing or allocating.
+ *
+ * Lookups are O(log N).  Adds and removes are O(log N) to locate the affected ranges plus the cost of shifting the
+ * trailing portion of the arrays, which is zero when ranges are appended in order.
+ */
+public class LongRangeSet extends AbstractRangeSet<Long> implements Serializable {
+
+    private static final DiscreteDomain<Long> DOMAIN = DiscreteDomains.longs();
+    private static final int DEFAULT_CAPACITY = 16;
+
+    //Both values are inclusive so that a range which contains Long.MAX_VALUE can be represented.
+    private transient long[] starts;
+    private transient long[] ends;
+    private transient int size;
+    private transient int modCount;
+
+    public LongRangeSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongRangeSet(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal capacity: " + initialCapacity);
+
+        starts = new long[initialCapacity];
+        ends = new long[initialCapacity];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the index of the last range whose first value is less than or equal to value, or -1 if there is none.
+     */
+    private int floorIndex(long value) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= value)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        return high;
+    }
+
+    /**
+     * Returns the index of the first range whose last value is greater than or equal to value, or size if there is none.
+     */
+    private int ceilingIndex(long value) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (ends[mid] < value)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= starts.length)
+            return;
+
+        int newCapacity = Math.max(capacity, starts.length + (starts.length >> 1) + 1);
+        starts = Arrays.copyOf(starts, newCapacity);
+        ends = Arrays.copyOf(ends, newCapacity);
+    }
+
+    /**
+     * Replaces the ranges in [from, to) with count uninitialized slots which the caller is expected to fill.
+     */
+    private void splice(int from, int to, int count) {
+        int delta = count - (to - from);
+        if (delta != 0) {
+            ensureCapacity(size + delta);
+            System.arraycopy(starts, to, starts, to + delta, size - to);
+            System.arraycopy(ends, to, ends, to + delta, size - to);
+            size += delta;
+        }
+        modCount++;
+    }
+
+    private boolean addInclusive(long first, long last) {
+        //Find every range which overlaps or is adjacent to [first, last].
+        int lower = (first == MIN_VALUE ? 0 : ceilingIndex(first - 1));
+        int upper = (last == MAX_VALUE ? size - 1 : floorIndex(last + 1));
+
+        if (lower > upper) {
+            splice(lower, lower, 1);
+            starts[lower] = first;
+            ends[lower] = last;
+            return true;
+        }
+
+        if (lower == upper && starts[lower] <= first && ends[lower] >= last)
+            return false;
+
+        first = Math.min(first, starts[lower]);
+        last = Math.max(last, ends[upper]);
+        splice(lower, upper + 1, 1);
+        starts[lower] = first;
+        ends[lower] = last;
+        return true;
+    }
+
+    private boolean removeInclusive(long first, long last) {
+        int lower = ceilingIndex(first);
+        int upper = floorIndex(last);
+
+        if (lower > upper)
+            return false;
+
+        //Add back any remaining portions of the outlying ranges back to the set.
+        boolean lowerRemainder = starts[lower] < first;
+        boolean upperRemainder = ends[upper] > last;
+        long lowerStart = starts[lower];
+        long upperEnd = ends[upper];
+
+        splice(lower, upper + 1, (lowerRemainder ? 1 : 0) + (upperRemainder ? 1 : 0));
+        int index = lower;
+        if (lowerRemainder) {
+            starts[index] = lowerStart;
+            ends[index++] = first - 1;
+        }
+        if (upperRemainder) {
+            starts[index] = last + 1;
+            ends[index] = upperEnd;
+        }
+        return true;
+    }
+
+    private boolean enclosesInclusive(long first, long last) {
+        int index = floorIndex(first);
+        return index >= 0 && ends[index] >= last;
+    }
+
+    /**
+     * Adds the closed-open range [lower, upper) to this range set.  If the range is empty, nothing is added.
+     * @param lower inclusive lower endpoint
+     * @param upper exclusive upper endpoint
+     * @return true if this range set was modified, false otherwise.
+     */
+    public boolean add(long lower, long upper) {
+        return upper > lower && addInclusive(lower, upper - 1);
+    }
+
+    /**
+     * Removes the closed-open range [lower, upper) from this range set.
+     * @param lower inclusive lower endpoint
+     * @param upper exclusive upper endpoint
+     * @return true if this range set was modified, false otherwise.
+     */
+    public boolean remove(long lower, long upper) {
+        return upper > lower && removeInclusive(lower, upper - 1);
+    }
+
+    /**
+     * Determines if this range set contains the provided value without boxing.
+     * @param value
+     * @return True if any range contains the value, false otherwise.
+     */
+    public boolean contains(long value) {
+        int index = floorIndex(value);
+        return index >= 0 && ends[index] >= value;
+    }
+
+    /**
+     * Determines if a single range in this range set contains the closed-open range [lower, upper).
+     * @param lower inclusive lower endpoint
+     * @param upper exclusive upper endpoint
+     * @return True if the range is fully contained within the set, false otherwise.
+     */
+    public boolean encloses(long lower, long upper) {
+        if (upper <= lower)
+            return enclosesEmpty(lower);
+
+        return enclosesInclusive(lower, upper - 1);
+    }
+
+    /**
+     * Returns true if a range encloses the empty range at the position, which like {@link TreeRangeSet} means it starts
+     * at or before the position and ends at or after it.
+     */
+    private boolean enclosesEmpty(long position) {
+        int index = floorIndex(position);
+        return index >= 0 && (ends[index] == MAX_VALUE || ends[index] + 1 >= position);
+    }
+
+    /**
+     * Determines which of the values are contained in this range set without boxing.  When the values are sorted a single
+     * cursor is advanced through the ranges, galloping over runs of ranges which contain none of the values, making a
+     * batch of M values O(M log(N / M)).  Unsorted values fall back to an independent binary search for each value.
+     * @param values
+     * @return A {@link BitSet} with bit i set if the value at index i is contained in this range set.
+     */
+    public BitSet containsEach(long[] values) {
+        BitSet result = new BitSet(values.length);
+        if (!isSorted(values)) {
+            for (int i = 0; i < values.length; i++)
+                if (contains(values[i]))
+                    result.set(i);
+
+            return result;
+        }
+
+        int cursor = 0;
+        for (int i = 0; i < values.length && cursor < size; i++) {
+            long value = values[i];
+            if (ends[cursor] < value)
+                cursor = gallop(cursor, value);
+
+            if (cursor < size && starts[cursor] <= value)
+                result.set(i);
+        }
+        return result;
+    }
+
+    private static boolean isSorted(long[] values) {
+        for (int i = 1; i < values.length; i++)
+            if (values[i - 1] > values[i])
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Returns the index of the first range at or after the cursor whose last value is greater than or equal to value, or
+     * size if there is none.  The cursor range is known to end before the value.
+     */
+    private int gallop(int cursor, long value) {
+        int low = cursor + 1;
+        int step = 1;
+        while (low < size && ends[low] < value) {
+            cursor = low;
+            low = cursor + step;
+            step <<= 1;
+        }
+
+        int high = Math.min(low, size - 1);
+        low = cursor + 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (ends[mid] < value)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+
+    private static long first(Range<Long> canonical) {
+        return canonical.hasLowerBound() ? canonical.lowerEndpoint() : MIN_VALUE;
+    }
+
+    private static long last(Range<Long> canonical) {
+        return canonical.hasUpperBound() ? canonical.upperEndpoint() - 1 : MAX_VALUE;
+    }
+
+    private Range<Long> rangeAt(int index) {
+        return (ends[index] == MAX_VALUE ? atLeast(starts[index]) : closedOpen(starts[index], ends[index] + 1));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean add(Range<Long> tRange) {
+        if (tRange == null || tRange.isEmpty())
+            return false;
+
+        Range<Long> canonical = tRange.canonical(DOMAIN);
+        return !canonical.isEmpty() && addInclusive(first(canonical), last(canonical));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean remove(Range<Long> tRange) {
+        if (tRange == null || tRange.isEmpty())
+            return false;
+
+        Range<Long> canonical = tRange.canonical(DOMAIN);
+        return !canonical.isEmpty() && removeInclusive(first(canonical), last(canonical));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(Long item) {
+        return contains(item.longValue());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean encloses(Range<Long> range) {
+        Range<Long> canonical = range.canonical(DOMAIN);
+        if (canonical.isEmpty())
+            return enclosesEmpty(first(canonical));
+
+        return enclosesInclusive(first(canonical), last(canonical));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean intersects(Range<Long> range) {
+        Range<Long> canonical = range.canonical(DOMAIN);
+        if (canonical.isEmpty())
+            return false;
+
+        int index = ceilingIndex(first(canonical));
+        return index < size && starts[index] <= last(canonical);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Range<Long> rangeContaining(Long item) {
+        int index = floorIndex(item);
+        return (index >= 0 && ends[index] >= item ? rangeAt(index) : null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Range<Long> span() {
+        if (size == 0)
+            throw new NoSuchElementException();
+
+        return rangeAt(0).span(rangeAt(size - 1));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LongRangeSet complement() {
+        LongRangeSet complement = new LongRangeSet(size + 1);
+        long next = MIN_VALUE;
+        boolean exhausted = false;
+        for (int i = 0; i < size; i++) {
+            if (starts[i] > next)
+                complement.append(next, starts[i] - 1);
+
+            if (ends[i] == MAX_VALUE) {
+                exhausted = true;
+                break;
+            }
+            next = ends[i] + 1;
+        }
+
+        if (!exhausted)
+            complement.append(next, MAX_VALUE);
+
+        return complement;
+    }
+
+    /**
+     * Appends a range which is known to be after, and not adjacent to, every other range in the set.
+     */
+    private void append(long first, long last) {
+        ensureCapacity(size + 1);
+        starts[size] = first;
+        ends[size] = last;
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Trims the capacity of the backing arrays down to the current number of ranges.
+     */
+    public void trimToSize() {
+        if (starts.length > size) {
+            starts = Arrays.copyOf(starts, size);
+            ends = Arrays.copyOf(ends, size);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Range<Long>> iterator() {
+        return new Iterator<Range<Long>>() {
+            private int cursor = 0;
+            private int last = -1;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return cursor < size;
+            }
+
+            @Override
+            public Range<Long> next() {
+                if (expectedModCount != modCount)
+                    throw new ConcurrentModificationException();
+                if (cursor >= size)
+                    throw new NoSuchElementException();
+
+                last = cursor++;
+                return rangeAt(last);
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0)
+                    throw new IllegalStateException();
+                if (expectedModCount != modCount)
+                    throw new ConcurrentModificationException();
+
+                splice(last, last + 1, 0);
+                cursor = last;
+                last = -1;
+                expectedModCount = modCount;
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Range<Long>> asSet() {
+        return new AbstractSet<Range<Long>>() {
+            @Override
+            public Iterator<Range<Long>> iterator() {
+                final Iterator<Range<Long>> iterator = LongRangeSet.this.iterator();
+                return new Iterator<Range<Long>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Range<Long> next() {
+                        return iterator.next();
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public boolean contains(Object o) {
+                if (!(o instanceof Range))
+                    return false;
+
+                int index = floorIndex(first((Range<Long>) o));
+                return index >= 0 && rangeAt(index).equals(o);
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        LongRangeSet that = (LongRangeSet) o;
+
+        if (size != that.size)
+            return false;
+
+        for (int i = 0; i < size; i++)
+            if (starts[i] != that.starts[i] || ends[i] != that.ends[i])
+                return false;
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int result = 0;
+        for (int i = 0; i < size; i++) {
+            result = 31 * result + (int) (starts[i] ^ (starts[i] >>> 32));
+            result = 31 * result + (int) (ends[i] ^ (ends[i] >>> 32));
+        }
+        return result;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeLong(starts[i]);
+            out.writeLong(ends[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        size = in.readInt();
+        starts = new long[size];
+        ends = new long[size];
+        for (int i = 0; i < size; i++) {
+            starts[i] = in.readLong();
+            ends[i] = in.readLong();
+        }
+    }
+}
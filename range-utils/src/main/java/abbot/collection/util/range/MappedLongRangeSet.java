@@ -0,0 +1,556 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.DiscreteDomains;
+import com.google.common.collect.Range;
+import com.google.common.collect.Ranges;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+
+import static com.google.common.collect.Iterators.singletonIterator;
+import static com.google.common.collect.Ranges.atLeast;
+import static com.google.common.collect.Ranges.closedOpen;
+import static java.lang.Long.MAX_VALUE;
+import static java.lang.Long.MIN_VALUE;
+import static java.util.Arrays.asList;
+
+/**
+ * Implementation of {@link RangeSet} for longs whose ranges live in a memory-mapped file rather than on the heap.
+ *
+ * The file holds a segment of sorted, disjoint ranges as fixed width records of two longs, the first and last value of
+ * each range, followed by a sparse index holding the first value of every {@value #INDEX_INTERVAL}th record.  Opening a
+ * segment maps the records and reads only the sparse index into the heap, so no ranges are deserialized, and a lookup
+ * is a binary search over the index followed by a binary search over a single block of records, touching O(log N)
+ * pages.
+ *
+ * Segments are never modified in place.  Ranges added and removed are recorded in two in-memory
+ * {@link DiscreteTreeRangeSet} deltas which are consulted along with the segment.  Once the deltas hold
+ * {@code mergeThreshold} ranges, or whenever {@link #merge()} is called, the segment and deltas are streamed into a new
+ * segment which then replaces the file.
+ *
+ * All ranges are canonicalized using {@link DiscreteDomains#longs()}.
+ */
+public class MappedLongRangeSet extends AbstractRangeSet<Long> {
+
+    private static final DiscreteDomain<Long> DOMAIN = DiscreteDomains.longs();
+
+    private static final long MAGIC = 0x52414e4745534554L;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 16;
+    private static final int INDEX_INTERVAL = 1024;
+
+    //Records are mapped in chunks of 2^26 records, 1GB, since a single mapping is limited to 2GB.
+    private static final int CHUNK_SHIFT = 26;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    private static final int DEFAULT_MERGE_THRESHOLD = 1 << 16;
+
+    private final File file;
+    private final int mergeThreshold;
+    private final TreeRangeSet<Long> additions = new DiscreteTreeRangeSet<Long>(DOMAIN);
+    private final TreeRangeSet<Long> removals = new DiscreteTreeRangeSet<Long>(DOMAIN);
+    private Segment segment;
+
+    private MappedLongRangeSet(File file, int mergeThreshold) throws IOException {
+        if (mergeThreshold < 1)
+            throw new IllegalArgumentException("Merge threshold must be positive");
+
+        this.file = file;
+        this.mergeThreshold = mergeThreshold;
+        this.segment = Segment.open(file);
+    }
+
+    /**
+     * Opens the range set stored in the file, creating an empty one if the file does not exist.
+     * @param file
+     * @return the range set backed by the file.
+     * @throws IOException
+     */
+    public static MappedLongRangeSet open(File file) throws IOException {
+        return open(file, DEFAULT_MERGE_THRESHOLD);
+    }
+
+    /**
+     * Opens the range set stored in the file, creating an empty one if the file does not exist.
+     * @param file
+     * @param mergeThreshold number of ranges the in-memory deltas may hold before they are merged into the file.
+     * @return the range set backed by the file.
+     * @throws IOException
+     */
+    public static MappedLongRangeSet open(File file, int mergeThreshold) throws IOException {
+        if (!file.exists())
+            writeSegment(file, ImmutableRangeSet.<Long>of().iterator());
+
+        return new MappedLongRangeSet(file, mergeThreshold);
+    }
+
+    /**
+     * Writes the ranges of the range set to the file in the format read by {@link #open(File)}, replacing anything
+     * already in the file.  The ranges are written to a new file which is then renamed over the old one, so sets which
+     * already have the old file open keep reading its contents, and a failed write leaves it intact.
+     * @param file
+     * @param rangeSet
+     * @throws IOException
+     */
+    public static void write(File file, RangeSet<Long> rangeSet) throws IOException {
+        replaceSegment(file, RangeIterators.coalesce(RangeIterators.canonical(rangeSet.iterator(), DOMAIN)));
+    }
+
+    /**
+     * Writes the ranges as a new segment next to the file, then renames it over the file.
+     */
+    private static void replaceSegment(File file, Iterator<Range<Long>> ranges) throws IOException {
+        File replacement = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            writeSegment(replacement, ranges);
+            if (!replacement.renameTo(file) && !(file.delete() && replacement.renameTo(file)))
+                throw new IOException("Unable to replace " + file + " with " + replacement);
+        } finally {
+            //Only left behind if the segment could not be written or renamed.
+            replacement.delete();
+        }
+    }
+
+    /**
+     * Writes canonical, sorted, disjoint and coalesced ranges as a new segment.
+     */
+    private static void writeSegment(File file, Iterator<Range<Long>> ranges) throws IOException {
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+            out.write(new byte[HEADER_SIZE]);
+
+            long count = 0;
+            long[] index = new long[16];
+            int indexSize = 0;
+            while (ranges.hasNext()) {
+                Range<Long> range = ranges.next();
+                long first = first(range);
+                if (count % INDEX_INTERVAL == 0) {
+                    if (indexSize == index.length)
+                        index = Arrays.copyOf(index, indexSize * 2);
+                    index[indexSize++] = first;
+                }
+                out.writeLong(first);
+                out.writeLong(last(range));
+                count++;
+            }
+
+            for (int i = 0; i < indexSize; i++)
+                out.writeLong(index[i]);
+            out.flush();
+
+            //The header is written last so a partially written segment is never mistaken for a valid one.
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putLong(MAGIC).putInt(VERSION).putInt(INDEX_INTERVAL).putLong(count).putLong(0);
+            header.flip();
+            FileChannel channel = stream.getChannel();
+            channel.write(header, 0);
+            channel.force(true);
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static long first(Range<Long> canonical) {
+        return canonical.hasLowerBound() ? canonical.lowerEndpoint() : MIN_VALUE;
+    }
+
+    private static long last(Range<Long> canonical) {
+        return canonical.hasUpperBound() ? canonical.upperEndpoint() - 1 : MAX_VALUE;
+    }
+
+    private static Range<Long> range(long first, long last) {
+        return (last == MAX_VALUE ? atLeast(first) : closedOpen(first, last + 1));
+    }
+
+    /**
+     * The file this range set is stored in.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Streams the segment and the in-memory deltas into a new segment which replaces the file, then clears the deltas.
+     * @throws IOException
+     */
+    public void merge() throws IOException {
+        if (additions.isEmpty() && removals.isEmpty())
+            return;
+
+        replaceSegment(file, iterator());
+        segment = Segment.open(file);
+        additions.clear();
+        removals.clear();
+    }
+
+    private void mergeIfNeeded() {
+        if (additions.size() + removals.size() < mergeThreshold)
+            return;
+
+        try {
+            merge();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to merge changes into " + file, e);
+        }
+    }
+
+    /**
+     * Returns the ranges of the delta which intersect the canonical range, in order.
+     */
+    private static Iterator<Range<Long>> intersecting(TreeRangeSet<Long> delta, Range<Long> range) {
+        SortedSet<Range<Long>> ranges = delta.asSet();
+        List<Range<Long>> intersecting = new ArrayList<Range<Long>>();
+
+        SortedSet<Range<Long>> head = ranges.headSet(range);
+        if (!head.isEmpty() && head.last().isConnected(range) && !head.last().intersection(range).isEmpty())
+            intersecting.add(head.last());
+
+        for (Range<Long> candidate : ranges.tailSet(range)) {
+            if (range.hasUpperBound() && candidate.lowerEndpoint() >= range.upperEndpoint())
+                break;
+
+            intersecting.add(candidate);
+        }
+        return intersecting.iterator();
+    }
+
+    /**
+     * Returns the parts of the canonical range which are not in the delta.
+     */
+    @SuppressWarnings("unchecked")
+    private static Iterator<Range<Long>> outside(TreeRangeSet<Long> delta, Range<Long> range) {
+        return RangeIterators.difference(singletonIterator(range), intersecting(delta, range));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * If there are changes which have not been merged, this is O(N).
+     */
+    @Override
+    public int size() {
+        if (additions.isEmpty() && removals.isEmpty())
+            return (int) Math.min(segment.count, Integer.MAX_VALUE);
+
+        int size = 0;
+        for (Iterator<Range<Long>> i = iterator(); i.hasNext(); i.next())
+            size++;
+
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        return !iterator().hasNext();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean add(Range<Long> tRange) {
+        if (tRange == null || tRange.isEmpty())
+            return false;
+
+        Range<Long> canonical = tRange.canonical(DOMAIN);
+        if (canonical.isEmpty() || encloses(canonical))
+            return false;
+
+        removals.remove(canonical);
+        if (!segment.encloses(first(canonical), last(canonical)))
+            additions.add(canonical);
+
+        mergeIfNeeded();
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean remove(Range<Long> tRange) {
+        if (tRange == null || tRange.isEmpty())
+            return false;
+
+        Range<Long> canonical = tRange.canonical(DOMAIN);
+        if (canonical.isEmpty() || !intersects(canonical))
+            return false;
+
+        additions.remove(canonical);
+        if (segment.intersects(first(canonical), last(canonical)))
+            removals.add(canonical);
+
+        mergeIfNeeded();
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(Long item) {
+        return contains(item.longValue());
+    }
+
+    /**
+     * Determines if this range set contains the provided value without boxing it for the segment lookup.
+     * @param value
+     * @return True if any range contains the value, false otherwise.
+     */
+    public boolean contains(long value) {
+        if (additions.contains(value))
+            return true;
+
+        return segment.contains(value) && !removals.contains(value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean encloses(Range<Long> range) {
+        Range<Long> canonical = range.canonical(DOMAIN);
+        if (canonical.isEmpty())
+            return false;
+
+        //Every part of the range not added must be in the segment and not removed.
+        for (Iterator<Range<Long>> i = outside(additions, canonical); i.hasNext(); ) {
+            Range<Long> part = i.next();
+            if (!segment.encloses(first(part), last(part)) || removals.intersects(part))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean intersects(Range<Long> range) {
+        Range<Long> canonical = range.canonical(DOMAIN);
+        if (canonical.isEmpty())
+            return false;
+
+        if (additions.intersects(canonical))
+            return true;
+
+        for (Iterator<Range<Long>> i = outside(removals, canonical); i.hasNext(); ) {
+            Range<Long> part = i.next();
+            if (segment.intersects(first(part), last(part)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The complement is built on the heap as a {@link LongRangeSet}.
+     */
+    @Override
+    public LongRangeSet complement() {
+        LongRangeSet complement = new LongRangeSet();
+        for (Iterator<Range<Long>> i = RangeIterators.complement(iterator()); i.hasNext(); )
+            complement.add(i.next());
+
+        return complement;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The file is not modified until the next merge.
+     */
+    @Override
+    public void clear() {
+        additions.clear();
+        removals.clear();
+        if (segment.count > 0)
+            removals.add(Ranges.<Long>all());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The iterator streams the ranges of the segment, merged with any changes which have not been merged, and does not
+     * support removal.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<Range<Long>> iterator() {
+        Iterator<Range<Long>> ranges = segment.iterator();
+        if (!removals.isEmpty())
+            ranges = RangeIterators.difference(ranges, removals.iterator());
+        if (!additions.isEmpty())
+            ranges = RangeIterators.union(asList(ranges, additions.iterator()));
+
+        return ranges;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Range<Long>> asSet() {
+        return new AbstractSet<Range<Long>>() {
+            @Override
+            public Iterator<Range<Long>> iterator() {
+                return MappedLongRangeSet.this.iterator();
+            }
+
+            @Override
+            public int size() {
+                return MappedLongRangeSet.this.size();
+            }
+        };
+    }
+
+    /**
+     * A read-only mapping of the records in a segment file along with its sparse index.
+     */
+    private static final class Segment {
+
+        private final long count;
+        private final int indexInterval;
+        private final long[] index;
+        private final MappedByteBuffer[] chunks;
+
+        private Segment(long count, int indexInterval, long[] index, MappedByteBuffer[] chunks) {
+            this.count = count;
+            this.indexInterval = indexInterval;
+            this.index = index;
+            this.chunks = chunks;
+        }
+
+        static Segment open(File file) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+                if (header.remaining() < HEADER_SIZE || header.getLong() != MAGIC)
+                    throw new StreamCorruptedException(file + " is not a range set segment");
+
+                int version = header.getInt();
+                if (version != VERSION)
+                    throw new StreamCorruptedException("Unsupported segment version " + version);
+
+                int indexInterval = header.getInt();
+                long count = header.getLong();
+                long indexSize = (count + indexInterval - 1) / indexInterval;
+                long recordsEnd = HEADER_SIZE + count * RECORD_SIZE;
+                if (indexInterval < 1 || count < 0 || channel.size() != recordsEnd + indexSize * 8)
+                    throw new StreamCorruptedException(file + " is truncated or corrupt");
+
+                long[] index = new long[(int) indexSize];
+                readFully(channel, recordsEnd, index.length * 8).asLongBuffer().get(index);
+
+                MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((count + CHUNK_MASK) >>> CHUNK_SHIFT)];
+                for (int i = 0; i < chunks.length; i++) {
+                    long position = HEADER_SIZE + ((long) i << CHUNK_SHIFT) * RECORD_SIZE;
+                    chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(recordsEnd - position, (CHUNK_MASK + 1) * RECORD_SIZE));
+                }
+                return new Segment(count, indexInterval, index, chunks);
+            } finally {
+                raf.close();
+            }
+        }
+
+        /**
+         * Reads up to length bytes starting at the position, stopping early only at the end of the file.
+         */
+        private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0)
+                    break;
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        long first(long record) {
+            return chunks[(int) (record >>> CHUNK_SHIFT)].getLong((int) ((record & CHUNK_MASK) * RECORD_SIZE));
+        }
+
+        long last(long record) {
+            return chunks[(int) (record >>> CHUNK_SHIFT)].getLong((int) ((record & CHUNK_MASK) * RECORD_SIZE + 8));
+        }
+
+        /**
+         * Returns the last record whose first value is at or below the value, or -1 if there is none.  The sparse index
+         * narrows the search down to a single block of records.
+         */
+        long floor(long value) {
+            int block = Arrays.binarySearch(index, value);
+            if (block < 0)
+                block = -block - 2;
+            if (block < 0)
+                return -1;
+
+            long low = (long) block * indexInterval;
+            long high = Math.min(count, low + indexInterval) - 1;
+            while (low <= high) {
+                long mid = (low + high) >>> 1;
+                if (first(mid) <= value)
+                    low = mid + 1;
+                else
+                    high = mid - 1;
+            }
+            return high;
+        }
+
+        boolean contains(long value) {
+            long record = floor(value);
+            return record >= 0 && last(record) >= value;
+        }
+
+        boolean encloses(long first, long last) {
+            long record = floor(first);
+            return record >= 0 && last(record) >= last;
+        }
+
+        boolean intersects(long first, long last) {
+            long record = floor(last);
+            return record >= 0 && last(record) >= first;
+        }
+
+        Iterator<Range<Long>> iterator() {
+            return new AbstractIterator<Range<Long>>() {
+                private long record = 0;
+
+                @Override
+                protected Range<Long> computeNext() {
+                    if (record >= count)
+                        return endOfData();
+
+                    Range<Long> range = range(first(record), last(record));
+                    record++;
+                    return range;
+                }
+            };
+        }
+    }
+}
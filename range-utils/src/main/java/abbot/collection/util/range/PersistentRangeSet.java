@@ -0,0 +1,595 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.Range;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static abbot.collection.util.range.RangeComparators.lowerOnlyComparator;
+import static abbot.collection.util.range.RangeComparators.lowerOnlyOrValueComparator;
+import static abbot.collection.util.range.RangeComparators.upperOnlyComparator;
+import static com.google.common.base.Objects.equal;
+import static com.google.common.collect.BoundType.CLOSED;
+import static com.google.common.collect.BoundType.OPEN;
+import static com.google.common.collect.Iterators.elementsEqual;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Ranges.*;
+
+/**
+ * Persistent implementation of {@link RangeSet}, where every change returns a new version of the set and leaves the
+ * original untouched.
+ *
+ * The ranges are kept in an immutable balanced binary tree.  {@link #with(Range)} and {@link #without(Range)} split the
+ * tree around the affected ranges and join the pieces back together with the merged or trimmed ranges, which copies only
+ * the O(log N) nodes along the paths that changed.  Every other node is shared with the previous version, so keeping
+ * many versions costs little more memory than keeping one, and any version can be read from many threads without
+ * locking.  Ranges are coalesced the same way as {@link TreeRangeSet#add(Range)} and {@link TreeRangeSet#remove(Range)}.
+ *
+ * Every method which would modify the set in place throws an {@link UnsupportedOperationException}.
+ *
+ * @param <T>
+ */
+public final class PersistentRangeSet<T extends Comparable<T>> extends AbstractRangeSet<T> implements Serializable {
+
+    private final Node<T> root;
+    private final DiscreteDomain<T> discreteDomain;
+
+    private static final class Node<T extends Comparable<T>> implements Serializable {
+        final Range<T> range;
+        final Node<T> left;
+        final Node<T> right;
+        final int height;
+        final int size;
+
+        Node(Range<T> range, Node<T> left, Node<T> right) {
+            this.range = range;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(height(left), height(right));
+            this.size = 1 + size(left) + size(right);
+        }
+    }
+
+    private static final class Split<T extends Comparable<T>> {
+        final Node<T> left;
+        final Node<T> right;
+
+        Split(Node<T> left, Node<T> right) {
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    private PersistentRangeSet(Node<T> root, DiscreteDomain<T> discreteDomain) {
+        this.root = root;
+        this.discreteDomain = discreteDomain;
+    }
+
+    /**
+     * Returns the domain the ranges are canonicalized with, or null if they are not.
+     */
+    DiscreteDomain<T> discreteDomain() {
+        return discreteDomain;
+    }
+
+    /**
+     * Returns an empty persistent range set.
+     */
+    public static <T extends Comparable<T>> PersistentRangeSet<T> of() {
+        return new PersistentRangeSet<T>(null, null);
+    }
+
+    /**
+     * Returns an empty persistent range set which canonicalizes every range using the domain.
+     */
+    public static <T extends Comparable<T>> PersistentRangeSet<T> of(DiscreteDomain<T> domain) {
+        return new PersistentRangeSet<T>(null, domain);
+    }
+
+    /**
+     * Returns a persistent copy of the provided range set.  The copy is built in O(N).  If the range set is a
+     * {@link DiscreteTreeRangeSet}, {@link ImmutableRangeSet} or {@link ConcurrentRangeSet} which canonicalizes its
+     * ranges, the copy uses the same domain.
+     */
+    public static <T extends Comparable<T>> PersistentRangeSet<T> copyOf(RangeSet<T> rangeSet) {
+        if (rangeSet instanceof PersistentRangeSet)
+            return (PersistentRangeSet<T>) rangeSet;
+
+        return fromSorted(rangeSet.iterator(), RangeSets.discreteDomainOf(rangeSet));
+    }
+
+    /**
+     * Returns a persistent copy of the provided range set with every range canonicalized using the domain.
+     */
+    public static <T extends Comparable<T>> PersistentRangeSet<T> copyOf(DiscreteDomain<T> domain, RangeSet<T> rangeSet) {
+        return fromSorted(rangeSet.iterator(), domain);
+    }
+
+    private static <T extends Comparable<T>> PersistentRangeSet<T> fromSorted(Iterator<Range<T>> sorted, DiscreteDomain<T> discreteDomain) {
+        if (discreteDomain != null)
+            sorted = RangeIterators.canonical(sorted, discreteDomain);
+
+        List<Range<T>> ranges = newArrayList(RangeIterators.coalesce(sorted));
+        return new PersistentRangeSet<T>(build(ranges, 0, ranges.size()), discreteDomain);
+    }
+
+    private static <T extends Comparable<T>> Node<T> build(List<Range<T>> ranges, int from, int to) {
+        if (from >= to)
+            return null;
+
+        int mid = (from + to) >>> 1;
+        return new Node<T>(ranges.get(mid), build(ranges, from, mid), build(ranges, mid + 1, to));
+    }
+
+    /**
+     * Returns a version of this set with the range added, merging it with any ranges it is connected to.
+     * @param tRange
+     * @return the new version, or this set if the range is empty or already enclosed.
+     */
+    public PersistentRangeSet<T> with(Range<T> tRange) {
+        if (tRange == null)
+            return this;
+
+        tRange = canonical(tRange);
+        if (tRange.isEmpty())
+            return this;
+
+        Split<T> below = split(root, tRange, true, 0);
+        Split<T> connected = split(below.right, tRange, true, 1);
+        Node<T> merged = connected.left;
+        if (merged != null && merged.size == 1 && merged.range.encloses(tRange))
+            return this;
+
+        if (merged != null)
+            tRange = tRange.span(first(merged).range).span(last(merged).range);
+
+        return new PersistentRangeSet<T>(join(below.left, tRange, connected.right), discreteDomain);
+    }
+
+    /**
+     * Returns a version of this set with every value in the range removed, trimming any ranges which extend past it.
+     * @param tRange
+     * @return the new version, or this set if no range overlaps the provided range.
+     */
+    public PersistentRangeSet<T> without(Range<T> tRange) {
+        if (tRange == null)
+            return this;
+
+        tRange = canonical(tRange);
+        if (tRange.isEmpty())
+            return this;
+
+        Split<T> below = split(root, tRange, false, 0);
+        Split<T> overlapping = split(below.right, tRange, false, 1);
+        if (overlapping.left == null)
+            return this;
+
+        Node<T> left = below.left;
+        Range<T> lower = lowerRemainder(first(overlapping.left).range, tRange);
+        if (lower != null)
+            left = join(left, lower, null);
+
+        Node<T> right = overlapping.right;
+        Range<T> upper = upperRemainder(last(overlapping.left).range, tRange);
+        if (upper != null)
+            right = join(null, upper, right);
+
+        return new PersistentRangeSet<T>(join(left, right), discreteDomain);
+    }
+
+    private Range<T> canonical(Range<T> tRange) {
+        return (discreteDomain == null ? tRange : tRange.canonical(discreteDomain));
+    }
+
+    /**
+     * Returns the part of the current range below the removed range, or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    private Range<T> lowerRemainder(Range<T> current, Range<T> toRemove) {
+        if (lowerOnlyComparator().compare(current, toRemove) >= 0)
+            return null;
+
+        Range<T> remainder = (current.hasLowerBound() ?
+                range(current.lowerEndpoint(), current.lowerBoundType(),
+                        toRemove.lowerEndpoint(), toRemove.lowerBoundType() == CLOSED ? OPEN : CLOSED) :
+                upTo(toRemove.lowerEndpoint(), toRemove.lowerBoundType() == CLOSED ? OPEN : CLOSED));
+
+        remainder = canonical(remainder);
+        return (remainder.isEmpty() ? null : remainder);
+    }
+
+    /**
+     * Returns the part of the current range above the removed range, or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    private Range<T> upperRemainder(Range<T> current, Range<T> toRemove) {
+        if (upperOnlyComparator().compare(current, toRemove) <= 0)
+            return null;
+
+        Range<T> remainder = (current.hasUpperBound() ?
+                range(toRemove.upperEndpoint(), toRemove.upperBoundType() == CLOSED ? OPEN : CLOSED,
+                        current.upperEndpoint(), current.upperBoundType()) :
+                downTo(toRemove.upperEndpoint(), toRemove.upperBoundType() == CLOSED ? OPEN : CLOSED));
+
+        remainder = canonical(remainder);
+        return (remainder.isEmpty() ? null : remainder);
+    }
+
+    /**
+     * Returns -1 if the range lies entirely below the query, 1 if it lies entirely above it, or 0 if it overlaps the
+     * query.  If touching is true, ranges which only touch the query count as overlapping it.  Since the ranges in the
+     * tree are disjoint and coalesced, the positions never decrease in tree order.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends Comparable<T>> int position(Range<T> range, Range<T> query, boolean touching) {
+        if (touching ? range.isConnected(query) : TreeRangeSet.overlaps(range, query))
+            return 0;
+
+        return (lowerOnlyComparator().compare(range, query) < 0 ? -1 : 1);
+    }
+
+    /**
+     * Splits the tree into the ranges whose position relative to the query is below the boundary and the rest.
+     */
+    private static <T extends Comparable<T>> Split<T> split(Node<T> node, Range<T> query, boolean touching, int boundary) {
+        if (node == null)
+            return new Split<T>(null, null);
+
+        if (position(node.range, query, touching) < boundary) {
+            Split<T> split = split(node.right, query, touching, boundary);
+            return new Split<T>(join(node.left, node.range, split.left), split.right);
+        }
+
+        Split<T> split = split(node.left, query, touching, boundary);
+        return new Split<T>(split.left, join(split.right, node.range, node.right));
+    }
+
+    /**
+     * Joins two trees and a range which lies between them into a balanced tree.
+     */
+    private static <T extends Comparable<T>> Node<T> join(Node<T> left, Range<T> range, Node<T> right) {
+        if (height(left) > height(right) + 1)
+            return balance(left.range, left.left, join(left.right, range, right));
+        if (height(right) > height(left) + 1)
+            return balance(right.range, join(left, range, right.left), right.right);
+
+        return new Node<T>(range, left, right);
+    }
+
+    /**
+     * Joins two trees, where every range of the left tree lies below every range of the right tree.
+     */
+    private static <T extends Comparable<T>> Node<T> join(Node<T> left, Node<T> right) {
+        if (left == null)
+            return right;
+        if (right == null)
+            return left;
+
+        return join(removeLast(left), last(left).range, right);
+    }
+
+    private static <T extends Comparable<T>> Node<T> removeLast(Node<T> node) {
+        if (node.right == null)
+            return node.left;
+
+        return balance(node.range, node.left, removeLast(node.right));
+    }
+
+    private static <T extends Comparable<T>> Node<T> balance(Range<T> range, Node<T> left, Node<T> right) {
+        if (height(left) > height(right) + 1) {
+            if (height(left.left) >= height(left.right))
+                return new Node<T>(left.range, left.left, new Node<T>(range, left.right, right));
+
+            Node<T> middle = left.right;
+            return new Node<T>(middle.range, new Node<T>(left.range, left.left, middle.left), new Node<T>(range, middle.right, right));
+        }
+        if (height(right) > height(left) + 1) {
+            if (height(right.right) >= height(right.left))
+                return new Node<T>(right.range, new Node<T>(range, left, right.left), right.right);
+
+            Node<T> middle = right.left;
+            return new Node<T>(middle.range, new Node<T>(range, left, middle.left), new Node<T>(right.range, middle.right, right.right));
+        }
+        return new Node<T>(range, left, right);
+    }
+
+    private static int height(Node<?> node) {
+        return (node == null ? 0 : node.height);
+    }
+
+    private static int size(Node<?> node) {
+        return (node == null ? 0 : node.size);
+    }
+
+    private static <T extends Comparable<T>> Node<T> first(Node<T> node) {
+        while (node.left != null)
+            node = node.left;
+
+        return node;
+    }
+
+    private static <T extends Comparable<T>> Node<T> last(Node<T> node) {
+        while (node.right != null)
+            node = node.right;
+
+        return node;
+    }
+
+    /**
+     * Returns the last range whose lower bound is at or below the item, or null if there is none.
+     */
+    private Range<T> floor(T item) {
+        Range<T> floor = null;
+        for (Node<T> node = root; node != null; ) {
+            if (lowerOnlyOrValueComparator().compare(node.range, item) <= 0) {
+                floor = node.range;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return floor;
+    }
+
+    /**
+     * Returns the last range whose lower bound is at or below the lower bound of the given range, or null if there is
+     * none.
+     */
+    @SuppressWarnings("unchecked")
+    private Range<T> floor(Range<T> range) {
+        Range<T> floor = null;
+        for (Node<T> node = root; node != null; ) {
+            if (lowerOnlyComparator().compare(node.range, range) <= 0) {
+                floor = node.range;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return floor;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(T item) {
+        Range<T> floor = floor(item);
+        return floor != null && floor.contains(item);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean encloses(Range<T> range) {
+        range = canonical(range);
+        Range<T> floor = floor(range);
+        return floor != null && floor.encloses(range);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean intersects(Range<T> range) {
+        range = canonical(range);
+        if (range.isEmpty())
+            return false;
+
+        Iterator<Range<T>> candidates = new NodeIterator<T>(root, range);
+        return candidates.hasNext() && position(candidates.next(), range, false) == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Range<T> rangeContaining(T item) {
+        Range<T> floor = floor(item);
+        return (floor != null && floor.contains(item) ? floor : null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Range<T> span() {
+        if (root == null)
+            throw new NoSuchElementException();
+
+        return first(root).range.span(last(root).range);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The view starts iterating at the first range which reaches the bounds, so it does not walk the ranges below them.
+     */
+    @Override
+    public RangeSet<T> subRangeSet(Range<T> range) {
+        return new SubRangeSetView<T>(this, range) {
+            @Override
+            Iterator<Range<T>> candidates() {
+                return new NodeIterator<T>(root, bounds);
+            }
+
+            @Override
+            Range<T> canonical(Range<T> range) {
+                return PersistentRangeSet.this.canonical(range);
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PersistentRangeSet<T> complement() {
+        return fromSorted(RangeIterators.complement(iterator()), discreteDomain);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Range<T>> iterator() {
+        return new NodeIterator<T>(root, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The returned set is a read-only view over this version.
+     */
+    @Override
+    public Set<Range<T>> asSet() {
+        return new AbstractSet<Range<T>>() {
+            @Override
+            public Iterator<Range<T>> iterator() {
+                return PersistentRangeSet.this.iterator();
+            }
+
+            @Override
+            public int size() {
+                return PersistentRangeSet.this.size();
+            }
+        };
+    }
+
+    /**
+     * Iterates the ranges of a tree in order, starting at the first range which is not entirely below the bounds, or at
+     * the first range if there are no bounds.
+     */
+    private static final class NodeIterator<T extends Comparable<T>> extends AbstractIterator<Range<T>> {
+        private final Deque<Node<T>> stack = new ArrayDeque<Node<T>>();
+
+        NodeIterator(Node<T> node, Range<T> bounds) {
+            while (node != null) {
+                if (bounds != null && position(node.range, bounds, false) < 0) {
+                    node = node.right;
+                } else {
+                    stack.push(node);
+                    node = node.left;
+                }
+            }
+        }
+
+        @Override
+        protected Range<T> computeNext() {
+            if (stack.isEmpty())
+                return endOfData();
+
+            Node<T> node = stack.pop();
+            for (Node<T> child = node.right; child != null; child = child.left)
+                stack.push(child);
+
+            return node.range;
+        }
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.  Use {@link #with(Range)} instead.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean add(Range<T> tRange) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean add(RangeSet<T> tRangeSet) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean addAll(Iterable<? extends Range<T>> tRanges) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.  Use {@link #without(Range)} instead.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean remove(Range<T> tRange) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean remove(RangeSet<T> tRangeSet) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public boolean removeAll(Iterable<? extends Range<T>> tRanges) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Guaranteed to throw an exception and leave the range set unmodified.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        PersistentRangeSet that = (PersistentRangeSet) o;
+
+        return size() == that.size() && elementsEqual(iterator(), that.iterator()) && equal(discreteDomain, that.discreteDomain);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (Range<T> range : this)
+            result = 31 * result + range.hashCode();
+
+        result = 31 * result + (discreteDomain != null ? discreteDomain.hashCode() : 0);
+        return result;
+    }
+}
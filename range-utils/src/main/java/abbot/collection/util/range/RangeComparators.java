@@ -48,6 +48,39 @@ public class RangeComparators {
         }
     };
 
+    private static final Comparator<Object> lowerOnlyOrValue = new Comparator<Object>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public int compare(Object item1, Object item2) {
+            if (item1 instanceof Range) {
+                if (item2 instanceof Range)
+                    return compareLower((Range) item1, (Range) item2);
+
+                return -compareValue((Comparable) item2, (Range) item1);
+            }
+
+            if (item2 instanceof Range)
+                return compareValue((Comparable) item1, (Range) item2);
+
+            return ((Comparable) item1).compareTo(item2);
+        }
+    };
+
+    /**
+     * Compares a value with the lower bound of the range, treating the value as the closed lower bound of a range.
+     */
+    @SuppressWarnings("unchecked")
+    private static int compareValue(Comparable value, Range<? extends Comparable> range) {
+        if (!range.hasLowerBound())
+            return GREATER;
+
+        int compare = value.compareTo(range.lowerEndpoint());
+        if (compare != 0)
+            return compare;
+
+        return (range.lowerBoundType() == CLOSED ? EQUAL : LESS);
+    }
+
     @SuppressWarnings("unchecked")
     private static int compareLower(Range<? extends Comparable> range1, Range<? extends Comparable> range2){
         if (range1.hasLowerBound()) {
@@ -122,6 +155,16 @@ public class RangeComparators {
         return lowerBiased;
     }
 
+    /**
+     * Compares only the lower bound of the ranges like {@link #lowerOnlyComparator()}, but also accepts a raw endpoint
+     * value in place of a range, which is treated as the closed lower bound of a range.  This lets a sorted collection of
+     * ranges be probed by value without allocating a singleton range for each lookup.
+     * @return -1 (less), 0 (equal), 1 (greater)
+     */
+    static Comparator<Object> lowerOnlyOrValueComparator() {
+        return lowerOnlyOrValue;
+    }
+
     /**
      * Compares the upper bound of the ranges and if equal then uses the lower bound.
      * @return -1 (less), 0 (equal), 1 (greater)
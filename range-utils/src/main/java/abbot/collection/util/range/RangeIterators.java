@@ -0,0 +1,200 @@
+package abbot.collection.util.range;
+
+import com.google.common.base.Function;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.BoundType;
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.collect.Range;
+import com.google.common.collect.Ranges;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static abbot.collection.util.range.RangeComparators.lowerOnlyComparator;
+import static abbot.collection.util.range.RangeComparators.upperOnlyComparator;
+import static com.google.common.collect.BoundType.CLOSED;
+import static com.google.common.collect.BoundType.OPEN;
+import static com.google.common.collect.Iterators.peekingIterator;
+import static com.google.common.collect.Ranges.downTo;
+import static com.google.common.collect.Ranges.range;
+import static com.google.common.collect.Ranges.upTo;
+
+/**
+ * Sweep-line set algebra over iterators of ranges.  Every input is expected to be sorted by lower bound, as the iterator
+ * of any {@link RangeSet} is, and every output is sorted, disjoint and coalesced.  All of the operations are lazy and
+ * single pass, so combining inputs with N total ranges is O(N) (O(N log K) for the K way union) and never materializes
+ * an intermediate set.
+ */
+final class RangeIterators {
+
+    private RangeIterators() {/* static utility */}
+
+    static BoundType flip(BoundType boundType) {
+        return boundType == CLOSED ? OPEN : CLOSED;
+    }
+
+    static <T extends Comparable<T>> List<Iterator<Range<T>>> iterators(Iterable<? extends Iterable<Range<T>>> rangeSets) {
+        List<Iterator<Range<T>>> iterators = new ArrayList<Iterator<Range<T>>>();
+        for (Iterable<Range<T>> rangeSet : rangeSets)
+            iterators.add(rangeSet.iterator());
+
+        return iterators;
+    }
+
+    /**
+     * Merges any consecutive ranges which are connected and drops empty ranges.
+     */
+    static <T extends Comparable<T>> Iterator<Range<T>> coalesce(Iterator<Range<T>> sorted) {
+        final PeekingIterator<Range<T>> ranges = peekingIterator(sorted);
+        return new AbstractIterator<Range<T>>() {
+            @Override
+            protected Range<T> computeNext() {
+                Range<T> current = null;
+                while (ranges.hasNext()) {
+                    Range<T> next = ranges.peek();
+                    if (next.isEmpty())
+                        ranges.next();
+                    else if (current == null)
+                        current = ranges.next();
+                    else if (current.isConnected(next))
+                        current = current.span(ranges.next());
+                    else
+                        break;
+                }
+                return (current == null ? endOfData() : current);
+            }
+        };
+    }
+
+    /**
+     * Canonicalizes every range using the domain, coalescing any ranges which become connected.
+     */
+    static <T extends Comparable<T>> Iterator<Range<T>> canonical(Iterator<Range<T>> ranges, final DiscreteDomain<T> domain) {
+        return coalesce(Iterators.transform(ranges, new Function<Range<T>, Range<T>>() {
+            @Override
+            public Range<T> apply(Range<T> range) {
+                return range.canonical(domain);
+            }
+        }));
+    }
+
+    static <T extends Comparable<T>> List<Iterator<Range<T>>> canonical(List<Iterator<Range<T>>> iterators, DiscreteDomain<T> domain) {
+        List<Iterator<Range<T>>> canonical = new ArrayList<Iterator<Range<T>>>(iterators.size());
+        for (Iterator<Range<T>> iterator : iterators)
+            canonical.add(canonical(iterator, domain));
+
+        return canonical;
+    }
+
+    /**
+     * Performs a K way merge of the inputs, coalescing any connected ranges along the way.
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends Comparable<T>> Iterator<Range<T>> union(List<? extends Iterator<Range<T>>> iterators) {
+        return coalesce(Iterators.<Range<T>>mergeSorted(iterators, lowerOnlyComparator()));
+    }
+
+    /**
+     * Walks the inputs in lockstep, emitting the overlap of the current range from each input and then advancing the
+     * input whose current range ends first.  With no inputs the result is all values.
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends Comparable<T>> Iterator<Range<T>> intersection(List<? extends Iterator<Range<T>>> iterators) {
+        if (iterators.isEmpty())
+            return Iterators.singletonIterator(Ranges.<T>all());
+
+        final List<PeekingIterator<Range<T>>> inputs = new ArrayList<PeekingIterator<Range<T>>>(iterators.size());
+        for (Iterator<Range<T>> iterator : iterators)
+            inputs.add(peekingIterator(coalesce(iterator)));
+
+        return coalesce(new AbstractIterator<Range<T>>() {
+            @Override
+            protected Range<T> computeNext() {
+                while (true) {
+                    Range<T> overlap = null;
+                    boolean disjoint = false;
+                    PeekingIterator<Range<T>> first = null;
+                    for (PeekingIterator<Range<T>> input : inputs) {
+                        if (!input.hasNext())
+                            return endOfData();
+
+                        Range<T> current = input.peek();
+                        if (first == null || upperOnlyComparator().compare(current, first.peek()) < 0)
+                            first = input;
+
+                        if (overlap == null)
+                            overlap = current;
+                        else if (!disjoint && overlap.isConnected(current))
+                            overlap = overlap.intersection(current);
+                        else
+                            disjoint = true;
+                    }
+
+                    first.next();
+                    if (!disjoint && !overlap.isEmpty())
+                        return overlap;
+                }
+            }
+        });
+    }
+
+    /**
+     * Generates the gaps between the ranges of the input.
+     */
+    static <T extends Comparable<T>> Iterator<Range<T>> complement(Iterator<Range<T>> sorted) {
+        final Iterator<Range<T>> ranges = coalesce(sorted);
+        return new AbstractIterator<Range<T>>() {
+            private boolean started = false;
+            private Range<T> previous = null;
+
+            @Override
+            protected Range<T> computeNext() {
+                if (!started) {
+                    started = true;
+                    if (!ranges.hasNext())
+                        return Ranges.all();
+
+                    previous = ranges.next();
+                    if (previous.hasLowerBound())
+                        return upTo(previous.lowerEndpoint(), flip(previous.lowerBoundType()));
+                }
+
+                if (previous == null)
+                    return endOfData();
+
+                if (ranges.hasNext()) {
+                    Range<T> next = ranges.next();
+                    Range<T> gap = range(
+                            previous.upperEndpoint(),
+                            flip(previous.upperBoundType()),
+                            next.lowerEndpoint(),
+                            flip(next.lowerBoundType())
+                    );
+                    previous = next;
+                    return gap;
+                }
+
+                Range<T> last = previous;
+                previous = null;
+                if (last.hasUpperBound())
+                    return downTo(last.upperEndpoint(), flip(last.upperBoundType()));
+
+                return endOfData();
+            }
+        };
+    }
+
+    /**
+     * Generates the portions of the first input which are not in the second.
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends Comparable<T>> Iterator<Range<T>> difference(Iterator<Range<T>> ranges, Iterator<Range<T>> toRemove) {
+        List<Iterator<Range<T>>> inputs = new ArrayList<Iterator<Range<T>>>(2);
+        inputs.add(ranges);
+        inputs.add(complement(toRemove));
+        return intersection(inputs);
+    }
+}
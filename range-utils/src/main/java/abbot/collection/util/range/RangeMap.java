@@ -0,0 +1,84 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.Range;
+
+import java.util.Map;
+
+/**
+ * A mapping from disjoint ranges of keys to values.  Unlike a {@link RangeSet}, ranges are never merged with ranges
+ * mapped to a different value, so putting a range overwrites the part of any existing ranges it overlaps.
+ */
+public interface RangeMap<K extends Comparable<K>, V> {
+
+    /**
+     * Retrieves the number of ranges in the range map.
+     * @return number of ranges in the range map.
+     */
+    int size();
+
+    /**
+     * Returns true if there are no ranges in the range map.
+     * @return true if there are no ranges, false otherwise
+     */
+    boolean isEmpty();
+
+    /**
+     * Retrieves the value mapped to the range containing the key.
+     * @param key
+     * @return the value, or null if no range contains the key.
+     */
+    V get(K key);
+
+    /**
+     * Retrieves the range containing the key along with its value.
+     * @param key
+     * @return the entry, or null if no range contains the key.
+     */
+    Map.Entry<Range<K>, V> getEntry(K key);
+
+    /**
+     * Maps the range to the value.  Any parts of existing ranges which overlap the range are overwritten, and the range
+     * is merged with any connected ranges which are mapped to an equal value.
+     * @param range
+     * @param value must not be null
+     */
+    void put(Range<K> range, V value);
+
+    /**
+     * Puts all of the ranges in the provided range map into this range map.
+     * @param rangeMap
+     */
+    void putAll(RangeMap<K, V> rangeMap);
+
+    /**
+     * Removes the mapping for every key in the range.  Any parts of existing ranges outside the range are kept.
+     * @param range
+     */
+    void remove(Range<K> range);
+
+    /**
+     * Removes all of the ranges from the range map.
+     */
+    void clear();
+
+    /**
+     * Returns the smallest range enclosing every range in the range map.
+     * @return the span of the range map.
+     * @throws java.util.NoSuchElementException if the range map is empty.
+     */
+    Range<K> span();
+
+    /**
+     * Returns a view of the part of this range map which intersects the range.  Ranges in the view are clipped to the
+     * range, and changes to the view write through to this range map.
+     * @param range
+     * @return a view of the range map.
+     */
+    RangeMap<K, V> subRangeMap(Range<K> range);
+
+    /**
+     * Returns an unmodifiable map from each range to its value, in ascending order of the ranges.
+     * @return map view of the range map.
+     */
+    Map<Range<K>, V> asMap();
+}
@@ -86,6 +86,35 @@ public interface RangeSet<T extends Comparable<T>> extends Iterable<Range<T>> {
      */
     boolean encloses(Range<T> range);
 
+    /**
+     * Determines if any range in this range set shares at least one value with the provided range.
+     * @param range
+     * @return True if the range intersects the set, false otherwise.
+     */
+    boolean intersects(Range<T> range);
+
+    /**
+     * Retrieves the range in this range set which contains the provided item.
+     * @param item
+     * @return The range containing the item, or null if there is none.
+     */
+    Range<T> rangeContaining(T item);
+
+    /**
+     * Returns the smallest range enclosing every range in the range set.
+     * @return the span of the range set.
+     * @throws java.util.NoSuchElementException if the range set is empty.
+     */
+    Range<T> span();
+
+    /**
+     * Returns a view of the part of this range set which intersects the range.  Ranges in the view are clipped to the
+     * range, and changes to the view write through to this range set.
+     * @param range
+     * @return a view of the range set.
+     */
+    RangeSet<T> subRangeSet(Range<T> range);
+
     /**
      * Returns the complement of the current range set.
      * @return
@@ -0,0 +1,257 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.BoundType;
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.DiscreteDomains;
+import com.google.common.collect.Range;
+import com.google.common.collect.Ranges;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static abbot.collection.util.range.EndpointCodecs.readUnsignedVarLong;
+import static abbot.collection.util.range.EndpointCodecs.writeUnsignedVarLong;
+import static abbot.collection.util.range.RangeComparators.lowerOnlyComparator;
+import static com.google.common.collect.BoundType.CLOSED;
+import static com.google.common.collect.BoundType.OPEN;
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * Compact, versioned binary format for range sets.
+ *
+ * The format is a version byte, the number of ranges as a varint and a header byte, followed by the ranges in ascending
+ * order.  The header flags record whether the first range is unbounded below and the last range unbounded above, which
+ * are the only ranges which can be, and the bound types shared by every range.  When the ranges do not all share the
+ * same bound types, as they do in any canonical discrete set, each range is preceded by its own flags byte instead.  The endpoints themselves are written by an
+ * {@link EndpointCodec}, which for integers and longs stores each endpoint as a varint delta from the previous one.
+ *
+ * Since the ranges are written in order, reading builds the backing tree of the {@link TreeRangeSet} directly in O(N)
+ * instead of inserting and rebalancing for every range.
+ *
+ * @param <T>
+ */
+public final class RangeSetCodec<T extends Comparable<T>> {
+
+    static final int VERSION = 1;
+
+    private static final int UNBOUNDED_BELOW = 1;
+    private static final int UNBOUNDED_ABOVE = 1 << 1;
+    private static final int LOWER_CLOSED = 1 << 2;
+    private static final int UPPER_CLOSED = 1 << 3;
+    private static final int MIXED = 1 << 7;
+
+    //Space for at most this many ranges is allocated before they are read.
+    private static final int INITIAL_READ_CAPACITY = 1024;
+
+    private final EndpointCodec<T> endpointCodec;
+    private final DiscreteDomain<T> discreteDomain;
+
+    /**
+     * Creates a codec which reads ranges back into a {@link TreeRangeSet}.
+     * @param endpointCodec
+     */
+    public RangeSetCodec(EndpointCodec<T> endpointCodec) {
+        this(endpointCodec, null);
+    }
+
+    /**
+     * Creates a codec which reads ranges back into a {@link DiscreteTreeRangeSet} using the provided domain.
+     * @param endpointCodec
+     * @param discreteDomain
+     */
+    public RangeSetCodec(EndpointCodec<T> endpointCodec, DiscreteDomain<T> discreteDomain) {
+        this.endpointCodec = endpointCodec;
+        this.discreteDomain = discreteDomain;
+    }
+
+    /**
+     * Returns a codec for discrete long ranges.
+     */
+    public static RangeSetCodec<Long> longs() {
+        return new RangeSetCodec<Long>(EndpointCodecs.longs(), DiscreteDomains.longs());
+    }
+
+    /**
+     * Returns a codec for discrete integer ranges.
+     */
+    public static RangeSetCodec<Integer> integers() {
+        return new RangeSetCodec<Integer>(EndpointCodecs.integers(), DiscreteDomains.integers());
+    }
+
+    private static BoundType boundType(int flags, int closedFlag) {
+        return ((flags & closedFlag) != 0 ? CLOSED : OPEN);
+    }
+
+    /**
+     * Writes the ranges of the range set.
+     * @param rangeSet
+     * @param out
+     * @throws IOException
+     */
+    public void write(RangeSet<T> rangeSet, DataOutput out) throws IOException {
+        //The ranges are copied once, so the header always describes the records even if the set changes concurrently.
+        List<Range<T>> ranges = newArrayList(rangeSet);
+
+        //Only the bounded sides of a range have a bound type, and only the first and last ranges can be unbounded.
+        int size = 0;
+        int header = 0;
+        BoundType lowerType = null;
+        BoundType upperType = null;
+        for (Range<T> range : ranges) {
+            if (range.hasLowerBound()) {
+                if (lowerType == null)
+                    lowerType = range.lowerBoundType();
+                else if (lowerType != range.lowerBoundType())
+                    header |= MIXED;
+            } else {
+                if (size > 0)
+                    throw new IllegalArgumentException("Only the first range may be unbounded below");
+                header |= UNBOUNDED_BELOW;
+            }
+
+            if ((header & UNBOUNDED_ABOVE) != 0)
+                throw new IllegalArgumentException("Only the last range may be unbounded above");
+
+            if (range.hasUpperBound()) {
+                if (upperType == null)
+                    upperType = range.upperBoundType();
+                else if (upperType != range.upperBoundType())
+                    header |= MIXED;
+            } else {
+                header |= UNBOUNDED_ABOVE;
+            }
+            size++;
+        }
+        if (lowerType == CLOSED)
+            header |= LOWER_CLOSED;
+        if (upperType == CLOSED)
+            header |= UPPER_CLOSED;
+
+        out.writeByte(VERSION);
+        writeUnsignedVarLong(out, size);
+        out.writeByte(header);
+
+        T previous = null;
+        for (Range<T> range : ranges) {
+            if ((header & MIXED) != 0)
+                out.writeByte((range.hasLowerBound() && range.lowerBoundType() == CLOSED ? LOWER_CLOSED : 0)
+                        | (range.hasUpperBound() && range.upperBoundType() == CLOSED ? UPPER_CLOSED : 0));
+
+            if (range.hasLowerBound()) {
+                endpointCodec.write(out, previous, range.lowerEndpoint());
+                previous = range.lowerEndpoint();
+            }
+            if (range.hasUpperBound()) {
+                endpointCodec.write(out, previous, range.upperEndpoint());
+                previous = range.upperEndpoint();
+            }
+        }
+    }
+
+    /**
+     * Reads a range set written by {@link #write(RangeSet, DataOutput)}.
+     * @param in
+     * @return a new range set containing the ranges read.
+     * @throws IOException if the data is not a valid range set or is of an unsupported version.
+     */
+    public TreeRangeSet<T> read(DataInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != VERSION)
+            throw new StreamCorruptedException("Unsupported range set format version " + version);
+
+        long size = readUnsignedVarLong(in);
+        if (size > Integer.MAX_VALUE)
+            throw new StreamCorruptedException("Invalid range set size " + size);
+
+        //The list grows as ranges are read rather than trusting the size, so a corrupt size cannot exhaust the heap.
+        int header = in.readUnsignedByte();
+        List<Range<T>> ranges = new ArrayList<Range<T>>((int) Math.min(size, INITIAL_READ_CAPACITY));
+        T previous = null;
+        for (int i = 0; i < size; i++) {
+            int flags = ((header & MIXED) != 0 ? in.readUnsignedByte() : header);
+
+            T lower = null;
+            if (i > 0 || (header & UNBOUNDED_BELOW) == 0)
+                previous = lower = endpointCodec.read(in, previous);
+
+            T upper = null;
+            if (i < size - 1 || (header & UNBOUNDED_ABOVE) == 0)
+                previous = upper = endpointCodec.read(in, previous);
+
+            Range<T> range = range(flags, lower, upper);
+            if (i > 0 && !follows(ranges.get(i - 1), range))
+                throw new StreamCorruptedException("Ranges are not sorted and disjoint");
+            ranges.add(range);
+        }
+
+        TreeRangeSet<T> rangeSet = (discreteDomain == null ? new TreeRangeSet<T>() : new DiscreteTreeRangeSet<T>(discreteDomain));
+        Iterator<Range<T>> sorted = ranges.iterator();
+        if (discreteDomain != null)
+            sorted = RangeIterators.canonical(sorted, discreteDomain);
+
+        rangeSet.loadSorted(RangeIterators.coalesce(sorted));
+        return rangeSet;
+    }
+
+    /**
+     * Returns true if the range starts after the previous range and does not overlap it.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends Comparable<T>> boolean follows(Range<T> previous, Range<T> range) {
+        if (lowerOnlyComparator().compare(previous, range) >= 0)
+            return false;
+
+        return !previous.isConnected(range) || previous.intersection(range).isEmpty();
+    }
+
+    /**
+     * Creates the range, where a null endpoint means that side is unbounded.
+     */
+    private Range<T> range(int flags, T lower, T upper) throws IOException {
+        try {
+            if (lower == null)
+                return (upper == null ? Ranges.<T>all() : Ranges.upTo(upper, boundType(flags, UPPER_CLOSED)));
+
+            if (upper == null)
+                return Ranges.downTo(lower, boundType(flags, LOWER_CLOSED));
+
+            return Ranges.range(lower, boundType(flags, LOWER_CLOSED), upper, boundType(flags, UPPER_CLOSED));
+        } catch (IllegalArgumentException e) {
+            throw new StreamCorruptedException("Invalid range: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Encodes the range set into a new byte array.
+     * @param rangeSet
+     * @return the encoded range set.
+     */
+    public byte[] toBytes(RangeSet<T> rangeSet) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            write(rangeSet, new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new IllegalStateException("Unexpected exception writing to memory", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a range set from bytes created by {@link #toBytes(RangeSet)}.
+     * @param bytes
+     * @return a new range set containing the decoded ranges.
+     * @throws IOException if the bytes are not a valid range set.
+     */
+    public TreeRangeSet<T> fromBytes(byte[] bytes) throws IOException {
+        return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+}
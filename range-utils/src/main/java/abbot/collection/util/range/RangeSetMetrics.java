@@ -0,0 +1,43 @@
+package abbot.collection.util.range;
+
+/**
+ * Receives the measurements taken by an {@link InstrumentedRangeSet}.  Implementations must be thread safe if the range
+ * set is used from more than one thread, and should be cheap since they are called on every operation.
+ *
+ * See {@link JmxRangeSetMetrics} for an implementation which publishes the measurements over JMX.
+ */
+public interface RangeSetMetrics {
+
+    /**
+     * The operations which are measured.
+     */
+    enum Operation {
+        ADD,
+        REMOVE,
+        CONTAINS,
+        ENCLOSES,
+        COMPLEMENT
+    }
+
+    /**
+     * Records how long a single call to the operation took.
+     * @param operation
+     * @param nanos elapsed time in nanoseconds.
+     */
+    void recordLatency(Operation operation, long nanos);
+
+    /**
+     * Records how a single add or remove which modified the set changed its ranges.
+     * @param operation either {@link Operation#ADD} or {@link Operation#REMOVE}.
+     * @param merged number of existing ranges which were coalesced with the added range.
+     * @param split number of existing ranges which were split in two by the removed range.
+     */
+    void recordMutation(Operation operation, int merged, int split);
+
+    /**
+     * Records the size of the set after a change.
+     * @param rangeCount number of ranges in the set.
+     * @param estimatedBytes estimate of the heap retained by the ranges.
+     */
+    void recordSize(int rangeCount, long estimatedBytes);
+}
@@ -0,0 +1,50 @@
+package abbot.collection.util.range;
+
+import java.util.Map;
+
+/**
+ * Management interface published by {@link JmxRangeSetMetrics}.  Maps are keyed by the name of the
+ * {@link RangeSetMetrics.Operation}.
+ */
+public interface RangeSetMetricsMXBean {
+
+    /**
+     * Returns the number of calls made to each operation.
+     */
+    Map<String, Long> getOperationCounts();
+
+    /**
+     * Returns the mean latency of each operation in nanoseconds.
+     */
+    Map<String, Long> getMeanLatencyNanos();
+
+    /**
+     * Returns the 99th percentile latency of each operation in nanoseconds, accurate to within a factor of two.
+     */
+    Map<String, Long> getLatency99thPercentileNanos();
+
+    /**
+     * Returns the total number of existing ranges coalesced by adds.
+     */
+    long getRangesMerged();
+
+    /**
+     * Returns the total number of ranges split in two by removes.
+     */
+    long getRangesSplit();
+
+    /**
+     * Returns the number of ranges in the set after the last change.
+     */
+    int getRangeCount();
+
+    /**
+     * Returns the estimated heap retained by the ranges after the last change.
+     */
+    long getEstimatedRetainedBytes();
+
+    /**
+     * Clears every counter and histogram.
+     */
+    void reset();
+}
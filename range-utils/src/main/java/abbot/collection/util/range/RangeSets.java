@@ -1,8 +1,36 @@
 package abbot.collection.util.range;
 
 
+import com.google.common.base.Throwables;
+import com.google.common.collect.BoundType;
 import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.Range;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static abbot.collection.util.range.RangeIterators.canonical;
+import static abbot.collection.util.range.RangeIterators.iterators;
+import static com.google.common.collect.Lists.newArrayList;
+import static java.util.Arrays.asList;
+
+/**
+ * Static utility methods for creating and combining {@link RangeSet}s.
+ *
+ * The set algebra operations make a single sweep over the sorted iterators of the inputs and build the result in order,
+ * so they are O(N) in the total number of ranges and never create intermediate sets.
+ */
 public class RangeSets {
 
     public static <T extends Comparable<T>> RangeSet<T> newRangeSet() {
@@ -13,35 +41,393 @@ public class RangeSets {
         return new DiscreteTreeRangeSet<T>(domain);
     }
 
-    public static <T extends Comparable<T>> RangeSet<T> union(RangeSet<T> ... rangeSets) {
+    public static LongRangeSet newLongRangeSet() {
+        return new LongRangeSet();
+    }
+
+    /**
+     * Creates a range set containing the provided ranges.  The ranges are sorted (if they are not already) and coalesced
+     * in a single sweep, so this is O(N log N) for unsorted input and O(N) for sorted input.
+     */
+    public static <T extends Comparable<T>> RangeSet<T> copyOf(Iterable<? extends Range<T>> ranges) {
         TreeRangeSet<T> result = new TreeRangeSet<T>();
-        for (RangeSet<T> rangeSet : rangeSets)
-            result.add(rangeSet);
+        result.addAll(ranges);
+        return result;
+    }
 
+    /**
+     * Creates a range set containing the provided ranges, canonicalized with the domain.  The ranges are sorted (if
+     * they are not already) and coalesced in a single sweep, so this is O(N log N) for unsorted input and O(N) for
+     * sorted input.
+     */
+    public static <T extends Comparable<T>> RangeSet<T> copyOf(DiscreteDomain<T> domain, Iterable<? extends Range<T>> ranges) {
+        TreeRangeSet<T> result = new DiscreteTreeRangeSet<T>(domain);
+        result.addAll(ranges);
         return result;
     }
 
-    public static <T extends Comparable<T>> RangeSet<T> union(DiscreteDomain<T> domain, RangeSet<T> ... rangeSets) {
-        DiscreteTreeRangeSet<T> result = new DiscreteTreeRangeSet<T>(domain);
-        for (RangeSet<T> rangeSet : rangeSets)
-            result.add(rangeSet);
+    /**
+     * Returns the domain the range set canonicalizes its ranges with, or null if it is not known to, so copies of it can
+     * keep canonicalizing.
+     */
+    static <T extends Comparable<T>> DiscreteDomain<T> discreteDomainOf(RangeSet<T> rangeSet) {
+        if (rangeSet instanceof DiscreteTreeRangeSet)
+            return ((DiscreteTreeRangeSet<T>) rangeSet).discreteDomain();
+        if (rangeSet instanceof ImmutableRangeSet)
+            return ((ImmutableRangeSet<T>) rangeSet).discreteDomain();
+        if (rangeSet instanceof ConcurrentRangeSet)
+            return ((ConcurrentRangeSet<T>) rangeSet).discreteDomain();
+        if (rangeSet instanceof PersistentRangeSet)
+            return ((PersistentRangeSet<T>) rangeSet).discreteDomain();
+        if (rangeSet instanceof ShardedRangeSet)
+            return ((ShardedRangeSet<T>) rangeSet).discreteDomain();
+
+        return null;
+    }
 
+    private static <T extends Comparable<T>> TreeRangeSet<T> build(TreeRangeSet<T> result, Iterator<Range<T>> sorted) {
+        result.loadSorted(sorted);
         return result;
     }
 
+    private static <T extends Comparable<T>> RangeSet<T> build(Iterator<Range<T>> sorted) {
+        return build(new TreeRangeSet<T>(), sorted);
+    }
+
+    private static <T extends Comparable<T>> RangeSet<T> build(DiscreteDomain<T> domain, Iterator<Range<T>> sorted) {
+        return build(new DiscreteTreeRangeSet<T>(domain), canonical(sorted, domain));
+    }
+
+    public static <T extends Comparable<T>> RangeSet<T> union(RangeSet<T> ... rangeSets) {
+        return union(asList(rangeSets));
+    }
+
+    public static <T extends Comparable<T>> RangeSet<T> union(Collection<? extends RangeSet<T>> rangeSets) {
+        return build(RangeIterators.union(iterators(rangeSets)));
+    }
+
+    public static <T extends Comparable<T>> RangeSet<T> union(DiscreteDomain<T> domain, RangeSet<T> ... rangeSets) {
+        return union(domain, asList(rangeSets));
+    }
+
+    public static <T extends Comparable<T>> RangeSet<T> union(DiscreteDomain<T> domain, Collection<? extends RangeSet<T>> rangeSets) {
+        return build(domain, RangeIterators.union(canonical(iterators(rangeSets), domain)));
+    }
+
     public static <T extends Comparable<T>> RangeSet<T> intersection(RangeSet<T> ... rangeSets) {
-        TreeRangeSet<T> result = new TreeRangeSet<T>();
-        for (RangeSet<T> rangeSet : rangeSets)
-            result.add(rangeSet.complement());
+        return intersection(asList(rangeSets));
+    }
 
-        return result.complement();
+    public static <T extends Comparable<T>> RangeSet<T> intersection(Collection<? extends RangeSet<T>> rangeSets) {
+        return build(RangeIterators.intersection(iterators(rangeSets)));
     }
 
     public static <T extends Comparable<T>> RangeSet<T> intersection(DiscreteDomain<T> domain, RangeSet<T> ... rangeSets) {
-        DiscreteTreeRangeSet<T> result = new DiscreteTreeRangeSet<T>(domain);
-        for (RangeSet<T> rangeSet : rangeSets)
-            result.add(rangeSet.complement());
+        return intersection(domain, asList(rangeSets));
+    }
+
+    public static <T extends Comparable<T>> RangeSet<T> intersection(DiscreteDomain<T> domain, Collection<? extends RangeSet<T>> rangeSets) {
+        return build(domain, RangeIterators.intersection(canonical(iterators(rangeSets), domain)));
+    }
+
+    /**
+     * Creates the union of the range sets by merging them in parallel on the executor.  The inputs are split into
+     * groups of up to threshold range sets, each group is merged in a single sweep as a separate task, and the results
+     * are merged in the same way level by level until one remains.  The result is identical to
+     * {@link #union(Collection)}, and the parallelism is that of the executor.  The inputs must not be modified until
+     * this returns.
+     * @param rangeSets
+     * @param executor
+     * @param threshold the most range sets merged by a single task, at least 2.
+     * @return a new range set containing the union.
+     * @throws InterruptedException if interrupted while waiting for the tasks to complete.
+     */
+    public static <T extends Comparable<T>> RangeSet<T> parallelUnion(Collection<? extends RangeSet<T>> rangeSets,
+                                                                      ExecutorService executor, int threshold) throws InterruptedException {
+        return build(new TreeRangeSet<T>(), reduce(rangeSets, null, true, executor, threshold).iterator());
+    }
+
+    /**
+     * Creates the union of the range sets by merging them in parallel on the executor, canonicalizing all ranges with the
+     * domain.  See {@link #parallelUnion(Collection, ExecutorService, int)}.
+     */
+    public static <T extends Comparable<T>> RangeSet<T> parallelUnion(DiscreteDomain<T> domain, Collection<? extends RangeSet<T>> rangeSets,
+                                                                      ExecutorService executor, int threshold) throws InterruptedException {
+        return build(domain, reduce(rangeSets, domain, true, executor, threshold).iterator());
+    }
+
+    /**
+     * Creates the intersection of the range sets by merging them in parallel on the executor.  See
+     * {@link #parallelUnion(Collection, ExecutorService, int)}, and the result is identical to
+     * {@link #intersection(Collection)}.
+     */
+    public static <T extends Comparable<T>> RangeSet<T> parallelIntersection(Collection<? extends RangeSet<T>> rangeSets,
+                                                                             ExecutorService executor, int threshold) throws InterruptedException {
+        return build(new TreeRangeSet<T>(), reduce(rangeSets, null, false, executor, threshold).iterator());
+    }
+
+    /**
+     * Creates the intersection of the range sets by merging them in parallel on the executor, canonicalizing all ranges
+     * with the domain.  See {@link #parallelUnion(Collection, ExecutorService, int)}.
+     */
+    public static <T extends Comparable<T>> RangeSet<T> parallelIntersection(DiscreteDomain<T> domain, Collection<? extends RangeSet<T>> rangeSets,
+                                                                             ExecutorService executor, int threshold) throws InterruptedException {
+        return build(domain, reduce(rangeSets, domain, false, executor, threshold).iterator());
+    }
+
+    /**
+     * Merges the inputs level by level, submitting one task per group of up to threshold inputs.  Tasks never wait on
+     * other tasks, so a bounded executor cannot deadlock.  Only the inputs need canonicalizing, since every intermediate
+     * result is built from canonical ranges.
+     */
+    private static <T extends Comparable<T>> List<Range<T>> reduce(Collection<? extends RangeSet<T>> rangeSets, DiscreteDomain<T> domain,
+                                                                   final boolean union, ExecutorService executor, int threshold) throws InterruptedException {
+        if (threshold < 2)
+            throw new IllegalArgumentException("Threshold must be at least 2: " + threshold);
+
+        if (rangeSets.isEmpty())
+            return merge(Collections.<Iterable<Range<T>>>emptyList(), domain, union);
+
+        List<? extends Iterable<Range<T>>> level = new ArrayList<RangeSet<T>>(rangeSets);
+        while (true) {
+            List<Callable<List<Range<T>>>> tasks = new ArrayList<Callable<List<Range<T>>>>();
+            for (int i = 0; i < level.size(); i += threshold) {
+                final List<? extends Iterable<Range<T>>> group = level.subList(i, Math.min(level.size(), i + threshold));
+                final DiscreteDomain<T> groupDomain = domain;
+                tasks.add(new Callable<List<Range<T>>>() {
+                    @Override
+                    public List<Range<T>> call() {
+                        return merge(group, groupDomain, union);
+                    }
+                });
+            }
+
+            List<List<Range<T>>> results = new ArrayList<List<Range<T>>>(tasks.size());
+            for (Future<List<Range<T>>> future : executor.invokeAll(tasks)) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw Throwables.propagate(e.getCause());
+                }
+            }
+
+            if (results.size() == 1)
+                return results.get(0);
+
+            level = results;
+            domain = null;
+        }
+    }
+
+    private static <T extends Comparable<T>> List<Range<T>> merge(List<? extends Iterable<Range<T>>> group, DiscreteDomain<T> domain, boolean union) {
+        List<Iterator<Range<T>>> iterators = iterators(group);
+        if (domain != null)
+            iterators = canonical(iterators, domain);
+
+        return newArrayList(union ? RangeIterators.union(iterators) : RangeIterators.intersection(iterators));
+    }
+
+    /**
+     * Creates a range set containing all of the values in the first range set which are not in the second.
+     */
+    public static <T extends Comparable<T>> RangeSet<T> difference(RangeSet<T> rangeSet, RangeSet<T> toRemove) {
+        return build(RangeIterators.difference(rangeSet.iterator(), toRemove.iterator()));
+    }
+
+    /**
+     * Creates a range set containing all of the values in the first range set which are not in the second.
+     */
+    public static <T extends Comparable<T>> RangeSet<T> difference(DiscreteDomain<T> domain, RangeSet<T> rangeSet, RangeSet<T> toRemove) {
+        return build(domain, RangeIterators.difference(
+                canonical(rangeSet.iterator(), domain),
+                canonical(toRemove.iterator(), domain)
+        ));
+    }
+
+    /**
+     * Creates a range set containing all of the values which are in exactly one of the two range sets.
+     */
+    public static <T extends Comparable<T>> RangeSet<T> symmetricDifference(RangeSet<T> first, RangeSet<T> second) {
+        return build(symmetricDifference(first.iterator(), first.iterator(), second.iterator(), second.iterator()));
+    }
+
+    /**
+     * Creates a range set containing all of the values which are in exactly one of the two range sets.
+     */
+    public static <T extends Comparable<T>> RangeSet<T> symmetricDifference(DiscreteDomain<T> domain, RangeSet<T> first, RangeSet<T> second) {
+        return build(domain, symmetricDifference(
+                canonical(first.iterator(), domain),
+                canonical(first.iterator(), domain),
+                canonical(second.iterator(), domain),
+                canonical(second.iterator(), domain)
+        ));
+    }
+
+    /**
+     * Splits the ranges of the range set into at most parts consecutive pieces holding nearly the same number of ranges,
+     * so the ranges can be processed on separate threads.  Use {@link LongElementIterator#trySplit()} to split the work
+     * evenly by the number of values instead.
+     * @param rangeSet
+     * @param parts
+     * @return immutable copies of the pieces, in ascending order.
+     * @throws IllegalArgumentException if parts is not positive.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Comparable<T>> List<ImmutableRangeSet<T>> partition(RangeSet<T> rangeSet, int parts) {
+        if (parts <= 0)
+            throw new IllegalArgumentException("Parts must be positive: " + parts);
+
+        Range<T>[] ranges = rangeSet.asSet().toArray(new Range[rangeSet.size()]);
+        parts = Math.min(parts, ranges.length);
+
+        List<ImmutableRangeSet<T>> partitions = new ArrayList<ImmutableRangeSet<T>>(parts);
+        for (int part = 0; part < parts; part++) {
+            int from = (int) ((long) ranges.length * part / parts);
+            int to = (int) ((long) ranges.length * (part + 1) / parts);
+            partitions.add(new ImmutableRangeSet<T>(Arrays.copyOfRange(ranges, from, to), null));
+        }
+        return partitions;
+    }
+
+    /**
+     * Creates a read-only view of the union of the range sets.  Nothing is copied; {@code contains} and {@code encloses}
+     * delegate to the inputs and stop at the first one which answers the query, and iteration merges the inputs as it
+     * goes.  Changes to the inputs are visible through the view.
+     */
+    public static <T extends Comparable<T>> RangeSet<T> unionView(RangeSet<T> ... rangeSets) {
+        return new CompositeRangeSetView.Union<T>(asList(rangeSets), null);
+    }
+
+    /**
+     * Creates a read-only view of the union of the range sets whose ranges are canonicalized with the domain.
+     * @see #unionView(RangeSet[])
+     */
+    public static <T extends Comparable<T>> RangeSet<T> unionView(DiscreteDomain<T> domain, RangeSet<T> ... rangeSets) {
+        return new CompositeRangeSetView.Union<T>(asList(rangeSets), domain);
+    }
+
+    /**
+     * Creates a read-only view of the intersection of the range sets.  Nothing is copied; {@code contains} and
+     * {@code encloses} delegate to the inputs and stop at the first one which answers the query, and iteration merges the
+     * inputs as it goes.  Changes to the inputs are visible through the view.
+     */
+    public static <T extends Comparable<T>> RangeSet<T> intersectionView(RangeSet<T> ... rangeSets) {
+        return new CompositeRangeSetView.Intersection<T>(asList(rangeSets), null);
+    }
+
+    /**
+     * Creates a read-only view of the intersection of the range sets whose ranges are canonicalized with the domain.
+     * @see #intersectionView(RangeSet[])
+     */
+    public static <T extends Comparable<T>> RangeSet<T> intersectionView(DiscreteDomain<T> domain, RangeSet<T> ... rangeSets) {
+        return new CompositeRangeSetView.Intersection<T>(asList(rangeSets), domain);
+    }
+
+    /**
+     * Determines which of the items are contained in the range set.  Rather than an independent lookup per item, the
+     * items are visited in sorted order while a single cursor is advanced through the ranges of the set, making a batch
+     * of M items against N ranges O(N + M).  If the items are not already sorted, their order is sorted first.
+     * @param rangeSet
+     * @param items
+     * @return A {@link BitSet} with bit i set if the item at index i is contained in the range set.
+     */
+    public static <T extends Comparable<T>> BitSet containsEach(RangeSet<T> rangeSet, List<? extends T> items) {
+        if (!(items instanceof RandomAccess))
+            items = new ArrayList<T>(items);
+
+        Integer[] order = null;
+        for (int i = 1; i < items.size() && order == null; i++)
+            if (items.get(i - 1).compareTo(items.get(i)) > 0)
+                order = sortedOrder(items);
+
+        BitSet result = new BitSet(items.size());
+        Iterator<Range<T>> ranges = rangeSet.iterator();
+        Range<T> current = (ranges.hasNext() ? ranges.next() : null);
+        for (int i = 0; i < items.size() && current != null; i++) {
+            int index = (order == null ? i : order[i]);
+            T item = items.get(index);
+
+            while (current != null && current.hasUpperBound() && isBelow(current.upperEndpoint().compareTo(item), current.upperBoundType()))
+                current = (ranges.hasNext() ? ranges.next() : null);
+
+            if (current != null && current.contains(item))
+                result.set(index);
+        }
+        return result;
+    }
+
+    /**
+     * Determines which of the values are contained in the range set without boxing the values.  If the range set is a
+     * {@link LongRangeSet} the lookup is entirely primitive.
+     * @param rangeSet
+     * @param values
+     * @return A {@link BitSet} with bit i set if the value at index i is contained in the range set.
+     * @see #containsEach(RangeSet, List)
+     */
+    public static BitSet containsEach(RangeSet<Long> rangeSet, long[] values) {
+        if (rangeSet instanceof LongRangeSet)
+            return ((LongRangeSet) rangeSet).containsEach(values);
+
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        BitSet sortedResult = new BitSet(sorted.length);
+        Iterator<Range<Long>> ranges = rangeSet.iterator();
+        Range<Long> current = (ranges.hasNext() ? ranges.next() : null);
+        for (int i = 0; i < sorted.length && current != null; i++) {
+            long value = sorted[i];
+
+            while (current != null && current.hasUpperBound() && isBelow(compare(current.upperEndpoint(), value), current.upperBoundType()))
+                current = (ranges.hasNext() ? ranges.next() : null);
+
+            if (current != null && (!current.hasLowerBound() || !isBelow(compare(value, current.lowerEndpoint()), current.lowerBoundType())))
+                sortedResult.set(i);
+        }
+
+        if (sorted.length == values.length && Arrays.equals(sorted, values))
+            return sortedResult;
+
+        BitSet result = new BitSet(values.length);
+        for (int i = 0; i < values.length; i++)
+            if (sortedResult.get(Arrays.binarySearch(sorted, values[i])))
+                result.set(i);
+
+        return result;
+    }
+
+    private static int compare(long first, long second) {
+        return (first < second ? -1 : (first == second ? 0 : 1));
+    }
+
+    /**
+     * Given the comparison of an endpoint with a value, determines if everything on the inside of the bound lies below
+     * the value.
+     */
+    private static boolean isBelow(int compare, BoundType boundType) {
+        return compare < 0 || (compare == 0 && boundType == BoundType.OPEN);
+    }
+
+    private static <T extends Comparable<T>> Integer[] sortedOrder(final List<? extends T> items) {
+        Integer[] order = new Integer[items.size()];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                return items.get(first).compareTo(items.get(second));
+            }
+        });
+        return order;
+    }
 
-        return result.complement();
+    @SuppressWarnings("unchecked")
+    private static <T extends Comparable<T>> Iterator<Range<T>> symmetricDifference(Iterator<Range<T>> first1, Iterator<Range<T>> first2,
+                                                                                   Iterator<Range<T>> second1, Iterator<Range<T>> second2) {
+        List<Iterator<Range<T>>> differences = asList(
+                RangeIterators.difference(first1, second1),
+                RangeIterators.difference(second2, first2)
+        );
+        return RangeIterators.union(differences);
     }
 }
@@ -0,0 +1,294 @@
+package abbot.collection.util.range;
+
+import static java.lang.Long.MAX_VALUE;
+
+/**
+ * Tracks sequence numbers which are acknowledged out of order, and reports the highest number up to which every
+ * sequence number has been acknowledged.
+ *
+ * Everything up to the watermark is represented by the watermark alone, and only the acknowledged ranges above it are
+ * kept, in a pair of sorted primitive arrays holding the first and last value of each range like {@link LongRangeSet}.
+ * Whenever the watermark catches up with the lowest of those ranges, the range is absorbed into the watermark by moving
+ * the head of the arrays forward, so ranges below the watermark are compacted away without shifting the arrays.
+ *
+ * An acknowledgement which extends the watermark or the highest range is O(1), and any other acknowledgement is
+ * O(log N) plus the cost of shifting the ranges above it, for the N ranges above the watermark.  Nothing is boxed or
+ * allocated unless the arrays need to grow.  {@link #contiguousWatermark()} is O(1).
+ *
+ * This class is not thread safe, and is intended to be used by a single consumer per partition.
+ */
+public class SequenceTracker {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    //Every sequence number at or below the watermark has been acknowledged.
+    private long watermark;
+
+    //Acknowledged ranges above the watermark, inclusive, sorted, and never adjacent to each other or the watermark.
+    //Only the slots in [head, tail) are in use.
+    private long[] starts = new long[DEFAULT_CAPACITY];
+    private long[] ends = new long[DEFAULT_CAPACITY];
+    private int head;
+    private int tail;
+
+    /**
+     * Creates a tracker which expects the first sequence number to be zero.
+     */
+    public SequenceTracker() {
+        this(0);
+    }
+
+    /**
+     * @param first the first sequence number expected.
+     * @throws IllegalArgumentException if first is Long.MIN_VALUE.
+     */
+    public SequenceTracker(long first) {
+        if (first == Long.MIN_VALUE)
+            throw new IllegalArgumentException("First sequence number must be greater than Long.MIN_VALUE");
+
+        this.watermark = first - 1;
+    }
+
+    /**
+     * Returns the highest sequence number for which every sequence number from the first up to and including it has been
+     * acknowledged.
+     * @return the watermark, or one less than the first sequence number if it has not been acknowledged.
+     */
+    public long contiguousWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Returns the number of disjoint ranges acknowledged above the watermark.
+     */
+    public int pendingRanges() {
+        return tail - head;
+    }
+
+    /**
+     * Determines if the sequence number has been acknowledged.  This is O(1) at or below the watermark and O(log N)
+     * above it.
+     * @param sequence
+     * @return true if the sequence number has been acknowledged, false otherwise.
+     */
+    public boolean isAcked(long sequence) {
+        if (sequence <= watermark)
+            return true;
+
+        int index = floorIndex(sequence);
+        return index >= head && ends[index] >= sequence;
+    }
+
+    /**
+     * Acknowledges a single sequence number.
+     * @param sequence
+     * @return true if the sequence number had not already been acknowledged, false otherwise.
+     */
+    public boolean ack(long sequence) {
+        if (sequence <= watermark)
+            return false;
+
+        if (sequence == watermark + 1) {
+            watermark = sequence;
+            absorb();
+            return true;
+        }
+        return addInclusive(sequence, sequence);
+    }
+
+    /**
+     * Acknowledges every sequence number in the closed-open range [lower, upper).  If the range is empty, nothing is
+     * acknowledged.
+     * @param lower inclusive lower endpoint
+     * @param upper exclusive upper endpoint
+     * @return true if any of the sequence numbers had not already been acknowledged, false otherwise.
+     */
+    public boolean ackRange(long lower, long upper) {
+        if (upper <= lower || upper - 1 <= watermark)
+            return false;
+
+        long last = upper - 1;
+        if (lower <= watermark + 1) {
+            watermark = last;
+            absorb();
+            return true;
+        }
+        return addInclusive(lower, last);
+    }
+
+    /**
+     * Moves the watermark over every range which is now connected to it.
+     */
+    private void absorb() {
+        //Once the watermark reaches Long.MAX_VALUE every range is below it.
+        while (head < tail && (watermark == MAX_VALUE || starts[head] <= watermark + 1)) {
+            watermark = Math.max(watermark, ends[head]);
+            head++;
+        }
+        if (head == tail)
+            head = tail = 0;
+    }
+
+    /**
+     * Returns the first gaps above the watermark, which are the sequence numbers still to be acknowledged before the
+     * watermark can pass the highest acknowledged sequence number.
+     * @param limit maximum number of gaps to return.
+     * @return the gaps in ascending order, as closed-open ranges.
+     * @throws IllegalArgumentException if limit is negative.
+     */
+    public LongRangeSet missing(int limit) {
+        if (limit < 0)
+            throw new IllegalArgumentException("Limit must not be negative: " + limit);
+
+        LongRangeSet missing = new LongRangeSet(Math.min(limit, tail - head));
+        long start = watermark + 1;
+        for (int i = head; i < tail && missing.size() < limit; i++) {
+            missing.add(start, starts[i]);
+            start = ends[i] + 1;
+        }
+        return missing;
+    }
+
+    /**
+     * Forgets every acknowledgement and resets the watermark to one less than the first sequence number expected.
+     * @param first the first sequence number expected.
+     * @throws IllegalArgumentException if first is Long.MIN_VALUE.
+     */
+    public void reset(long first) {
+        if (first == Long.MIN_VALUE)
+            throw new IllegalArgumentException("First sequence number must be greater than Long.MIN_VALUE");
+
+        watermark = first - 1;
+        head = tail = 0;
+    }
+
+    /**
+     * Returns the index of the last range whose first value is less than or equal to value, or head - 1 if there is
+     * none.
+     */
+    private int floorIndex(long value) {
+        int low = head;
+        int high = tail - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= value)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        return high;
+    }
+
+    /**
+     * Returns the index of the first range whose last value is greater than or equal to value, or tail if there is none.
+     */
+    private int ceilingIndex(long value) {
+        int low = head;
+        int high = tail - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (ends[mid] < value)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+
+    /**
+     * Adds [first, last], which lies entirely above the watermark and is not adjacent to it.
+     */
+    private boolean addInclusive(long first, long last) {
+        //Appending to or extending the highest range is the common case when acks arrive nearly in order.
+        if (tail == head || (ends[tail - 1] < MAX_VALUE && first > ends[tail - 1] + 1)) {
+            if (tail == starts.length)
+                makeRoom();
+
+            starts[tail] = first;
+            ends[tail++] = last;
+            return true;
+        }
+        if (first >= starts[tail - 1]) {
+            if (last <= ends[tail - 1])
+                return false;
+
+            ends[tail - 1] = last;
+            return true;
+        }
+
+        //Find every range which overlaps or is adjacent to [first, last].
+        int lower = ceilingIndex(first - 1);
+        int upper = (last == MAX_VALUE ? tail - 1 : floorIndex(last + 1));
+
+        if (lower > upper) {
+            lower = splice(lower, lower, 1);
+            starts[lower] = first;
+            ends[lower] = last;
+            return true;
+        }
+
+        if (lower == upper && starts[lower] <= first && ends[lower] >= last)
+            return false;
+
+        first = Math.min(first, starts[lower]);
+        last = Math.max(last, ends[upper]);
+        lower = splice(lower, upper + 1, 1);
+        starts[lower] = first;
+        ends[lower] = last;
+        return true;
+    }
+
+    /**
+     * Replaces the ranges in [from, to) with count uninitialized slots which the caller is expected to fill.
+     * @return the index of the first slot, which moves if the arrays had to be compacted.
+     */
+    private int splice(int from, int to, int count) {
+        int delta = count - (to - from);
+        if (delta > 0 && tail + delta > starts.length) {
+            int shift = head;
+            makeRoom();
+            from -= shift;
+            to -= shift;
+        }
+        if (delta != 0) {
+            System.arraycopy(starts, to, starts, to + delta, tail - to);
+            System.arraycopy(ends, to, ends, to + delta, tail - to);
+            tail += delta;
+        }
+        return from;
+    }
+
+    /**
+     * Makes room for at least one more range at the tail, by moving the ranges down to the start of the arrays if that
+     * frees enough space, or by growing the arrays otherwise.
+     */
+    private void makeRoom() {
+        int size = tail - head;
+        if (head > 0 && size < (starts.length >> 1)) {
+            System.arraycopy(starts, head, starts, 0, size);
+            System.arraycopy(ends, head, ends, 0, size);
+        } else {
+            int newCapacity = starts.length + (starts.length >> 1) + 1;
+            long[] newStarts = new long[newCapacity];
+            long[] newEnds = new long[newCapacity];
+            System.arraycopy(starts, head, newStarts, 0, size);
+            System.arraycopy(ends, head, newEnds, 0, size);
+            starts = newStarts;
+            ends = newEnds;
+        }
+        head = 0;
+        tail = size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("watermark=").append(watermark).append(", pending=");
+        for (int i = head; i < tail; i++)
+            sb.append('[').append(starts[i]).append("..").append(ends[i]).append(']');
+
+        return sb.toString();
+    }
+}
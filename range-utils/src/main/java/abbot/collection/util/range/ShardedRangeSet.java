@@ -0,0 +1,572 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.Range;
+import com.google.common.collect.Ranges;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.google.common.collect.Iterators.concat;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Ranges.atLeast;
+import static com.google.common.collect.Ranges.closedOpen;
+import static com.google.common.collect.Ranges.lessThan;
+
+/**
+ * A thread-safe implementation of {@link RangeSet} which splits the domain into contiguous shards so that writers working
+ * on different parts of the domain do not contend with each other.
+ *
+ * Each shard covers a closed-open slice of the domain between two split points and holds its own {@link TreeRangeSet}
+ * and lock.  A range which spans a shard boundary is split on write, and the pieces are stitched back together when the
+ * set is iterated, when the complement is taken and in {@link #asSet()}.  Operations on a single shard are atomic, while
+ * operations spanning several shards lock them in order and apply each piece atomically.
+ *
+ * When a maximum shard size is configured, a shard which grows beyond it is split in two at the lower endpoint of its
+ * median range.  Splitting never blocks operations on the other shards.
+ *
+ * @param <T>
+ */
+public class ShardedRangeSet<T extends Comparable<T>> extends AbstractRangeSet<T> {
+
+    private static final class Shard<T extends Comparable<T>> {
+        private final Range<T> bounds;
+        private final TreeRangeSet<T> ranges;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        //Set once the shard has been replaced by a rebalance.  Only accessed while holding the shard lock.
+        private boolean retired = false;
+
+        private Shard(Range<T> bounds, TreeRangeSet<T> ranges) {
+            this.bounds = bounds;
+            this.ranges = ranges;
+        }
+    }
+
+    /**
+     * Immutable description of the shards.  A new layout is published whenever a shard is split.
+     */
+    private static final class Layout<T extends Comparable<T>> {
+        private final List<T> splitPoints;
+        private final List<Shard<T>> shards;
+
+        private Layout(List<T> splitPoints, List<Shard<T>> shards) {
+            this.splitPoints = splitPoints;
+            this.shards = shards;
+        }
+
+        private int shardIndex(T value) {
+            int index = Collections.binarySearch(splitPoints, value);
+            return (index >= 0 ? index + 1 : -index - 1);
+        }
+
+        private List<Shard<T>> intersecting(Range<T> range) {
+            int from = (range.hasLowerBound() ? shardIndex(range.lowerEndpoint()) : 0);
+            int to = (range.hasUpperBound() ? shardIndex(range.upperEndpoint()) : shards.size() - 1);
+            return shards.subList(from, to + 1);
+        }
+    }
+
+    private final DiscreteDomain<T> discreteDomain;
+    private final int maxShardSize;
+    private final Lock rebalanceLock = new ReentrantLock();
+    private volatile Layout<T> layout;
+
+    /**
+     * Creates a range set with a shard between each pair of consecutive split points.
+     * @param splitPoints
+     */
+    public ShardedRangeSet(Iterable<? extends T> splitPoints) {
+        this(null, splitPoints, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a range set with a shard between each pair of consecutive split points.  Any shard holding more than
+     * maxShardSize ranges is split in two.
+     * @param splitPoints
+     * @param maxShardSize
+     */
+    public ShardedRangeSet(Iterable<? extends T> splitPoints, int maxShardSize) {
+        this(null, splitPoints, maxShardSize);
+    }
+
+    /**
+     * Creates a range set with a shard between each pair of consecutive split points, canonicalizing all ranges with the
+     * provided domain.
+     * @param discreteDomain
+     * @param splitPoints
+     */
+    public ShardedRangeSet(DiscreteDomain<T> discreteDomain, Iterable<? extends T> splitPoints) {
+        this(discreteDomain, splitPoints, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a range set with a shard between each pair of consecutive split points, canonicalizing all ranges with the
+     * provided domain.  Any shard holding more than maxShardSize ranges is split in two.
+     * @param discreteDomain
+     * @param splitPoints
+     * @param maxShardSize
+     */
+    public ShardedRangeSet(DiscreteDomain<T> discreteDomain, Iterable<? extends T> splitPoints, int maxShardSize) {
+        if (maxShardSize < 2)
+            throw new IllegalArgumentException("Max shard size must be at least 2: " + maxShardSize);
+
+        this.discreteDomain = discreteDomain;
+        this.maxShardSize = maxShardSize;
+
+        List<T> points = new ArrayList<T>();
+        for (T splitPoint : splitPoints)
+            points.add(splitPoint);
+
+        Collections.sort(points);
+        for (int i = 1; i < points.size(); i++)
+            if (points.get(i - 1).compareTo(points.get(i)) == 0)
+                throw new IllegalArgumentException("Duplicate split point: " + points.get(i));
+
+        List<Shard<T>> shards = new ArrayList<Shard<T>>(points.size() + 1);
+        for (int i = 0; i <= points.size(); i++)
+            shards.add(newShard(shardBounds(points, i)));
+
+        this.layout = new Layout<T>(points, shards);
+    }
+
+    /**
+     * Returns the domain the ranges are canonicalized with, or null if they are not.
+     */
+    DiscreteDomain<T> discreteDomain() {
+        return discreteDomain;
+    }
+
+    private static <T extends Comparable<T>> Range<T> shardBounds(List<T> splitPoints, int index) {
+        if (splitPoints.isEmpty())
+            return Ranges.all();
+        if (index == 0)
+            return lessThan(splitPoints.get(0));
+        if (index == splitPoints.size())
+            return atLeast(splitPoints.get(index - 1));
+
+        return closedOpen(splitPoints.get(index - 1), splitPoints.get(index));
+    }
+
+    private Shard<T> newShard(Range<T> bounds) {
+        return new Shard<T>(bounds, (discreteDomain == null ? new TreeRangeSet<T>() : new DiscreteTreeRangeSet<T>(discreteDomain)));
+    }
+
+    private Range<T> canonical(Range<T> tRange) {
+        return (discreteDomain == null ? tRange : tRange.canonical(discreteDomain));
+    }
+
+    /**
+     * Returns the portion of the range within the bounds of the shard, or null if there is none.
+     */
+    private static <T extends Comparable<T>> Range<T> clip(Range<T> range, Range<T> bounds) {
+        if (!bounds.isConnected(range))
+            return null;
+
+        Range<T> clipped = bounds.intersection(range);
+        return (clipped.isEmpty() ? null : clipped);
+    }
+
+    /**
+     * Locks the shards in order.
+     * @return false if any shard has been retired, in which case no locks are held.
+     */
+    private static <T extends Comparable<T>> boolean lock(List<Shard<T>> shards, boolean write) {
+        for (int i = 0; i < shards.size(); i++) {
+            Shard<T> shard = shards.get(i);
+            (write ? shard.lock.writeLock() : shard.lock.readLock()).lock();
+            if (shard.retired) {
+                unlock(shards.subList(0, i + 1), write);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static <T extends Comparable<T>> void unlock(List<Shard<T>> shards, boolean write) {
+        for (Shard<T> shard : shards)
+            (write ? shard.lock.writeLock() : shard.lock.readLock()).unlock();
+    }
+
+    /**
+     * Locks every shard for reading and copies the stitched ranges of the whole set.
+     */
+    private List<Range<T>> stitchedRanges() {
+        while (true) {
+            List<Shard<T>> shards = layout.shards;
+            if (!lock(shards, false))
+                continue;
+
+            try {
+                List<Iterator<Range<T>>> iterators = new ArrayList<Iterator<Range<T>>>(shards.size());
+                for (Shard<T> shard : shards)
+                    iterators.add(shard.ranges.iterator());
+
+                return newArrayList(RangeIterators.coalesce(concat(iterators.iterator())));
+            } finally {
+                unlock(shards, false);
+            }
+        }
+    }
+
+    /**
+     * Splits the shard in two if it has grown beyond the maximum shard size.
+     */
+    private void rebalance(Shard<T> shard) {
+        rebalanceLock.lock();
+        try {
+            shard.lock.writeLock().lock();
+            try {
+                if (shard.retired || shard.ranges.size() <= maxShardSize)
+                    return;
+
+                //Split at the lower endpoint of the median range, or the closest range after it with a usable lower bound.
+                List<Range<T>> ranges = newArrayList(shard.ranges);
+                T splitPoint = null;
+                for (int i = ranges.size() / 2; i < ranges.size() && splitPoint == null; i++) {
+                    Range<T> range = ranges.get(i);
+                    if (range.hasLowerBound() && shard.bounds.contains(range.lowerEndpoint()) &&
+                            (!shard.bounds.hasLowerBound() || shard.bounds.lowerEndpoint().compareTo(range.lowerEndpoint()) != 0))
+                        splitPoint = range.lowerEndpoint();
+                }
+
+                if (splitPoint != null)
+                    split(shard, splitPoint);
+            } finally {
+                shard.lock.writeLock().unlock();
+            }
+        } finally {
+            rebalanceLock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the shard with two shards divided at the split point.  Must be called holding the rebalance lock and the
+     * write lock of the shard.
+     */
+    private void split(Shard<T> shard, T splitPoint) {
+        Layout<T> current = layout;
+        int index = current.shards.indexOf(shard);
+
+        Shard<T> lower = newShard(shard.bounds.intersection(lessThan(splitPoint)));
+        Shard<T> upper = newShard(shard.bounds.intersection(atLeast(splitPoint)));
+        List<Range<T>> lowerRanges = new ArrayList<Range<T>>();
+        List<Range<T>> upperRanges = new ArrayList<Range<T>>();
+        for (Range<T> range : shard.ranges) {
+            Range<T> clipped = clip(range, lower.bounds);
+            if (clipped != null)
+                lowerRanges.add(canonical(clipped));
+
+            clipped = clip(range, upper.bounds);
+            if (clipped != null)
+                upperRanges.add(canonical(clipped));
+        }
+        lower.ranges.loadSorted(lowerRanges.iterator());
+        upper.ranges.loadSorted(upperRanges.iterator());
+
+        List<T> splitPoints = new ArrayList<T>(current.splitPoints);
+        splitPoints.add(index, splitPoint);
+        List<Shard<T>> shards = new ArrayList<Shard<T>>(current.shards);
+        shards.set(index, upper);
+        shards.add(index, lower);
+
+        layout = new Layout<T>(splitPoints, shards);
+        shard.retired = true;
+    }
+
+    /**
+     * Splits the shard containing the split point in two, so that the split point becomes the start of a new shard.
+     * @param splitPoint
+     * @return true if a new shard was created, false if the split point was already the start of a shard.
+     */
+    public boolean split(T splitPoint) {
+        rebalanceLock.lock();
+        try {
+            Layout<T> current = layout;
+            if (Collections.binarySearch(current.splitPoints, splitPoint) >= 0)
+                return false;
+
+            Shard<T> shard = current.shards.get(current.shardIndex(splitPoint));
+            shard.lock.writeLock().lock();
+            try {
+                split(shard, splitPoint);
+                return true;
+            } finally {
+                shard.lock.writeLock().unlock();
+            }
+        } finally {
+            rebalanceLock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of shards the domain is currently split into.
+     * @return the number of shards
+     */
+    public int shardCount() {
+        return layout.shards.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Ranges which were split across shard boundaries are counted once.
+     */
+    @Override
+    public int size() {
+        while (true) {
+            List<Shard<T>> shards = layout.shards;
+            if (!lock(shards, false))
+                continue;
+
+            try {
+                int size = 0;
+                Range<T> previous = null;
+                for (Shard<T> shard : shards) {
+                    if (shard.ranges.isEmpty())
+                        continue;
+
+                    SortedSet<Range<T>> ranges = shard.ranges.asSet();
+                    size += ranges.size();
+                    if (previous != null && previous.isConnected(ranges.first()))
+                        size--;
+
+                    previous = ranges.last();
+                }
+                return size;
+            } finally {
+                unlock(shards, false);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean add(Range<T> tRange) {
+        if (tRange == null || tRange.isEmpty())
+            return false;
+
+        tRange = canonical(tRange);
+        if (tRange.isEmpty())
+            return false;
+
+        while (true) {
+            List<Shard<T>> shards = layout.intersecting(tRange);
+            if (!lock(shards, true))
+                continue;
+
+            boolean modified = false;
+            Shard<T> hot = null;
+            try {
+                for (Shard<T> shard : shards) {
+                    Range<T> clipped = clip(tRange, shard.bounds);
+                    if (clipped != null)
+                        modified |= shard.ranges.add(clipped);
+
+                    if (shard.ranges.size() > maxShardSize)
+                        hot = shard;
+                }
+            } finally {
+                unlock(shards, true);
+            }
+
+            if (hot != null)
+                rebalance(hot);
+
+            return modified;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean remove(Range<T> tRange) {
+        if (tRange == null || tRange.isEmpty())
+            return false;
+
+        tRange = canonical(tRange);
+        if (tRange.isEmpty())
+            return false;
+
+        while (true) {
+            List<Shard<T>> shards = layout.intersecting(tRange);
+            if (!lock(shards, true))
+                continue;
+
+            boolean modified = false;
+            Shard<T> hot = null;
+            try {
+                for (Shard<T> shard : shards) {
+                    Range<T> clipped = clip(tRange, shard.bounds);
+                    if (clipped != null)
+                        modified |= shard.ranges.remove(clipped);
+
+                    if (shard.ranges.size() > maxShardSize)
+                        hot = shard;
+                }
+            } finally {
+                unlock(shards, true);
+            }
+
+            if (hot != null)
+                rebalance(hot);
+
+            return modified;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(T item) {
+        while (true) {
+            Layout<T> current = layout;
+            Shard<T> shard = current.shards.get(current.shardIndex(item));
+            shard.lock.readLock().lock();
+            try {
+                if (!shard.retired)
+                    return shard.ranges.contains(item);
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean encloses(Range<T> range) {
+        range = canonical(range);
+        while (true) {
+            List<Shard<T>> shards = layout.intersecting(range);
+            if (!lock(shards, false))
+                continue;
+
+            try {
+                boolean enclosed = false;
+                for (Shard<T> shard : shards) {
+                    Range<T> clipped = clip(range, shard.bounds);
+                    if (clipped == null)
+                        continue;
+
+                    if (!shard.ranges.encloses(clipped))
+                        return false;
+
+                    enclosed = true;
+                }
+                return enclosed;
+            } finally {
+                unlock(shards, false);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean intersects(Range<T> range) {
+        range = canonical(range);
+        while (true) {
+            List<Shard<T>> shards = layout.intersecting(range);
+            if (!lock(shards, false))
+                continue;
+
+            try {
+                for (Shard<T> shard : shards) {
+                    Range<T> clipped = clip(range, shard.bounds);
+                    if (clipped != null && shard.ranges.intersects(clipped))
+                        return true;
+                }
+                return false;
+            } finally {
+                unlock(shards, false);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The complement uses the same shard layout as this set at the time it was taken.
+     */
+    @Override
+    public ShardedRangeSet<T> complement() {
+        while (true) {
+            Layout<T> current = layout;
+            if (!lock(current.shards, false))
+                continue;
+
+            try {
+                ShardedRangeSet<T> complement = new ShardedRangeSet<T>(discreteDomain, current.splitPoints, maxShardSize);
+                List<Shard<T>> shards = complement.layout.shards;
+                for (int i = 0; i < shards.size(); i++) {
+                    List<Range<T>> gaps = new ArrayList<Range<T>>();
+                    for (Range<T> gap : newArrayList(RangeIterators.complement(current.shards.get(i).ranges.iterator()))) {
+                        Range<T> clipped = clip(gap, shards.get(i).bounds);
+                        if (clipped != null)
+                            gaps.add(canonical(clipped));
+                    }
+                    shards.get(i).ranges.loadSorted(RangeIterators.coalesce(gaps.iterator()));
+                }
+                return complement;
+            } finally {
+                unlock(current.shards, false);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        while (true) {
+            List<Shard<T>> shards = layout.shards;
+            if (!lock(shards, true))
+                continue;
+
+            try {
+                for (Shard<T> shard : shards)
+                    shard.ranges.clear();
+
+                return;
+            } finally {
+                unlock(shards, true);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The iterator is backed by a consistent copy of the set taken when it was created and does not support removal.
+     */
+    @Override
+    public Iterator<Range<T>> iterator() {
+        return asSet().iterator();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The returned set is a consistent copy of the set and will not reflect any later changes.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public SortedSet<Range<T>> asSet() {
+        List<Range<T>> ranges = stitchedRanges();
+        return new SortedRangeArray<T>(ranges.toArray(new Range[ranges.size()]));
+    }
+}
@@ -0,0 +1,136 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.Range;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+import static abbot.collection.util.range.RangeComparators.lowerOnlyOrValueComparator;
+
+/**
+ * Unmodifiable {@link SortedSet} view over a slice of an array of sorted, disjoint ranges.  The set uses the same
+ * comparator as {@link TreeRangeSet}, which allows a {@link java.util.TreeSet} to be built from it in linear time.
+ * @param <T>
+ */
+final class SortedRangeArray<T extends Comparable<T>> extends AbstractSet<Range<T>> implements SortedSet<Range<T>> {
+
+    private final Range<T>[] ranges;
+    private final int from;
+    private final int to;
+
+    SortedRangeArray(Range<T>[] ranges) {
+        this(ranges, 0, ranges.length);
+    }
+
+    SortedRangeArray(Range<T>[] ranges, int from, int to) {
+        this.ranges = ranges;
+        this.from = from;
+        this.to = to;
+    }
+
+    //Must be the same instance as the comparator of the TreeRangeSet tree, or TreeSet.addAll inserts one range at a time.
+    @SuppressWarnings("unchecked")
+    private static <T extends Comparable<T>> Comparator<Range<T>> rangeComparator() {
+        return (Comparator) lowerOnlyOrValueComparator();
+    }
+
+    /**
+     * Returns the index of the first range whose lower bound is greater than or equal to the one of the given range.
+     */
+    private int ceilingIndex(Range<T> range) {
+        int index = Arrays.binarySearch(ranges, from, to, range, SortedRangeArray.<T>rangeComparator());
+        return (index >= 0 ? index : -index - 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Comparator<? super Range<T>> comparator() {
+        return rangeComparator();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Range<T>> iterator() {
+        return Arrays.asList(ranges).subList(from, to).iterator();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o) {
+        if (!(o instanceof Range))
+            return false;
+
+        try {
+            int index = Arrays.binarySearch(ranges, from, to, (Range<T>) o, SortedRangeArray.<T>rangeComparator());
+            return index >= 0 && ranges[index].equals(o);
+        } catch (ClassCastException e) {
+            return false;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SortedSet<Range<T>> subSet(Range<T> fromElement, Range<T> toElement) {
+        int lower = ceilingIndex(fromElement);
+        return new SortedRangeArray<T>(ranges, lower, Math.max(lower, ceilingIndex(toElement)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SortedSet<Range<T>> headSet(Range<T> toElement) {
+        return new SortedRangeArray<T>(ranges, from, ceilingIndex(toElement));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SortedSet<Range<T>> tailSet(Range<T> fromElement) {
+        return new SortedRangeArray<T>(ranges, ceilingIndex(fromElement), to);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Range<T> first() {
+        if (from == to)
+            throw new NoSuchElementException();
+
+        return ranges[from];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Range<T> last() {
+        if (from == to)
+            throw new NoSuchElementException();
+
+        return ranges[to - 1];
+    }
+}
@@ -0,0 +1,228 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Range;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import static com.google.common.collect.BoundType.OPEN;
+
+/**
+ * A live view of the part of a range set which intersects some bounds, as returned by
+ * {@link RangeSet#subRangeSet(Range)}.
+ *
+ * Nothing is copied when the view is created.  Iteration walks the candidate ranges of the backing set in order, clips
+ * each to the bounds on the fly and stops at the first range past the bounds.  Point and range queries are checked
+ * against the bounds and then delegated to the backing set.  Changes to the backing set are immediately visible through
+ * the view, and changes made through the view are written through to the backing set.
+ *
+ * @param <T>
+ */
+abstract class SubRangeSetView<T extends Comparable<T>> extends AbstractRangeSet<T> {
+
+    final RangeSet<T> backing;
+    final Range<T> bounds;
+
+    SubRangeSetView(RangeSet<T> backing, Range<T> bounds) {
+        this.backing = backing;
+        this.bounds = bounds;
+    }
+
+    /**
+     * Returns the ranges of the backing set, in order, starting at or before the first range which intersects the bounds.
+     */
+    abstract Iterator<Range<T>> candidates();
+
+    /**
+     * Hook used to canonicalize ranges before they are compared with the bounds.
+     */
+    Range<T> canonical(Range<T> range) {
+        return range;
+    }
+
+    /**
+     * Returns true if every value in the range is above the bounds.
+     */
+    private boolean aboveBounds(Range<T> range) {
+        if (!range.hasLowerBound() || !bounds.hasUpperBound())
+            return false;
+
+        int compare = range.lowerEndpoint().compareTo(bounds.upperEndpoint());
+        return compare > 0 || (compare == 0 && (range.lowerBoundType() == OPEN || bounds.upperBoundType() == OPEN));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Range<T>> iterator() {
+        if (bounds.isEmpty())
+            return Iterators.emptyIterator();
+
+        final Iterator<Range<T>> candidates = candidates();
+        return new AbstractIterator<Range<T>>() {
+            @Override
+            protected Range<T> computeNext() {
+                while (candidates.hasNext()) {
+                    Range<T> candidate = candidates.next();
+                    if (aboveBounds(candidate))
+                        break;
+
+                    if (!candidate.isConnected(bounds))
+                        continue;
+
+                    Range<T> clipped = candidate.intersection(bounds);
+                    if (!clipped.isEmpty())
+                        return clipped;
+                }
+                return endOfData();
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The ranges are counted by iterating the view.
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (Iterator<Range<T>> i = iterator(); i.hasNext(); i.next())
+            size++;
+
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        return !iterator().hasNext();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException if the range is not enclosed by the bounds of the view.
+     */
+    @Override
+    public boolean add(Range<T> tRange) {
+        if (tRange == null || tRange.isEmpty())
+            return false;
+
+        if (!bounds.encloses(canonical(tRange)))
+            throw new IllegalArgumentException("Range " + tRange + " is outside the bounds " + bounds);
+
+        return backing.add(tRange);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Only the part of the range within the bounds of the view is removed.
+     */
+    @Override
+    public boolean remove(Range<T> tRange) {
+        if (tRange == null || !tRange.isConnected(bounds))
+            return false;
+
+        return backing.remove(tRange.intersection(bounds));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(T item) {
+        return bounds.contains(item) && backing.contains(item);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean encloses(Range<T> range) {
+        return bounds.encloses(canonical(range)) && backing.encloses(range);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean intersects(Range<T> range) {
+        if (!range.isConnected(bounds))
+            return false;
+
+        Range<T> clipped = range.intersection(bounds);
+        return !clipped.isEmpty() && backing.intersects(clipped);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Range<T> rangeContaining(T item) {
+        if (!bounds.contains(item))
+            return null;
+
+        Range<T> range = backing.rangeContaining(item);
+        return (range == null ? null : range.intersection(bounds));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * If the range is not connected to the bounds of this view, the returned view is always empty and read-only.
+     */
+    @Override
+    public RangeSet<T> subRangeSet(Range<T> range) {
+        if (!range.isConnected(bounds))
+            return ImmutableRangeSet.of();
+
+        return backing.subRangeSet(range.intersection(bounds));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The complement is computed from the current contents of the view and will not reflect any later changes.
+     */
+    @Override
+    public RangeSet<T> complement() {
+        return ImmutableRangeSet.fromSorted(RangeIterators.complement(iterator()), null);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Removes every range within the bounds of the view from the backing set.
+     */
+    @Override
+    public void clear() {
+        if (!bounds.isEmpty())
+            backing.remove(bounds);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Range<T>> asSet() {
+        return new AbstractSet<Range<T>>() {
+            @Override
+            public Iterator<Range<T>> iterator() {
+                return SubRangeSetView.this.iterator();
+            }
+
+            @Override
+            public int size() {
+                return SubRangeSetView.this.size();
+            }
+        };
+    }
+}
@@ -0,0 +1,405 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.BoundType;
+import com.google.common.collect.Range;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static abbot.collection.util.range.RangeComparators.lowerOnlyComparator;
+import static abbot.collection.util.range.RangeComparators.upperOnlyComparator;
+import static com.google.common.base.Objects.equal;
+import static com.google.common.collect.BoundType.CLOSED;
+import static com.google.common.collect.BoundType.OPEN;
+import static com.google.common.collect.Ranges.*;
+
+/**
+ * Implementation of {@link RangeMap} backed by a {@link TreeMap} keyed on the lower bound of each range.
+ *
+ * Since the ranges are disjoint, {@link #get(Comparable)} is a single O(log N) floor lookup no matter how many distinct
+ * values are mapped.  Putting a range removes the overlapping parts of existing ranges, keeping any remainders on either
+ * side just as {@link TreeRangeSet#remove(Range)} does, and then merges the range with connected neighbours mapped to an
+ * equal value, so the map always holds the fewest ranges possible.
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class TreeRangeMap<K extends Comparable<K>, V> implements RangeMap<K, V>, Serializable {
+
+    @SuppressWarnings("unchecked")
+    private transient TreeMap<Range<K>, V> treeMap = new TreeMap<Range<K>, V>(lowerOnlyComparator());
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return treeMap.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        return treeMap.isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public V get(K key) {
+        Map.Entry<Range<K>, V> entry = getEntry(key);
+        return (entry == null ? null : entry.getValue());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map.Entry<Range<K>, V> getEntry(K key) {
+        Map.Entry<Range<K>, V> entry = treeMap.floorEntry(singleton(key));
+        return (entry != null && entry.getKey().contains(key) ? entry : null);
+    }
+
+    /**
+     * Returns the entries whose ranges share at least one value with the range, in order.
+     */
+    private List<Map.Entry<Range<K>, V>> intersecting(Range<K> range) {
+        List<Map.Entry<Range<K>, V>> intersecting = new ArrayList<Map.Entry<Range<K>, V>>();
+        Range<K> floor = treeMap.floorKey(range);
+        NavigableMap<Range<K>, V> candidates = (floor == null ? treeMap : treeMap.tailMap(floor, true));
+        for (Map.Entry<Range<K>, V> entry : candidates.entrySet()) {
+            Range<K> current = entry.getKey();
+            boolean overlaps = current.isConnected(range) && !current.intersection(range).isEmpty();
+
+            //Only the floor can end before the range, every later range starts inside it or after it.
+            if (!overlaps && current != floor)
+                break;
+
+            //Entries are copied since the tree reuses its nodes when removing entries.
+            if (overlaps)
+                intersecting.add(new AbstractMap.SimpleImmutableEntry<Range<K>, V>(entry));
+        }
+        return intersecting;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put(Range<K> range, V value) {
+        if (value == null)
+            throw new NullPointerException("Range maps do not allow null values");
+
+        if (range.isEmpty())
+            return;
+
+        remove(range);
+
+        Range<K> merged = range;
+        Map.Entry<Range<K>, V> lower = treeMap.lowerEntry(range);
+        if (lower != null && lower.getKey().isConnected(range) && equal(lower.getValue(), value)) {
+            merged = merged.span(lower.getKey());
+            treeMap.remove(lower.getKey());
+        }
+
+        Map.Entry<Range<K>, V> higher = treeMap.higherEntry(range);
+        if (higher != null && higher.getKey().isConnected(range) && equal(higher.getValue(), value)) {
+            merged = merged.span(higher.getKey());
+            treeMap.remove(higher.getKey());
+        }
+
+        treeMap.put(merged, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void putAll(RangeMap<K, V> rangeMap) {
+        for (Map.Entry<Range<K>, V> entry : rangeMap.asMap().entrySet())
+            put(entry.getKey(), entry.getValue());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove(Range<K> range) {
+        if (range.isEmpty())
+            return;
+
+        for (Map.Entry<Range<K>, V> entry : intersecting(range)) {
+            Range<K> current = entry.getKey();
+            treeMap.remove(current);
+
+            //Add back any remaining portions of the outlying ranges.
+            Range<K> lowerRemainder = lowerRemainder(current, range);
+            if (lowerRemainder != null)
+                treeMap.put(lowerRemainder, entry.getValue());
+
+            Range<K> upperRemainder = upperRemainder(current, range);
+            if (upperRemainder != null)
+                treeMap.put(upperRemainder, entry.getValue());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K extends Comparable<K>> Range<K> lowerRemainder(Range<K> current, Range<K> toRemove) {
+        if (lowerOnlyComparator().compare(current, toRemove) >= 0)
+            return null;
+
+        BoundType upperType = (toRemove.lowerBoundType() == CLOSED ? OPEN : CLOSED);
+        if (current.hasLowerBound())
+            return range(current.lowerEndpoint(), current.lowerBoundType(), toRemove.lowerEndpoint(), upperType);
+
+        return upTo(toRemove.lowerEndpoint(), upperType);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K extends Comparable<K>> Range<K> upperRemainder(Range<K> current, Range<K> toRemove) {
+        if (upperOnlyComparator().compare(current, toRemove) <= 0)
+            return null;
+
+        BoundType lowerType = (toRemove.upperBoundType() == CLOSED ? OPEN : CLOSED);
+        if (current.hasUpperBound())
+            return range(toRemove.upperEndpoint(), lowerType, current.upperEndpoint(), current.upperBoundType());
+
+        return downTo(toRemove.upperEndpoint(), lowerType);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        treeMap.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Range<K> span() {
+        if (treeMap.isEmpty())
+            throw new NoSuchElementException();
+
+        return treeMap.firstKey().span(treeMap.lastKey());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RangeMap<K, V> subRangeMap(Range<K> range) {
+        return new SubRangeMap(range);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SortedMap<Range<K>, V> asMap() {
+        return Collections.unmodifiableSortedMap(treeMap);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return treeMap.toString();
+    }
+
+    /**
+     * Writes the entries in order rather than the backing tree and its comparator.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(treeMap.size());
+        for (Map.Entry<Range<K>, V> entry : treeMap.entrySet()) {
+            out.writeObject(entry.getKey());
+            out.writeObject(entry.getValue());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        treeMap = new TreeMap<Range<K>, V>(lowerOnlyComparator());
+        for (int size = in.readInt(); size > 0; size--)
+            treeMap.put((Range<K>) in.readObject(), (V) in.readObject());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RangeMap)) return false;
+
+        return asMap().equals(((RangeMap) o).asMap());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return asMap().hashCode();
+    }
+
+    /**
+     * A live view of the part of the range map which intersects the bounds, with every range clipped to the bounds.
+     */
+    private class SubRangeMap implements RangeMap<K, V> {
+
+        private final Range<K> bounds;
+
+        SubRangeMap(Range<K> bounds) {
+            this.bounds = bounds;
+        }
+
+        /**
+         * Returns an empty range within the bounds, which is connected to the bounds but encloses nothing else.
+         */
+        private Range<K> empty() {
+            return (bounds.hasLowerBound() ? closedOpen(bounds.lowerEndpoint(), bounds.lowerEndpoint()) : closedOpen(bounds.upperEndpoint(), bounds.upperEndpoint()));
+        }
+
+        private List<Map.Entry<Range<K>, V>> entries() {
+            List<Map.Entry<Range<K>, V>> entries = intersecting(bounds);
+            for (int i = 0; i < entries.size(); i++) {
+                Map.Entry<Range<K>, V> entry = entries.get(i);
+                if (!bounds.encloses(entry.getKey()))
+                    entries.set(i, new AbstractMap.SimpleImmutableEntry<Range<K>, V>(entry.getKey().intersection(bounds), entry.getValue()));
+            }
+            return entries;
+        }
+
+        @Override
+        public int size() {
+            return (bounds.isEmpty() ? 0 : intersecting(bounds).size());
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size() == 0;
+        }
+
+        @Override
+        public V get(K key) {
+            return (bounds.contains(key) ? TreeRangeMap.this.get(key) : null);
+        }
+
+        @Override
+        public Map.Entry<Range<K>, V> getEntry(K key) {
+            if (!bounds.contains(key))
+                return null;
+
+            Map.Entry<Range<K>, V> entry = TreeRangeMap.this.getEntry(key);
+            if (entry == null || bounds.encloses(entry.getKey()))
+                return entry;
+
+            return new AbstractMap.SimpleImmutableEntry<Range<K>, V>(entry.getKey().intersection(bounds), entry.getValue());
+        }
+
+        /**
+         * {@inheritDoc}
+         * @throws IllegalArgumentException if the range is not enclosed by the bounds of this view.
+         */
+        @Override
+        public void put(Range<K> range, V value) {
+            if (!range.isEmpty() && !bounds.encloses(range))
+                throw new IllegalArgumentException("Range " + range + " is not enclosed by " + bounds);
+
+            TreeRangeMap.this.put(range, value);
+        }
+
+        @Override
+        public void putAll(RangeMap<K, V> rangeMap) {
+            for (Map.Entry<Range<K>, V> entry : rangeMap.asMap().entrySet())
+                put(entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public void remove(Range<K> range) {
+            if (range.isConnected(bounds))
+                TreeRangeMap.this.remove(range.intersection(bounds));
+        }
+
+        @Override
+        public void clear() {
+            TreeRangeMap.this.remove(bounds);
+        }
+
+        @Override
+        public Range<K> span() {
+            List<Map.Entry<Range<K>, V>> entries = entries();
+            if (entries.isEmpty())
+                throw new NoSuchElementException();
+
+            return entries.get(0).getKey().span(entries.get(entries.size() - 1).getKey());
+        }
+
+        @Override
+        public RangeMap<K, V> subRangeMap(Range<K> range) {
+            return new SubRangeMap(range.isConnected(bounds) ? range.intersection(bounds) : empty());
+        }
+
+        @Override
+        public Map<Range<K>, V> asMap() {
+            return new AbstractMap<Range<K>, V>() {
+                @Override
+                public Set<Entry<Range<K>, V>> entrySet() {
+                    return new AbstractSet<Entry<Range<K>, V>>() {
+                        @Override
+                        public Iterator<Entry<Range<K>, V>> iterator() {
+                            return Collections.unmodifiableList(entries()).iterator();
+                        }
+
+                        @Override
+                        public int size() {
+                            return SubRangeMap.this.size();
+                        }
+                    };
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return asMap().toString();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof RangeMap)) return false;
+
+            return asMap().equals(((RangeMap) o).asMap());
+        }
+
+        @Override
+        public int hashCode() {
+            return asMap().hashCode();
+        }
+    }
+}
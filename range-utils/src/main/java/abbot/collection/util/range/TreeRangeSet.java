@@ -2,16 +2,23 @@ package abbot.collection.util.range;
 
 
 import com.google.common.collect.Range;
-import com.google.common.collect.Ranges;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.*;
 
+import static abbot.collection.util.range.RangeComparators.lowerBiasedComparator;
 import static abbot.collection.util.range.RangeComparators.lowerOnlyComparator;
+import static abbot.collection.util.range.RangeComparators.lowerOnlyOrValueComparator;
 import static abbot.collection.util.range.RangeComparators.upperOnlyComparator;
 import static com.google.common.collect.BoundType.CLOSED;
 import static com.google.common.collect.BoundType.OPEN;
+import static com.google.common.collect.Iterables.elementsEqual;
+import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Ranges.*;
+import static java.util.Arrays.asList;
 
 /**
  * Implementation of {@link RangeSet} backed by an {@link java.util.TreeSet}.
@@ -26,10 +33,11 @@ import static com.google.common.collect.Ranges.*;
  */
 public class TreeRangeSet<T extends Comparable<T>> implements RangeSet<T>, Serializable {
 
-    private static final TreeSet emptyTreeSet = new TreeSet();
+    //Batches with fewer ranges than the set size divided by this ratio are applied one range at a time.
+    private static final int BULK_THRESHOLD_RATIO = 8;
 
-    @SuppressWarnings("unchecked")
-    private final TreeSet<Range<T>> treeSet = new TreeSet<Range<T>>(lowerOnlyComparator());
+    //Ordered by lower bound, and also accepts raw values as probes so point lookups do not allocate.
+    private transient TreeSet<Range<T>> treeSet = new TreeSet<Range<T>>(lowerOnlyOrValueComparator());
 
     /**
      * {@inheritDoc}
@@ -44,54 +52,81 @@ public class TreeRangeSet<T extends Comparable<T>> implements RangeSet<T>, Seria
         return treeSet.isEmpty();
     }
 
-    private Range<T> lowerBound(Range<T> tRange) {
-
-        if (!tRange.hasLowerBound())
-            return treeSet.first();
-
-        Range<T> endrange = treeSet.floor(singleton(tRange.lowerEndpoint()));
-        return (endrange == null ? treeSet.first() : endrange);
+    /**
+     * Returns the last range whose lower bound is at or below the value.  The tree is probed with the raw value, which
+     * avoids allocating a singleton range for every lookup.
+     */
+    @SuppressWarnings("unchecked")
+    Range<T> floorRange(T value) {
+        return (Range<T>) ((NavigableSet) treeSet).floor(value);
     }
 
-    private Range<T> upperBound(Range<T> tRange) {
-
-        if (!tRange.hasUpperBound())
-            return treeSet.last();
-
-        Range<T> endrange = treeSet.floor(singleton(tRange.upperEndpoint()));
-        return (endrange == null ? treeSet.first() : endrange);
+    /**
+     * Returns the first range whose lower bound is at or above the value.
+     */
+    @SuppressWarnings("unchecked")
+    Range<T> ceilingRange(T value) {
+        return (Range<T>) ((NavigableSet) treeSet).ceiling(value);
     }
 
+    /**
+     * Returns the first range whose lower bound is above the value.
+     */
     @SuppressWarnings("unchecked")
-    private NavigableSet<Range<T>> intersectingRanges(Range<T> tRange) {
+    Range<T> higherRange(T value) {
+        return (Range<T>) ((NavigableSet) treeSet).higher(value);
+    }
 
-        if (treeSet.isEmpty())
-            return emptyTreeSet;
+    /**
+     * Returns the first range in the set which is connected to the provided range, or null if there is none.
+     */
+    private Range<T> firstConnected(Range<T> tRange) {
+        Range<T> first = treeSet.floor(tRange);
+        if (first == null || !first.isConnected(tRange))
+            first = treeSet.higher(tRange);
+
+        return (first != null && first.isConnected(tRange) ? first : null);
+    }
 
-        Range<T> lowerBound = lowerBound(tRange);
-        Range<T> upperBound = upperBound(tRange);
+    /**
+     * Returns true if the ranges share at least one value.  Unlike checking the intersection, this does not allocate.
+     */
+    static <T extends Comparable<T>> boolean overlaps(Range<T> range1, Range<T> range2) {
+        return range1.isConnected(range2) && !touches(range1, range2) && !touches(range2, range1);
+    }
 
-        /** note this will still return ranges that are not really intersecting due to the behaviour of isConnected.
-         * For example [1,4] will be included if the range given is (4,6].  This should be accounted for when using this
-         * method.
-         */
-        return treeSet.subSet(lowerBound, lowerBound.isConnected(tRange), upperBound, upperBound.isConnected(tRange));
+    /**
+     * Returns true if the first range ends exactly where the second starts without sharing the endpoint.
+     */
+    private static <T extends Comparable<T>> boolean touches(Range<T> range1, Range<T> range2) {
+        return range1.hasUpperBound() && range2.hasLowerBound() &&
+                range1.upperEndpoint().compareTo(range2.lowerEndpoint()) == 0 &&
+                (range1.upperBoundType() == OPEN || range2.lowerBoundType() == OPEN);
     }
 
     /**
      * {@inheritDoc}
+     *
+     * The connected ranges are found by walking the backing tree from the lower bound of the range, so no views or
+     * iterators are allocated.
      */
     @Override
     public boolean add(Range<T> tRange) {
         if (tRange == null || tRange.isEmpty())
             return false;
 
-        for (Iterator<Range<T>> i = intersectingRanges(tRange).iterator(); i.hasNext(); ) {
-            tRange = tRange.span(i.next());
-            i.remove();
+        Range<T> current = firstConnected(tRange);
+        if (current != null && current.encloses(tRange))
+            return false;
+
+        Range<T> merged = tRange;
+        while (current != null && current.isConnected(tRange)) {
+            merged = merged.span(current);
+            treeSet.remove(current);
+            current = treeSet.higher(current);
         }
 
-        return treeSet.add(tRange);
+        return treeSet.add(merged);
     }
 
     /**
@@ -99,23 +134,80 @@ public class TreeRangeSet<T extends Comparable<T>> implements RangeSet<T>, Seria
      */
     @Override
     public boolean add(RangeSet<T> tRangeSet) {
-        boolean modified = false;
-        for (Range<T> tRange : tRangeSet)
-            modified |= add(tRange);
-
-        return modified;
+        return addAll(tRangeSet);
     }
 
     /**
      * {@inheritDoc}
+     *
+     * Unless the batch is small compared to this set, the ranges are sorted (if they are not already), coalesced and
+     * merged with the existing ranges in a single sweep, and the backing tree is rebuilt once.
      */
     @Override
+    @SuppressWarnings("unchecked")
     public boolean addAll(Iterable<? extends Range<T>> tRanges) {
-        boolean modified = false;
-        for (Range<T> tRange : tRanges)
-            modified |= add(tRange);
+        List<Range<T>> batch = sortedBatch(tRanges);
+        if (batch.size() * BULK_THRESHOLD_RATIO < treeSet.size()) {
+            boolean modified = false;
+            for (Range<T> tRange : batch)
+                modified |= add(tRange);
+
+            return modified;
+        }
+
+        return !batch.isEmpty() && replaceWith(RangeIterators.union(asList(treeSet.iterator(), batch.iterator())));
+    }
+
+    /**
+     * Hook used by the bulk operations to canonicalize ranges before they are merged into the set.
+     */
+    protected Range<T> canonical(Range<T> tRange) {
+        return tRange;
+    }
+
+    /**
+     * Copies the non empty ranges into a list sorted by lower bound.  Sorting is skipped if they are already in order.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Range<T>> sortedBatch(Iterable<? extends Range<T>> tRanges) {
+        List<Range<T>> batch = (tRanges instanceof Collection ?
+                new ArrayList<Range<T>>(((Collection) tRanges).size()) :
+                new ArrayList<Range<T>>());
+
+        boolean sorted = true;
+        Range<T> previous = null;
+        for (Range<T> tRange : tRanges) {
+            if (tRange == null || tRange.isEmpty())
+                continue;
+
+            tRange = canonical(tRange);
+            if (tRange.isEmpty())
+                continue;
+
+            if (sorted && previous != null && lowerBiasedComparator().compare(previous, tRange) > 0)
+                sorted = false;
+
+            batch.add(tRange);
+            previous = tRange;
+        }
+
+        if (!sorted)
+            Collections.sort(batch, lowerBiasedComparator());
+
+        return batch;
+    }
 
-        return modified;
+    /**
+     * Rebuilds the set from the sorted and coalesced ranges.
+     * @return true if this range set was modified, false otherwise.
+     */
+    private boolean replaceWith(Iterator<Range<T>> sorted) {
+        List<Range<T>> ranges = newArrayList(sorted);
+        if (elementsEqual(ranges, treeSet))
+            return false;
+
+        loadSorted(ranges.iterator());
+        return true;
     }
 
     @SuppressWarnings("unchecked")
@@ -165,58 +257,55 @@ public class TreeRangeSet<T extends Comparable<T>> implements RangeSet<T>, Seria
      */
     @Override
     public boolean remove(Range<T> tRange) {
-
         if (tRange == null || tRange.isEmpty())
             return false;
 
-        boolean modified = false;
-        //accounts for 2;
-
         Range<T> lower = null;
         Range<T> upper = null;
-        NavigableSet<Range<T>> intersecting = intersectingRanges(tRange);
-
-        if (intersecting.size() == 1) {
-            lower = upper = intersecting.pollFirst();
-            modified = true;
-        } else if (intersecting.size() > 1) {
-            lower = intersecting.pollFirst();
-            upper = intersecting.pollLast();
-            for (Iterator<Range<T>> i = intersecting.iterator(); i.hasNext(); ) {
-                i.next();
-                i.remove();
+        for (Range<T> current = firstConnected(tRange); current != null && current.isConnected(tRange); ) {
+            Range<T> next = treeSet.higher(current);
+            if (overlaps(current, tRange)) {
+                treeSet.remove(current);
+                if (lower == null)
+                    lower = current;
+                upper = current;
             }
-            modified = true;
+            current = next;
         }
 
-        //Add back any remaining portions of the outlying ranges back to the set.
-        if (lower != null && upper != null) {
-            addLowerRemainder(lower, tRange);
-            addUpperRemainder(upper, tRange);
-        }
+        if (lower == null)
+            return false;
 
-        return modified;
+        //Add back any remaining portions of the outlying ranges back to the set.
+        addLowerRemainder(lower, tRange);
+        addUpperRemainder(upper, tRange);
+        return true;
     }
 
     @Override
     public boolean remove(RangeSet<T> rangeSet) {
-        boolean modified = false;
-        for (Range<T> tRange : rangeSet)
-            modified |= remove(tRange);
-
-        return modified;
+        return removeAll(rangeSet);
     }
 
     /**
      * {@inheritDoc}
+     *
+     * Unless the batch is small compared to this set, the ranges are sorted (if they are not already) and subtracted
+     * from the existing ranges in a single sweep, and the backing tree is rebuilt once.
      */
     @Override
     public boolean removeAll(Iterable<? extends Range<T>> tRanges) {
-        boolean modified = false;
-        for (Range<T> tRange : tRanges)
-            modified |= remove(tRange);
+        List<Range<T>> batch = sortedBatch(tRanges);
+        if (batch.size() * BULK_THRESHOLD_RATIO < treeSet.size()) {
+            boolean modified = false;
+            for (Range<T> tRange : batch)
+                modified |= remove(tRange);
 
-        return modified;
+            return modified;
+        }
+
+        return !batch.isEmpty() && !treeSet.isEmpty() &&
+                replaceWith(RangeIterators.difference(treeSet.iterator(), batch.iterator()));
     }
 
     /**
@@ -224,8 +313,8 @@ public class TreeRangeSet<T extends Comparable<T>> implements RangeSet<T>, Seria
      */
     @Override
     public boolean contains(T item) {
-        Range<T> lowerEndpoint = treeSet.floor(singleton(item));
-        return lowerEndpoint != null && lowerEndpoint.contains(item);
+        Range<T> candidate = floorRange(item);
+        return candidate != null && candidate.contains(item);
     }
 
     /**
@@ -251,13 +340,75 @@ public class TreeRangeSet<T extends Comparable<T>> implements RangeSet<T>, Seria
 
     /**
      * {@inheritDoc}
+     *
+     * At most the two ranges either side of the lower bound of the range are checked, so this is O(log N).
+     */
+    @Override
+    public boolean intersects(Range<T> range) {
+        Range<T> candidate = treeSet.floor(range);
+        if (candidate != null && overlaps(candidate, range))
+            return true;
+
+        candidate = treeSet.higher(range);
+        return candidate != null && overlaps(candidate, range);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Range<T> rangeContaining(T item) {
+        Range<T> candidate = floorRange(item);
+        return (candidate != null && candidate.contains(item) ? candidate : null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Range<T> span() {
+        return treeSet.first().span(treeSet.last());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The view is backed by a sub set of the backing tree which is looked up in O(log N) each time the view is iterated,
+     * and the ranges at its edges are clipped to the range as they are returned.
+     */
+    @Override
+    public RangeSet<T> subRangeSet(Range<T> range) {
+        final Range<T> bounds = canonical(range);
+        return new SubRangeSetView<T>(this, bounds) {
+            @Override
+            Iterator<Range<T>> candidates() {
+                Range<T> first = treeSet.floor(bounds);
+                return Collections.unmodifiableSet(first == null ? treeSet : treeSet.tailSet(first, true)).iterator();
+            }
+
+            @Override
+            Range<T> canonical(Range<T> range) {
+                return TreeRangeSet.this.canonical(range);
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The complement is a read only view backed by this set, so creating it is O(1) and it reflects any later changes.
+     * Use {@link ComplementRangeSet#materialize()} to get an independent copy which can be modified.
      */
     @Override
-    public TreeRangeSet<T> complement() {
-        TreeRangeSet<T> complement = new TreeRangeSet<T>();
-        complement.add(Ranges.<T>all());
-        complement.remove(this);
-        return complement;
+    public ComplementRangeSet<T> complement() {
+        return new ComplementRangeSet<T>(this);
+    }
+
+    /**
+     * Creates a new empty range set of the same type as this one.
+     */
+    TreeRangeSet<T> emptyCopy() {
+        return new TreeRangeSet<T>();
     }
 
     /**
@@ -268,6 +419,56 @@ public class TreeRangeSet<T extends Comparable<T>> implements RangeSet<T>, Seria
         treeSet.clear();
     }
 
+    /**
+     * Creates an immutable, array backed copy of this range set in O(N).  The copy is safe to share between threads
+     * without locking and is not affected by later changes to this set.
+     * @return an immutable copy of this range set.
+     */
+    @SuppressWarnings("unchecked")
+    public ImmutableRangeSet<T> snapshot() {
+        return new ImmutableRangeSet<T>(treeSet.toArray(new Range[treeSet.size()]), null);
+    }
+
+    /**
+     * Replaces the contents of this set with ranges which are already sorted, disjoint and coalesced.  This builds the
+     * backing tree in O(N) rather than inserting each range.
+     */
+    @SuppressWarnings("unchecked")
+    void loadSorted(Iterator<Range<T>> sorted) {
+        List<Range<T>> ranges = newArrayList(sorted);
+        treeSet.clear();
+        treeSet.addAll(new SortedRangeArray<T>(ranges.toArray(new Range[ranges.size()])));
+    }
+
+    /**
+     * Returns the backing tree so subclasses in this package can navigate it.  It must not be modified directly.
+     */
+    NavigableSet<Range<T>> navigableRanges() {
+        return treeSet;
+    }
+
+    /**
+     * Writes the ranges in order rather than the backing tree and its comparator, so reading them back can rebuild the
+     * tree with {@link #loadSorted(Iterator)}.  See {@link RangeSetCodec} for a far more compact format.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(treeSet.size());
+        for (Range<T> range : treeSet)
+            out.writeObject(range);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        Range<T>[] ranges = new Range[in.readInt()];
+        for (int i = 0; i < ranges.length; i++)
+            ranges[i] = (Range<T>) in.readObject();
+
+        treeSet = new TreeSet<Range<T>>(lowerOnlyOrValueComparator());
+        loadSorted(asList(ranges).iterator());
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,229 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.Range;
+
+import java.util.Iterator;
+
+import static com.google.common.collect.Ranges.atLeast;
+import static com.google.common.collect.Ranges.closedOpen;
+import static com.google.common.collect.Ranges.lessThan;
+
+/**
+ * An implementation of {@link DiscreteTreeRangeSet} for tracking windows over an unbounded stream, such as processed
+ * event times or sequence numbers, which forgets old ranges so its memory stays bounded.
+ *
+ * Nothing below the watermark is held.  {@link #advanceWatermark(Comparable)} drops every range below the new watermark
+ * and clips the range which straddles it, walking the ranges in order from the lowest, so it is O(K + log N) for the K
+ * ranges evicted.  Ranges added later are clipped to the watermark, so late values below it are ignored.
+ *
+ * Two optional policies evict the lowest ranges whole after every add.  A maximum range count evicts ranges while the
+ * set holds too many, and a maximum age evicts ranges whose last value is more than the given number of values below
+ * the last value in the set.  Either kind of eviction moves the watermark up to the end of the evicted range.  Every
+ * evicted range, or part of a range, is reported to the {@link EvictionListener} if there is one.
+ *
+ * @param <T>
+ */
+public class WatermarkRangeSet<T extends Comparable<T>> extends DiscreteTreeRangeSet<T> {
+
+    /**
+     * The reason a range was evicted.
+     */
+    public enum EvictionCause {
+        /** The watermark was advanced past the range. */
+        WATERMARK,
+        /** The set held more than the maximum number of ranges. */
+        SIZE,
+        /** The range was older than the maximum age. */
+        AGE
+    }
+
+    /**
+     * Receives the ranges evicted from a {@link WatermarkRangeSet}.
+     * @param <T>
+     */
+    public interface EvictionListener<T extends Comparable<T>> {
+        /**
+         * Called after the range has been removed from the set.
+         * @param range the evicted values.
+         * @param cause the reason the range was evicted.
+         */
+        void evicted(Range<T> range, EvictionCause cause);
+    }
+
+    private final int maxRanges;
+    private final long maxAge;
+    private final transient EvictionListener<T> listener;
+
+    //Lowest value which can be held, or null if nothing has been evicted yet.
+    private T watermark;
+
+    //Set while a remove puts back what is left of a split range, which must not trigger the eviction policies.
+    private transient boolean removing;
+
+    /**
+     * Creates a set which only evicts ranges when the watermark is advanced.
+     * @param discreteDomain
+     */
+    public WatermarkRangeSet(DiscreteDomain<T> discreteDomain) {
+        this(discreteDomain, Integer.MAX_VALUE, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * @param discreteDomain
+     * @param maxRanges maximum number of ranges to hold, or Integer.MAX_VALUE for no limit.
+     * @param maxAge maximum number of values a range may end below the last value in the set, or Long.MAX_VALUE for no
+     * limit.
+     * @param listener receives every evicted range, or null.
+     * @throws IllegalArgumentException if maxRanges is not positive or maxAge is negative.
+     */
+    public WatermarkRangeSet(DiscreteDomain<T> discreteDomain, int maxRanges, long maxAge, EvictionListener<T> listener) {
+        super(discreteDomain);
+        if (maxRanges <= 0)
+            throw new IllegalArgumentException("Max ranges must be positive: " + maxRanges);
+        if (maxAge < 0)
+            throw new IllegalArgumentException("Max age must not be negative: " + maxAge);
+
+        this.maxRanges = maxRanges;
+        this.maxAge = maxAge;
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the lowest value which can be held by this set.
+     * @return the watermark, or null if it has never been advanced.
+     */
+    public T watermark() {
+        return watermark;
+    }
+
+    /**
+     * Evicts every value below the watermark.  Ranges entirely below it are removed, and a range which straddles it is
+     * clipped to start at the watermark.  Moving the watermark backwards has no effect.
+     * @param newWatermark
+     * @return true if any values were evicted, false otherwise.
+     */
+    public boolean advanceWatermark(T newWatermark) {
+        if (watermark != null && newWatermark.compareTo(watermark) <= 0)
+            return false;
+
+        watermark = newWatermark;
+        boolean modified = false;
+        for (Iterator<Range<T>> i = iterator(); i.hasNext(); ) {
+            Range<T> first = i.next();
+            if (first.hasLowerBound() && first.lowerEndpoint().compareTo(newWatermark) >= 0)
+                break;
+
+            i.remove();
+            modified = true;
+            if (first.hasUpperBound() && first.upperEndpoint().compareTo(newWatermark) <= 0) {
+                evicted(first, EvictionCause.WATERMARK);
+            } else {
+                //The rest of the ranges are above the watermark, so put back what is left of this one and stop.
+                super.add(first.intersection(atLeast(newWatermark)));
+                evicted(first.intersection(lessThan(newWatermark)), EvictionCause.WATERMARK);
+                break;
+            }
+        }
+        return modified;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The range is clipped to the watermark, and the eviction policies are applied afterwards.
+     */
+    @Override
+    public boolean add(Range<T> tRange) {
+        if (tRange == null)
+            return false;
+
+        boolean modified = super.add(canonical(tRange));
+        if (modified && !removing)
+            evictExpired();
+
+        return modified;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The eviction policies are not applied, even if splitting a range leaves the set holding more than the maximum
+     * number of ranges.
+     */
+    @Override
+    public boolean remove(Range<T> tRange) {
+        removing = true;
+        try {
+            return super.remove(tRange);
+        } finally {
+            removing = false;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The ranges are clipped to the watermark, and the eviction policies are applied afterwards.
+     */
+    @Override
+    public boolean addAll(Iterable<? extends Range<T>> tRanges) {
+        boolean modified = super.addAll(tRanges);
+        if (modified)
+            evictExpired();
+
+        return modified;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Ranges are also clipped to start at the watermark.
+     */
+    @Override
+    protected Range<T> canonical(Range<T> tRange) {
+        tRange = super.canonical(tRange);
+        if (watermark == null || tRange.isEmpty())
+            return tRange;
+
+        Range<T> held = atLeast(watermark);
+        return (tRange.isConnected(held) ? tRange.intersection(held) : closedOpen(watermark, watermark));
+    }
+
+    /**
+     * Evicts the lowest ranges while they break either the size or age policy.
+     */
+    private void evictExpired() {
+        Range<T> last = (isEmpty() ? null : navigableRanges().last());
+        for (Iterator<Range<T>> i = iterator(); i.hasNext(); ) {
+            Range<T> first = i.next();
+            EvictionCause cause;
+            if (size() > maxRanges)
+                cause = EvictionCause.SIZE;
+            else if (expired(first, last))
+                cause = EvictionCause.AGE;
+            else
+                break;
+
+            //The lowest range is never unbounded above unless it is the only one, in which case neither policy applies.
+            i.remove();
+            watermark = first.upperEndpoint();
+            evicted(first, cause);
+        }
+    }
+
+    /**
+     * Returns true if the last value of the range is more than the maximum age below the last value of the set.
+     */
+    private boolean expired(Range<T> range, Range<T> last) {
+        if (maxAge == Long.MAX_VALUE || range == last || !last.hasUpperBound())
+            return false;
+
+        return discreteDomain().distance(range.upperEndpoint(), last.upperEndpoint()) > maxAge;
+    }
+
+    private void evicted(Range<T> range, EvictionCause cause) {
+        if (listener != null)
+            listener.evicted(range, cause);
+    }
+}
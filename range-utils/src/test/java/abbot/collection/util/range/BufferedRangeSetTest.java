@@ -0,0 +1,101 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.DiscreteDomains;
+import com.google.common.collect.Range;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.google.common.collect.Iterables.elementsEqual;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Ranges.*;
+import static java.util.Arrays.asList;
+import static junit.framework.Assert.*;
+
+public class BufferedRangeSetTest {
+
+    @Test
+    public void simpleTest() {
+        BufferedRangeSet<Integer> rangeSet = new BufferedRangeSet<Integer>(new DiscreteTreeRangeSet<Integer>(DiscreteDomains.integers()));
+        assertTrue(rangeSet.isEmpty());
+
+        //Adjacent ranges only extend the pending range.
+        for (int i = 0; i < 100; i++)
+            assertTrue(rangeSet.add(closed(i * 10, i * 10 + 9)));
+        assertFalse(rangeSet.add(closed(5, 15)));
+        assertEquals(1, rangeSet.buffered());
+        assertTrue(rangeSet.contains(500));
+
+        rangeSet.add(closed(2000, 2010));
+        rangeSet.add(closed(1500, 1510));
+        assertEquals(3, rangeSet.buffered());
+        assertEquals(3, rangeSet.size());
+        assertEquals(0, rangeSet.buffered());
+        assertEquals(asList(closedOpen(0, 1000), closedOpen(1500, 1511), closedOpen(2000, 2011)), newArrayList(rangeSet));
+
+        assertTrue(rangeSet.remove(closed(0, 1510)));
+        assertEquals(asList(closedOpen(2000, 2011)), newArrayList(rangeSet));
+
+        //The complement is a copy, so it is not left looking at a tree which misses buffered ranges.
+        RangeSet<Integer> complement = rangeSet.complement();
+        rangeSet.add(closed(3000, 3010));
+        assertTrue(complement.contains(3005));
+        assertFalse(rangeSet.complement().contains(3005));
+    }
+
+    @Test
+    public void testMatchesTreeRangeSet() {
+        Random random = new Random(59);
+        BufferedRangeSet<Integer> rangeSet = new BufferedRangeSet<Integer>(new TreeRangeSet<Integer>(), 16);
+        TreeRangeSet<Integer> expected = new TreeRangeSet<Integer>();
+        int cursor = 0;
+        for (int i = 0; i < 20000; i++) {
+            int choice = random.nextInt(100);
+            if (choice < 80) {
+                //Mostly adjacent packets, with the occasional retransmission or jump.
+                int lower = (random.nextInt(10) == 0 ? random.nextInt(cursor + 1) : cursor + (random.nextInt(5) == 0 ? 1 : 0));
+                Range<Integer> range = closedOpen(lower, lower + 1 + random.nextInt(8));
+                rangeSet.add(range);
+                expected.add(range);
+                cursor = Math.max(cursor, range.upperEndpoint());
+            } else if (choice < 85) {
+                int lower = random.nextInt(cursor + 1);
+                Range<Integer> range = closedOpen(lower, lower + random.nextInt(20));
+                assertEquals(expected.remove(range), rangeSet.remove(range));
+            } else if (choice < 95) {
+                int point = random.nextInt(cursor + 10);
+                assertEquals(expected.contains(point), rangeSet.contains(point));
+            } else if (choice < 99) {
+                assertEquals(expected.size(), rangeSet.size());
+            } else {
+                assertTrue(elementsEqual(expected, rangeSet));
+            }
+        }
+        assertTrue(elementsEqual(expected, rangeSet));
+    }
+
+    @Test
+    public void testThresholdFlush() {
+        final List<Integer> batches = new ArrayList<Integer>();
+        TreeRangeSet<Integer> backing = new TreeRangeSet<Integer>() {
+            @Override
+            public boolean addAll(Iterable<? extends Range<Integer>> tRanges) {
+                batches.add(newArrayList(tRanges).size());
+                return super.addAll(tRanges);
+            }
+        };
+        BufferedRangeSet<Integer> rangeSet = new BufferedRangeSet<Integer>(backing, 3);
+
+        //The fourth range pushes the third into the buffer, which flushes exactly the three buffered ranges.
+        for (int i = 0; i < 4; i++)
+            rangeSet.add(closed(i * 10, i * 10 + 5));
+        assertEquals(asList(3), batches);
+        assertEquals(1, rangeSet.buffered());
+        assertTrue(elementsEqual(asList(closed(0, 5), closed(10, 15), closed(20, 25)), backing));
+
+        assertTrue(elementsEqual(asList(closed(0, 5), closed(10, 15), closed(20, 25), closed(30, 35)), rangeSet));
+        assertEquals(asList(3, 1), batches);
+    }
+}
@@ -0,0 +1,127 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.DiscreteDomains;
+import com.google.common.collect.Range;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.collect.Ranges.closed;
+import static com.google.common.collect.Ranges.closedOpen;
+import static junit.framework.Assert.*;
+
+public class ConcurrentRangeSetTest {
+
+    private static final int NUM_THREADS = 8;
+    private static final int RANGES_PER_THREAD = 500;
+
+    /**
+     * Each writer adds every other block in its own slice of the key space and then fills in the gaps.  The reader
+     * continuously verifies that every iteration sees a fully coalesced set of ranges.
+     */
+    private static void runConcurrentWriters(final RangeSet<Long> rangeSet) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS + 1);
+        final AtomicBoolean done = new AtomicBoolean(false);
+        try {
+            List<Future<?>> writers = new ArrayList<Future<?>>();
+            for (int t = 0; t < NUM_THREADS; t++) {
+                final long base = t * RANGES_PER_THREAD * 10L;
+                writers.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int i = 0; i < RANGES_PER_THREAD; i += 2)
+                            rangeSet.add(closedOpen(base + i * 10, base + i * 10 + 10));
+                        for (int i = 1; i < RANGES_PER_THREAD; i += 2)
+                            rangeSet.add(closedOpen(base + i * 10, base + i * 10 + 10));
+                        return null;
+                    }
+                }));
+            }
+
+            Future<Void> reader = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    while (!done.get()) {
+                        Range<Long> previous = null;
+                        for (Range<Long> range : rangeSet) {
+                            assertTrue(previous == null || !previous.isConnected(range));
+                            previous = range;
+                        }
+                    }
+                    return null;
+                }
+            });
+
+            for (Future<?> writer : writers)
+                writer.get();
+
+            done.set(true);
+            reader.get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, rangeSet.size());
+        assertTrue(rangeSet.encloses(closedOpen(0L, NUM_THREADS * RANGES_PER_THREAD * 10L)));
+    }
+
+    @Test
+    public void testConcurrentRangeSet() throws Exception {
+        ConcurrentRangeSet<Long> rangeSet = new ConcurrentRangeSet<Long>(DiscreteDomains.longs());
+        runConcurrentWriters(rangeSet);
+
+        ImmutableRangeSet<Long> snapshot = rangeSet.snapshot();
+        rangeSet.remove(closed(10L, 19L));
+        assertEquals(2, rangeSet.size());
+        assertEquals(1, snapshot.size());
+        assertFalse(rangeSet.contains(15L));
+        assertTrue(rangeSet.contains(20L));
+
+        rangeSet.clear();
+        assertTrue(rangeSet.isEmpty());
+    }
+
+    @Test
+    public void testCopyKeepsDomain() {
+        DiscreteTreeRangeSet<Integer> source = new DiscreteTreeRangeSet<Integer>(DiscreteDomains.integers());
+        source.add(closed(0, 4));
+
+        //Adjacent ranges are only coalesced if the copy still canonicalizes them.
+        ConcurrentRangeSet<Integer> copy = new ConcurrentRangeSet<Integer>(source);
+        copy.add(closed(5, 9));
+        assertEquals(1, copy.size());
+
+        ConcurrentRangeSet<Integer> fromSnapshot = new ConcurrentRangeSet<Integer>(copy.snapshot());
+        fromSnapshot.add(closed(10, 14));
+        assertEquals(1, fromSnapshot.size());
+
+        ConcurrentRangeSet<Integer> explicit = new ConcurrentRangeSet<Integer>(DiscreteDomains.integers(), new TreeRangeSet<Integer>());
+        explicit.add(closed(0, 4));
+        explicit.add(closed(5, 9));
+        assertEquals(1, explicit.size());
+    }
+
+    @Test
+    public void testShardedRangeSet() throws Exception {
+        List<Long> splitPoints = new ArrayList<Long>();
+        for (int t = 1; t < NUM_THREADS; t++)
+            splitPoints.add(t * RANGES_PER_THREAD * 10L + 5);
+
+        ShardedRangeSet<Long> rangeSet = new ShardedRangeSet<Long>(DiscreteDomains.longs(), splitPoints, 64);
+        runConcurrentWriters(rangeSet);
+        assertTrue(rangeSet.shardCount() > NUM_THREADS);
+
+        rangeSet.remove(closed(10L, 19L));
+        assertEquals(2, rangeSet.size());
+        assertFalse(rangeSet.contains(15L));
+        assertTrue(rangeSet.contains(20L));
+
+        ShardedRangeSet<Long> complement = rangeSet.complement();
+        assertEquals(3, complement.size());
+        assertTrue(complement.encloses(closed(10L, 19L)));
+        assertEquals(rangeSet.asSet(), complement.complement().asSet());
+    }
+}
@@ -0,0 +1,85 @@
+package abbot.collection.util.range;
+
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+
+import static abbot.collection.util.range.RangeSetMetrics.Operation.*;
+import static com.google.common.collect.Ranges.*;
+import static junit.framework.Assert.*;
+
+public class InstrumentedRangeSetTest {
+
+    @Test
+    public void simpleTest() {
+        JmxRangeSetMetrics metrics = new JmxRangeSetMetrics();
+        InstrumentedRangeSet<Integer> rangeSet = new InstrumentedRangeSet<Integer>(new TreeRangeSet<Integer>(), metrics);
+
+        rangeSet.add(closed(1, 5));
+        rangeSet.add(closed(10, 15));
+        rangeSet.add(closed(20, 25));
+        rangeSet.add(closed(3, 22));
+        assertEquals(1, rangeSet.size());
+        assertEquals(3, metrics.getRangesMerged());
+
+        rangeSet.remove(open(5, 10));
+        rangeSet.remove(closed(30, 40));
+        assertEquals(1, metrics.getRangesSplit());
+        assertEquals(2, metrics.getRangeCount());
+        assertEquals(rangeSet.estimatedRetainedBytes(), metrics.getEstimatedRetainedBytes());
+
+        assertTrue(rangeSet.contains(3));
+        assertFalse(rangeSet.encloses(closed(1, 25)));
+        assertEquals(3, rangeSet.complement().size());
+
+        assertEquals(4, metrics.count(ADD));
+        assertEquals(2, metrics.count(REMOVE));
+        assertEquals(1, metrics.count(CONTAINS));
+        assertEquals(1, metrics.count(ENCLOSES));
+        assertEquals(1, metrics.count(COMPLEMENT));
+        assertTrue(metrics.percentileNanos(ADD, 100) >= metrics.percentileNanos(ADD, 50));
+
+        //Nothing is recorded once disabled.
+        rangeSet.setEnabled(false);
+        rangeSet.add(closed(100, 200));
+        assertTrue(rangeSet.contains(150));
+        assertEquals(4, metrics.count(ADD));
+        assertEquals(1, metrics.count(CONTAINS));
+        assertEquals(3, rangeSet.size());
+    }
+
+    @Test
+    public void testSizeNotReadFromBufferedSet() {
+        JmxRangeSetMetrics metrics = new JmxRangeSetMetrics();
+        BufferedRangeSet<Integer> buffered = new BufferedRangeSet<Integer>(new TreeRangeSet<Integer>());
+        InstrumentedRangeSet<Integer> rangeSet = new InstrumentedRangeSet<Integer>(buffered, metrics);
+
+        //Reading the size would flush the buffer on every add.
+        rangeSet.add(closed(1, 5));
+        rangeSet.add(closed(10, 15));
+        assertEquals(2, buffered.buffered());
+        assertEquals(2, metrics.count(ADD));
+        assertEquals(0, metrics.getRangesMerged());
+        assertEquals(0, metrics.getRangeCount());
+    }
+
+    @Test
+    public void testJmxRegistration() throws Exception {
+        JmxRangeSetMetrics metrics = new JmxRangeSetMetrics();
+        InstrumentedRangeSet<Long> rangeSet = new InstrumentedRangeSet<Long>(new LongRangeSet(), metrics);
+        rangeSet.add(closedOpen(1L, 5L));
+        rangeSet.add(closedOpen(7L, 9L));
+
+        ObjectName name = metrics.register("abbot.collection.util.range:type=RangeSetMetrics,name=test");
+        try {
+            assertEquals(2, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "RangeCount"));
+            assertEquals(32L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "EstimatedRetainedBytes"));
+            TabularData counts = (TabularData) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "OperationCounts");
+            assertEquals(2L, counts.get(new Object[]{"ADD"}).get("value"));
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.DiscreteDomains;
+import com.google.common.collect.Range;
+import com.google.common.collect.Ranges;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static com.google.common.collect.Ranges.*;
+import static junit.framework.Assert.*;
+
+public class IntRangeSetTest {
+
+    //Values are drawn from around a few chunk boundaries and the ends of the domain.
+    private static final int[] CENTERS = {Integer.MIN_VALUE, -65536, 0, 65536 * 3, Integer.MAX_VALUE - 100};
+
+    private static int randomValue(Random random) {
+        int center = CENTERS[random.nextInt(CENTERS.length)];
+        long value = (long) center + random.nextInt(140000) - 70000;
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+    }
+
+    private static Range<Integer> randomRange(Random random) {
+        int lower = randomValue(random);
+        int length = (random.nextInt(4) == 0 ? random.nextInt(200000) : random.nextInt(8));
+        if (lower > Integer.MAX_VALUE - length)
+            return atLeast(lower);
+
+        return closed(lower, lower + length);
+    }
+
+    private static void assertMatches(RangeSet<Integer> expected, IntRangeSet actual, Random random) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(new ArrayList<Range<Integer>>(expected.asSet()), new ArrayList<Range<Integer>>(actual.asSet()));
+        for (int i = 0; i < 200; i++) {
+            int value = randomValue(random);
+            assertEquals(expected.contains(value), actual.contains(value));
+
+            Range<Integer> range = randomRange(random);
+            assertEquals(expected.encloses(range), actual.encloses(range));
+        }
+    }
+
+    @Test
+    public void testMatchesDiscreteTreeRangeSet() {
+        Random random = new Random(23);
+        RangeSet<Integer> expected = new DiscreteTreeRangeSet<Integer>(DiscreteDomains.integers());
+        IntRangeSet actual = new IntRangeSet();
+        for (int i = 0; i < 5000; i++) {
+            Range<Integer> range = randomRange(random);
+            if (random.nextInt(3) > 0) {
+                expected.add(range);
+                actual.add(range);
+            } else {
+                expected.remove(range);
+                actual.remove(range);
+            }
+
+            if (i % 500 == 0)
+                assertMatches(expected, actual, random);
+        }
+        assertMatches(expected, actual, random);
+
+        actual.optimize();
+        assertMatches(expected, actual, random);
+        assertMatches(expected.complement(), actual.complement(), random);
+        assertEquals(actual, actual.complement().complement());
+
+        actual.add(Ranges.<Integer>all());
+        assertEquals(1, actual.size());
+        assertEquals(atLeast(Integer.MIN_VALUE), actual.iterator().next());
+        actual.clear();
+        assertTrue(actual.isEmpty());
+    }
+
+    @Test
+    public void testSetAlgebra() {
+        Random random = new Random(29);
+        for (int trial = 0; trial < 20; trial++) {
+            RangeSet<Integer> expectedFirst = new DiscreteTreeRangeSet<Integer>(DiscreteDomains.integers());
+            RangeSet<Integer> expectedSecond = new DiscreteTreeRangeSet<Integer>(DiscreteDomains.integers());
+            IntRangeSet first = new IntRangeSet();
+            IntRangeSet second = new IntRangeSet();
+            for (int i = 0; i < 300; i++) {
+                Range<Integer> range = randomRange(random);
+                if (random.nextBoolean()) {
+                    expectedFirst.add(range);
+                    first.add(range);
+                } else {
+                    expectedSecond.add(range);
+                    second.add(range);
+                }
+            }
+
+            assertMatches(RangeSets.union(expectedFirst, expectedSecond), first.union(second), random);
+            assertMatches(RangeSets.intersection(expectedFirst, expectedSecond), first.intersection(second), random);
+            assertMatches(RangeSets.difference(expectedFirst, expectedSecond), first.difference(second), random);
+
+            IntRangeSet copy = first.union(new IntRangeSet());
+            assertEquals(!first.union(second).equals(first), copy.addAll(second));
+            assertEquals(first.union(second), copy);
+            copy.removeAll(second);
+            assertEquals(first.difference(second), copy);
+        }
+    }
+
+    @Test
+    public void testInPlaceUpdatesDoNotLeakIntoSharedContainers() {
+        Random random = new Random(31);
+        RangeSet<Integer> expected = new DiscreteTreeRangeSet<Integer>(DiscreteDomains.integers());
+        IntRangeSet original = new IntRangeSet();
+
+        //A dense chunk held as a bitmap and a sparse chunk held as an array.
+        for (int i = 0; i < 6000; i++) {
+            int value = random.nextInt(65536);
+            expected.add(closedOpen(value, value + 1));
+            original.add(value, value + 1);
+        }
+        for (int i = 0; i < 500; i++) {
+            int value = 65536 + random.nextInt(65536);
+            expected.add(closedOpen(value, value + 1));
+            original.add(value, value + 1);
+        }
+
+        IntRangeSet copy = original.union(new IntRangeSet());
+        RangeSet<Integer> expectedCopy = new DiscreteTreeRangeSet<Integer>(DiscreteDomains.integers());
+        expectedCopy.addAll(expected);
+
+        //Toggling single values in both sets updates each chunk in place, crossing between representations as well.
+        for (int i = 0; i < 4000; i++) {
+            boolean first = random.nextBoolean();
+            RangeSet<Integer> model = (first ? expected : expectedCopy);
+            IntRangeSet actual = (first ? original : copy);
+            int value = random.nextInt(2 * 65536);
+            if (random.nextBoolean()) {
+                actual.add(value, value + 1);
+                model.add(closedOpen(value, value + 1));
+            } else {
+                actual.remove(value, value + 1);
+                model.remove(closedOpen(value, value + 1));
+            }
+        }
+        copy.remove(0, 60000);
+        expectedCopy.remove(closedOpen(0, 60000));
+        copy.add(70000, 70100);
+        expectedCopy.add(closedOpen(70000, 70100));
+
+        assertMatches(expectedCopy, copy, random);
+        assertMatches(expected, original, random);
+    }
+}
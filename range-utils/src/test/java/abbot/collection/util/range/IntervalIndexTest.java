@@ -0,0 +1,100 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.Range;
+import org.junit.Test;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static com.google.common.collect.BoundType.CLOSED;
+import static com.google.common.collect.BoundType.OPEN;
+import static com.google.common.collect.Ranges.*;
+import static junit.framework.Assert.*;
+
+public class IntervalIndexTest {
+
+    private static Range<Integer> randomRange(Random random) {
+        switch (random.nextInt(20)) {
+            case 0:
+                return lessThan(random.nextInt(100));
+            case 1:
+                return atLeast(random.nextInt(100));
+            default:
+                int lower = random.nextInt(100);
+                return range(lower, (random.nextBoolean() ? CLOSED : OPEN), lower + 1 + random.nextInt(15), (random.nextBoolean() ? CLOSED : OPEN));
+        }
+    }
+
+    private static Map<String, Integer> counts(List<Map.Entry<Range<Integer>, Integer>> entries) {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (Map.Entry<Range<Integer>, Integer> entry : entries) {
+            String key = entry.getKey() + "=" + entry.getValue();
+            counts.put(key, (counts.containsKey(key) ? counts.get(key) + 1 : 1));
+        }
+        return counts;
+    }
+
+    @Test
+    public void simpleTest() {
+        IntervalIndex<Integer, String> index = new IntervalIndex<Integer, String>();
+        index.add(closed(1, 10), "a");
+        index.add(closed(5, 15), "b");
+        index.add(closed(5, 15), "c");
+        index.add(open(10, 20), "d");
+
+        assertEquals(4, index.size());
+        assertEquals(1, index.stab(2).size());
+        assertEquals(3, index.stab(10).size());
+        assertEquals(3, index.stab(11).size());
+        assertEquals(0, index.stab(20).size());
+        assertEquals(4, index.overlapping(closed(9, 11)).size());
+        assertEquals(0, index.overlapping(closedOpen(20, 30)).size());
+
+        assertTrue(index.remove(closed(5, 15), "b"));
+        assertFalse(index.remove(closed(5, 15), "b"));
+        assertEquals(2, index.stab(10).size());
+        System.out.println(index);
+    }
+
+    @Test
+    public void testMatchesLinearScan() {
+        Random random = new Random(37);
+        IntervalIndex<Integer, Integer> index = new IntervalIndex<Integer, Integer>();
+        List<Map.Entry<Range<Integer>, Integer>> expected = new ArrayList<Map.Entry<Range<Integer>, Integer>>();
+        for (int i = 0; i < 3000; i++) {
+            if (expected.isEmpty() || random.nextInt(3) > 0) {
+                Range<Integer> range = randomRange(random);
+                Integer value = random.nextInt(3);
+                index.add(range, value);
+                expected.add(new AbstractMap.SimpleImmutableEntry<Range<Integer>, Integer>(range, value));
+            } else {
+                Map.Entry<Range<Integer>, Integer> entry = expected.remove(random.nextInt(expected.size()));
+                assertTrue(index.remove(entry.getKey(), entry.getValue()));
+            }
+            assertEquals(expected.size(), index.size());
+
+            if (i % 50 == 0) {
+                for (int point = -5; point < 125; point++) {
+                    List<Map.Entry<Range<Integer>, Integer>> stabbed = new ArrayList<Map.Entry<Range<Integer>, Integer>>();
+                    for (Map.Entry<Range<Integer>, Integer> entry : expected)
+                        if (entry.getKey().contains(point))
+                            stabbed.add(entry);
+
+                    assertEquals(counts(stabbed), counts(index.stab(point)));
+                }
+
+                Range<Integer> query = randomRange(random);
+                List<Map.Entry<Range<Integer>, Integer>> overlapping = new ArrayList<Map.Entry<Range<Integer>, Integer>>();
+                for (Map.Entry<Range<Integer>, Integer> entry : expected)
+                    if (entry.getKey().isConnected(query) && !entry.getKey().intersection(query).isEmpty())
+                        overlapping.add(entry);
+
+                assertEquals(counts(overlapping), counts(index.overlapping(query)));
+            }
+        }
+    }
+}
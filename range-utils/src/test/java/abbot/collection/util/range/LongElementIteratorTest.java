@@ -0,0 +1,94 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.DiscreteDomains;
+import com.google.common.collect.Range;
+import com.google.common.collect.Ranges;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.google.common.collect.Ranges.*;
+import static junit.framework.Assert.*;
+
+public class LongElementIteratorTest {
+
+    private static List<Long> drain(LongElementIterator iterator) {
+        List<Long> values = new ArrayList<Long>();
+        while (iterator.hasNext())
+            values.add(iterator.nextLong());
+
+        return values;
+    }
+
+    @Test
+    public void simpleTest() {
+        LongRangeSet rangeSet = new LongRangeSet();
+        rangeSet.add(closed(1L, 3L));
+        rangeSet.add(open(5L, 7L));
+        rangeSet.add(closedOpen(10L, 12L));
+
+        LongElementIterator iterator = LongElementIterator.longs(rangeSet);
+        assertEquals(6, iterator.remaining());
+        assertEquals(1L, iterator.nextLong());
+
+        LongElementIterator prefix = iterator.trySplit();
+        assertEquals(2, prefix.remaining());
+        assertEquals(3, iterator.remaining());
+        assertEquals(Arrays.asList(2L, 3L), drain(prefix));
+        assertEquals(Arrays.asList(6L, 10L, 11L), drain(iterator));
+        assertNull(iterator.trySplit());
+
+        assertFalse(LongElementIterator.longs(new LongRangeSet()).hasNext());
+
+        //Too many values to count, but iteration still works.
+        RangeSet<Long> all = new DiscreteTreeRangeSet<Long>(DiscreteDomains.longs());
+        all.add(Ranges.<Long>all());
+        iterator = LongElementIterator.longs(all);
+        assertEquals(Long.MAX_VALUE, iterator.remaining());
+        assertNull(iterator.trySplit());
+        assertEquals(Long.MIN_VALUE, iterator.nextLong());
+        assertEquals(Long.MIN_VALUE + 1, iterator.nextLong());
+    }
+
+    @Test
+    public void testSplitMatchesIteration() {
+        Random random = new Random(31);
+        for (int run = 0; run < 100; run++) {
+            RangeSet<Integer> rangeSet = new DiscreteTreeRangeSet<Integer>(DiscreteDomains.integers());
+            for (int i = random.nextInt(30); i > 0; i--) {
+                int lower = random.nextInt(1000) - 500;
+                rangeSet.add(closedOpen(lower, lower + random.nextInt(40)));
+            }
+
+            List<Long> expected = new ArrayList<Long>();
+            for (Range<Integer> range : rangeSet)
+                for (Integer value : range.asSet(DiscreteDomains.integers()))
+                    expected.add((long) value);
+
+            //Split recursively in random places and check the pieces are balanced and cover every value in order.
+            List<LongElementIterator> pieces = new ArrayList<LongElementIterator>();
+            pieces.add(LongElementIterator.integers(rangeSet));
+            for (int i = 0; i < 20; i++) {
+                LongElementIterator piece = pieces.get(random.nextInt(pieces.size()));
+                long remaining = piece.remaining();
+                LongElementIterator prefix = piece.trySplit();
+                if (prefix == null) {
+                    assertTrue(remaining < 2);
+                    continue;
+                }
+                assertEquals(remaining, prefix.remaining() + piece.remaining());
+                assertEquals(remaining / 2, prefix.remaining());
+                pieces.add(pieces.indexOf(piece), prefix);
+            }
+
+            List<Long> actual = new ArrayList<Long>();
+            for (LongElementIterator piece : pieces)
+                actual.addAll(drain(piece));
+
+            assertEquals(expected, actual);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.DiscreteDomains;
+import com.google.common.collect.Range;
+import com.google.common.collect.Ranges;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static com.google.common.collect.Ranges.*;
+import static junit.framework.Assert.*;
+
+public class LongRangeSetTest {
+
+    @Test
+    public void simpleTest() {
+        LongRangeSet rangeSet = new LongRangeSet();
+
+        rangeSet.add(closed(3L, 9L));
+        rangeSet.add(closed(13L, 19L));
+        rangeSet.add(closed(5L, 6L));
+        rangeSet.add(closed(10L, 12L));
+        rangeSet.add(greaterThan(90L));
+        rangeSet.add(lessThan(-80L));
+
+        assertEquals(3, rangeSet.size());
+        assertFalse(rangeSet.contains(2L));
+        assertFalse(rangeSet.contains(-80L));
+        assertTrue(rangeSet.contains(-81L));
+        assertTrue(rangeSet.contains(Long.MIN_VALUE));
+        assertTrue(rangeSet.contains(Long.MAX_VALUE));
+        assertTrue(rangeSet.contains(12L));
+        assertTrue(rangeSet.encloses(3, 20));
+        assertFalse(rangeSet.encloses(3, 21));
+        assertTrue(rangeSet.encloses(20, 20));
+        assertFalse(rangeSet.encloses(25, 25));
+        assertFalse(rangeSet.encloses(closedOpen(25L, 25L)));
+        assertTrue(rangeSet.encloses(closedOpen(200L, 200L)));
+
+        Object[] ranges = rangeSet.asSet().toArray();
+        assertEquals(closedOpen(Long.MIN_VALUE, -80L), ranges[0]);
+        assertEquals(closedOpen(3L, 20L), ranges[1]);
+        assertEquals(atLeast(91L), ranges[2]);
+
+        System.out.println(rangeSet);
+        System.out.println(rangeSet.complement());
+    }
+
+    @Test
+    public void testRemove() {
+        LongRangeSet rangeSet = new LongRangeSet();
+        rangeSet.add(Ranges.<Long>all());
+
+        assertEquals(1, rangeSet.size());
+        rangeSet.remove(singleton(1L));
+        assertEquals(2, rangeSet.size());
+        assertFalse(rangeSet.contains(1L));
+
+        assertFalse(rangeSet.remove(singleton(1L)));
+        rangeSet.remove(atMost(0L));
+        assertEquals(1, rangeSet.size());
+        rangeSet.remove(atLeast(2L));
+        assertEquals(0, rangeSet.size());
+        assertTrue(rangeSet.complement().contains(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testMatchesDiscreteTreeRangeSet() throws Exception {
+        Random random = new Random(42);
+        LongRangeSet rangeSet = new LongRangeSet();
+        DiscreteTreeRangeSet<Long> expected = new DiscreteTreeRangeSet<Long>(DiscreteDomains.longs());
+
+        for (int i = 0; i < 20000; i++) {
+            long lower = random.nextInt(10000);
+            long upper = lower + random.nextInt(50);
+            Range<Long> range = closed(lower, upper);
+
+            if (random.nextInt(3) == 0) {
+                expected.remove(range);
+                rangeSet.remove(range);
+            } else {
+                expected.add(range);
+                rangeSet.add(range);
+            }
+
+            assertEquals(expected.asSet(), rangeSet.asSet());
+
+            long probe = random.nextInt(10100);
+            assertEquals(expected.contains(probe), rangeSet.contains(probe));
+            assertEquals(expected.encloses(closed(probe, probe + 3)), rangeSet.encloses(probe, probe + 4));
+            assertEquals(expected.encloses(closedOpen(probe, probe)), rangeSet.encloses(probe, probe));
+            assertEquals(expected.encloses(closedOpen(probe, probe)), rangeSet.encloses(closedOpen(probe, probe)));
+        }
+
+        assertEquals(new ArrayList<Range<Long>>(expected.complement().asSet()),
+                new ArrayList<Range<Long>>(rangeSet.complement().asSet()));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(rangeSet);
+        out.close();
+        Object copy = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(rangeSet, copy);
+    }
+}
@@ -0,0 +1,93 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.Range;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Random;
+
+import static com.google.common.collect.Ranges.*;
+import static junit.framework.Assert.*;
+
+public class MappedLongRangeSetTest {
+
+    private static File tempFile() throws Exception {
+        File file = File.createTempFile("ranges", ".seg");
+        file.delete();
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static void assertMatches(LongRangeSet expected, MappedLongRangeSet actual, Random random) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.asSet(), actual.asSet());
+        for (int i = 0; i < 200; i++) {
+            long value = random.nextInt(12000) - 1000;
+            assertEquals(expected.contains(value), actual.contains(value));
+
+            Range<Long> range = closedOpen(value, value + 1 + random.nextInt(30));
+            assertEquals(expected.encloses(range), actual.encloses(range));
+        }
+    }
+
+    @Test
+    public void testMatchesLongRangeSet() throws Exception {
+        File file = tempFile();
+        LongRangeSet expected = new LongRangeSet();
+        for (int i = 0; i < 3000; i++) {
+            long lower = i * 3;
+            expected.add(closed(lower, lower + (i % 2)));
+        }
+        expected.add(atMost(-500L));
+        MappedLongRangeSet.write(file, expected);
+
+        Random random = new Random(17);
+        MappedLongRangeSet mapped = MappedLongRangeSet.open(file, 50);
+        assertMatches(expected, mapped, random);
+
+        for (int i = 0; i < 1000; i++) {
+            long lower = random.nextInt(11000) - 500;
+            Range<Long> range = closedOpen(lower, lower + 1 + random.nextInt(20));
+            if (random.nextBoolean()) {
+                expected.add(range);
+                mapped.add(range);
+            } else {
+                expected.remove(range);
+                mapped.remove(range);
+            }
+
+            if (i % 97 == 0)
+                assertMatches(expected, mapped, random);
+        }
+        assertMatches(expected, mapped, random);
+        assertEquals(expected.complement().asSet(), mapped.complement().asSet());
+
+        mapped.merge();
+        assertMatches(expected, MappedLongRangeSet.open(file), random);
+
+        mapped.clear();
+        assertTrue(mapped.isEmpty());
+        mapped.add(greaterThan(Long.MAX_VALUE - 3));
+        mapped.merge();
+        assertEquals(atLeast(Long.MAX_VALUE - 2), MappedLongRangeSet.open(file).iterator().next());
+    }
+
+    @Test
+    public void testWriteLeavesOpenSetsIntact() throws Exception {
+        File file = tempFile();
+        LongRangeSet original = new LongRangeSet();
+        for (int i = 0; i < 5000; i++)
+            original.add(closed(i * 4L, i * 4L + 1));
+        MappedLongRangeSet.write(file, original);
+        MappedLongRangeSet mapped = MappedLongRangeSet.open(file);
+
+        //Replacing the file with a much smaller segment must not pull the mapping out from under the open set.
+        LongRangeSet replacement = new LongRangeSet();
+        replacement.add(closed(1L, 2L));
+        MappedLongRangeSet.write(file, replacement);
+
+        Random random = new Random(19);
+        assertMatches(original, mapped, random);
+        assertMatches(replacement, MappedLongRangeSet.open(file), random);
+    }
+}
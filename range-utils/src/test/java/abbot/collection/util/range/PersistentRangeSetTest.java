@@ -0,0 +1,136 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.DiscreteDomains;
+import com.google.common.collect.Range;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.google.common.collect.BoundType.CLOSED;
+import static com.google.common.collect.BoundType.OPEN;
+import static com.google.common.collect.Iterables.elementsEqual;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Ranges.*;
+import static java.util.Arrays.asList;
+import static junit.framework.Assert.*;
+
+public class PersistentRangeSetTest {
+
+    private static Range<Integer> randomRange(Random random) {
+        switch (random.nextInt(20)) {
+            case 0:
+                return lessThan(random.nextInt(200));
+            case 1:
+                return atLeast(random.nextInt(200));
+            default:
+                int lower = random.nextInt(200);
+                return range(lower, (random.nextBoolean() ? CLOSED : OPEN), lower + 1 + random.nextInt(20), (random.nextBoolean() ? CLOSED : OPEN));
+        }
+    }
+
+    @Test
+    public void simpleTest() {
+        PersistentRangeSet<Integer> empty = PersistentRangeSet.of();
+        PersistentRangeSet<Integer> first = empty.with(closed(1, 5)).with(closed(10, 15));
+        PersistentRangeSet<Integer> second = first.with(closedOpen(5, 10));
+        PersistentRangeSet<Integer> third = second.without(open(2, 12));
+
+        assertTrue(empty.isEmpty());
+        assertEquals(asList(closed(1, 5), closed(10, 15)), newArrayList(first));
+        assertEquals(asList(closed(1, 15)), newArrayList(second));
+        assertEquals(asList(closed(1, 2), closed(12, 15)), newArrayList(third));
+        assertEquals(asList(closed(1, 5), closed(10, 15)), newArrayList(first));
+
+        assertSame(second, second.with(closed(3, 7)));
+        assertSame(third, third.without(open(2, 12)));
+        assertTrue(third.contains(12));
+        assertFalse(third.contains(7));
+        assertEquals(closed(1, 15), third.span());
+        assertEquals(closed(12, 15), third.rangeContaining(13));
+
+        try {
+            third.add(closed(20, 30));
+            fail();
+        } catch (UnsupportedOperationException ignored) {
+        }
+    }
+
+    @Test
+    public void testVersionsMatchTreeRangeSet() {
+        Random random = new Random(41);
+        List<PersistentRangeSet<Integer>> versions = new ArrayList<PersistentRangeSet<Integer>>();
+        List<ImmutableRangeSet<Integer>> expected = new ArrayList<ImmutableRangeSet<Integer>>();
+
+        TreeRangeSet<Integer> treeRangeSet = new TreeRangeSet<Integer>();
+        PersistentRangeSet<Integer> version = PersistentRangeSet.of();
+        for (int i = 0; i < 3000; i++) {
+            Range<Integer> range = randomRange(random);
+            boolean modified;
+            PersistentRangeSet<Integer> next;
+            if (random.nextInt(3) > 0) {
+                modified = treeRangeSet.add(range);
+                next = version.with(range);
+            } else {
+                modified = treeRangeSet.remove(range);
+                next = version.without(range);
+            }
+            assertEquals(modified, next != version);
+            version = next;
+
+            versions.add(version);
+            expected.add(ImmutableRangeSet.copyOf(treeRangeSet));
+            assertEquals(treeRangeSet.size(), version.size());
+
+            Range<Integer> query = randomRange(random);
+            assertEquals(treeRangeSet.encloses(query), version.encloses(query));
+            assertEquals(treeRangeSet.intersects(query), version.intersects(query));
+            assertTrue(elementsEqual(treeRangeSet.subRangeSet(query), version.subRangeSet(query)));
+        }
+
+        //Every old version is still intact.
+        for (int i = 0; i < versions.size(); i++) {
+            assertTrue(elementsEqual(expected.get(i), versions.get(i)));
+            for (int point = -5; point < 230; point += 7)
+                assertEquals(expected.get(i).contains(point), versions.get(i).contains(point));
+        }
+        assertTrue(elementsEqual(ImmutableRangeSet.copyOf(treeRangeSet).complement(), version.complement()));
+        assertEquals(version, PersistentRangeSet.copyOf(treeRangeSet));
+    }
+
+    @Test
+    public void testDiscreteVersions() {
+        Random random = new Random(43);
+        DiscreteTreeRangeSet<Integer> discrete = new DiscreteTreeRangeSet<Integer>(DiscreteDomains.integers());
+        PersistentRangeSet<Integer> version = PersistentRangeSet.of(DiscreteDomains.integers());
+        for (int i = 0; i < 2000; i++) {
+            Range<Integer> range = randomRange(random);
+            if (random.nextInt(3) > 0) {
+                discrete.add(range);
+                version = version.with(range);
+            } else {
+                discrete.remove(range);
+                version = version.without(range);
+            }
+            assertTrue(elementsEqual(discrete, version));
+        }
+    }
+
+    @Test
+    public void testCopyKeepsDomain() {
+        DiscreteTreeRangeSet<Integer> discrete = new DiscreteTreeRangeSet<Integer>(DiscreteDomains.integers());
+        discrete.add(closedOpen(0, 5));
+
+        //Adjacent ranges are only coalesced if the copy still canonicalizes them.
+        PersistentRangeSet<Integer> copy = PersistentRangeSet.copyOf(discrete).with(closed(5, 5)).with(closed(6, 9));
+        discrete.add(closed(5, 5));
+        discrete.add(closed(6, 9));
+        assertEquals(1, copy.size());
+        assertTrue(elementsEqual(discrete, copy));
+
+        assertEquals(1, PersistentRangeSet.copyOf(discrete.snapshot()).with(closed(10, 12)).size());
+        assertEquals(1, PersistentRangeSet.copyOf(new ConcurrentRangeSet<Integer>(discrete)).with(closed(10, 12)).size());
+        assertEquals(2, PersistentRangeSet.copyOf(new TreeRangeSet<Integer>()).with(closed(0, 4)).with(closed(5, 9)).size());
+    }
+}
@@ -0,0 +1,128 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.DiscreteDomains;
+import com.google.common.collect.Range;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.Random;
+
+import static com.google.common.collect.BoundType.CLOSED;
+import static com.google.common.collect.BoundType.OPEN;
+import static com.google.common.collect.Ranges.*;
+import static junit.framework.Assert.*;
+
+public class RangeSetCodecTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        RangeSetCodec<Integer> codec = new RangeSetCodec<Integer>(EndpointCodecs.integers());
+        Random random = new Random(5);
+        for (int trial = 0; trial < 100; trial++) {
+            RangeSet<Integer> rangeSet = new TreeRangeSet<Integer>();
+            for (int i = 0; i < random.nextInt(30); i++) {
+                int lower = random.nextInt(1000) - 500;
+                rangeSet.add(range(
+                        lower, (random.nextBoolean() ? CLOSED : OPEN),
+                        lower + 1 + random.nextInt(20), (random.nextBoolean() ? CLOSED : OPEN)
+                ));
+            }
+            if (random.nextBoolean())
+                rangeSet.add(atMost(Integer.MIN_VALUE + random.nextInt(5)));
+            if (random.nextBoolean())
+                rangeSet.add(greaterThan(Integer.MAX_VALUE - random.nextInt(5)));
+
+            assertEquals(rangeSet, codec.fromBytes(codec.toBytes(rangeSet)));
+        }
+
+        TreeRangeSet<Integer> all = new TreeRangeSet<Integer>();
+        all.add(com.google.common.collect.Ranges.<Integer>all());
+        assertEquals(all, codec.fromBytes(codec.toBytes(all)));
+        assertEquals(new TreeRangeSet<Integer>(), codec.fromBytes(codec.toBytes(new TreeRangeSet<Integer>())));
+    }
+
+    @Test
+    public void testDiscreteLongs() throws Exception {
+        RangeSetCodec<Long> codec = RangeSetCodec.longs();
+        DiscreteTreeRangeSet<Long> rangeSet = new DiscreteTreeRangeSet<Long>(DiscreteDomains.longs());
+        long start = Long.MIN_VALUE;
+        for (int i = 0; i < 10000; i++) {
+            rangeSet.add(closed(start, start + 10));
+            start += 100;
+        }
+        rangeSet.add(atLeast(Long.MAX_VALUE - 5));
+
+        byte[] bytes = codec.toBytes(rangeSet);
+        TreeRangeSet<Long> decoded = codec.fromBytes(bytes);
+        assertTrue(decoded instanceof DiscreteTreeRangeSet);
+        assertEquals(rangeSet, decoded);
+
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(serialized);
+        out.writeObject(rangeSet);
+        out.close();
+        System.out.println("Codec: " + bytes.length + " bytes, serialization: " + serialized.size() + " bytes");
+        assertTrue(bytes.length < rangeSet.size() * 4);
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized.toByteArray()));
+        assertEquals(rangeSet, in.readObject());
+    }
+
+    @Test
+    public void testStrings() throws Exception {
+        RangeSetCodec<String> codec = new RangeSetCodec<String>(EndpointCodecs.strings());
+        RangeSet<String> rangeSet = new TreeRangeSet<String>();
+        rangeSet.add(closedOpen("apple", "apricot"));
+        rangeSet.add(closed("banana", "bandana"));
+        rangeSet.add(greaterThan("cherry"));
+
+        assertEquals(rangeSet, codec.fromBytes(codec.toBytes(rangeSet)));
+    }
+
+    @Test
+    public void testInvalidInput() throws Exception {
+        RangeSetCodec<Long> codec = RangeSetCodec.longs();
+        byte[] bytes = codec.toBytes(new LongRangeSet());
+        bytes[0] = (byte) (RangeSetCodec.VERSION + 1);
+        try {
+            codec.fromBytes(bytes);
+            fail();
+        } catch (StreamCorruptedException e) {
+            //expected
+        }
+
+        RangeSetCodec<Integer> integers = new RangeSetCodec<Integer>(EndpointCodecs.integers());
+        RangeSet<Integer> overlapping = new TreeRangeSet<Integer>() {
+            @Override
+            public java.util.Iterator<Range<Integer>> iterator() {
+                return java.util.Arrays.asList(closed(1, 5), closed(3, 7)).iterator();
+            }
+        };
+        try {
+            integers.fromBytes(integers.toBytes(overlapping));
+            fail();
+        } catch (IOException e) {
+            //expected
+        }
+
+        //A huge size followed by no ranges runs out of input rather than memory.
+        ByteArrayOutputStream truncated = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(truncated);
+        out.writeByte(RangeSetCodec.VERSION);
+        EndpointCodecs.writeUnsignedVarLong(out, Integer.MAX_VALUE);
+        out.writeByte(0);
+        try {
+            codec.fromBytes(truncated.toByteArray());
+            fail();
+        } catch (EOFException e) {
+            //expected
+        }
+    }
+}
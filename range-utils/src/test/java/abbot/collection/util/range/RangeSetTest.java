@@ -6,15 +6,29 @@ import com.google.common.collect.Ranges;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Random;
 
 import static com.google.common.collect.BoundType.CLOSED;
 import static com.google.common.collect.BoundType.OPEN;
+import static com.google.common.collect.Iterables.elementsEqual;
+import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Ranges.*;
+import static java.util.Arrays.asList;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static junit.framework.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
 public class RangeSetTest {
 
@@ -124,6 +138,406 @@ public class RangeSetTest {
         System.out.println(rangeSet);
     }
 
+    @Test
+    public void testBulkAddAndRemove() {
+        Random random = new Random(3);
+        ArrayList<Range<Integer>> toAdd = new ArrayList<Range<Integer>>();
+        ArrayList<Range<Integer>> toRemove = new ArrayList<Range<Integer>>();
+        for (int i = 0; i < 5000; i++) {
+            int lower = random.nextInt(20000);
+            toAdd.add(closed(lower, lower + random.nextInt(10)));
+            lower = random.nextInt(20000);
+            toRemove.add(closedOpen(lower, lower + random.nextInt(5)));
+        }
+
+        TreeRangeSet<Integer> expected = new DiscreteTreeRangeSet<Integer>(DiscreteDomains.integers());
+        for (Range<Integer> range : toAdd)
+            expected.add(range);
+
+        //TreeRangeSet.equals only compares lower bounds, so compare the ranges themselves.
+        TreeRangeSet<Integer> rangeSet = new DiscreteTreeRangeSet<Integer>(DiscreteDomains.integers());
+        assertTrue(rangeSet.addAll(toAdd));
+        assertTrue(elementsEqual(expected, rangeSet));
+        assertFalse(rangeSet.addAll(toAdd));
+        assertTrue(elementsEqual(expected, RangeSets.copyOf(DiscreteDomains.integers(), toAdd)));
+
+        for (Range<Integer> range : toRemove)
+            expected.remove(range);
+
+        assertTrue(rangeSet.removeAll(toRemove));
+        assertTrue(elementsEqual(expected, rangeSet));
+        assertFalse(rangeSet.removeAll(toRemove));
+
+        //small batches are applied one range at a time.
+        rangeSet.removeAll(toAdd.subList(0, 10));
+        for (Range<Integer> range : toAdd.subList(0, 10))
+            expected.remove(range);
+        assertTrue(elementsEqual(expected, rangeSet));
+    }
+
+    @Test
+    public void testSnapshot() {
+        Random random = new Random(11);
+        TreeRangeSet<Integer> rangeSet = new DiscreteTreeRangeSet<Integer>(DiscreteDomains.integers());
+        for (int i = 0; i < 500; i++) {
+            int lower = random.nextInt(5000);
+            rangeSet.add(range(
+                    lower, (random.nextBoolean() ? CLOSED : OPEN),
+                    lower + 1 + random.nextInt(10), (random.nextBoolean() ? CLOSED : OPEN)
+            ));
+        }
+
+        ImmutableRangeSet<Integer> snapshot = rangeSet.snapshot();
+        assertEquals(rangeSet.asSet(), snapshot.asSet());
+        assertEquals(snapshot, ImmutableRangeSet.copyOf(rangeSet));
+        assertEquals(rangeSet.complement().asSet(), snapshot.complement().asSet());
+
+        for (int i = -5; i < 5020; i++) {
+            assertEquals(rangeSet.contains(i), snapshot.contains(i));
+            assertEquals(rangeSet.encloses(open(i, i + 3)), snapshot.encloses(open(i, i + 3)));
+        }
+
+        //copies of other canonicalizing sets keep their domain, so (a - 1, b) is read as the held range [a, b).
+        ConcurrentRangeSet<Integer> concurrent = new ConcurrentRangeSet<Integer>(rangeSet);
+        ShardedRangeSet<Integer> sharded = new ShardedRangeSet<Integer>(DiscreteDomains.integers(), asList(2500));
+        sharded.addAll(rangeSet);
+        Range<Integer> first = rangeSet.iterator().next();
+        Range<Integer> probe = open(first.lowerEndpoint() - 1, first.upperEndpoint());
+        assertTrue(ImmutableRangeSet.copyOf(concurrent).encloses(probe));
+        assertTrue(ImmutableRangeSet.copyOf(sharded).encloses(probe));
+        assertEquals(snapshot.asSet(), ImmutableRangeSet.copyOf(sharded).asSet());
+
+        rangeSet.clear();
+        assertFalse(snapshot.isEmpty());
+
+        try {
+            snapshot.add(closed(1, 2));
+            fail();
+        } catch (UnsupportedOperationException ignored) {}
+    }
+
+    /**
+     * An endpoint which counts how many times endpoints are compared.
+     */
+    private static final class CountingEndpoint implements Comparable<CountingEndpoint>, Serializable {
+        static long comparisons;
+        final int value;
+
+        CountingEndpoint(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public int compareTo(CountingEndpoint o) {
+            comparisons++;
+            return (value < o.value ? -1 : (value == o.value ? 0 : 1));
+        }
+    }
+
+    @Test
+    public void testBulkLoadIsLinear() throws Exception {
+        int size = 1 << 14;
+        List<Range<CountingEndpoint>> ranges = new ArrayList<Range<CountingEndpoint>>(size);
+        for (int i = 0; i < size; i++)
+            ranges.add(closedOpen(new CountingEndpoint(i * 3), new CountingEndpoint(i * 3 + 1)));
+
+        //building the tree from sorted ranges must not compare them at all, as inserting them one by one would.
+        CountingEndpoint.comparisons = 0;
+        TreeRangeSet<CountingEndpoint> rangeSet = new TreeRangeSet<CountingEndpoint>();
+        rangeSet.loadSorted(ranges.iterator());
+        assertEquals(0, CountingEndpoint.comparisons);
+        assertEquals(size, rangeSet.size());
+
+        //materializing the complement costs no more than generating its gaps.
+        CountingEndpoint.comparisons = 0;
+        List<Range<CountingEndpoint>> gaps = newArrayList(rangeSet.complement());
+        long generating = CountingEndpoint.comparisons;
+        CountingEndpoint.comparisons = 0;
+        TreeRangeSet<CountingEndpoint> materialized = rangeSet.complement().materialize();
+        assertEquals(generating, CountingEndpoint.comparisons);
+        assertTrue(elementsEqual(gaps, materialized));
+
+        //deserializing rebuilds the tree through the same path.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(rangeSet);
+        out.close();
+        CountingEndpoint.comparisons = 0;
+        Object copy = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(0, CountingEndpoint.comparisons);
+        assertTrue(elementsEqual(rangeSet, (TreeRangeSet<?>) copy));
+    }
+
+    @Test
+    public void testComplementView() {
+        TreeRangeSet<Integer> rangeSet = new DiscreteTreeRangeSet<Integer>(DiscreteDomains.integers());
+        ComplementRangeSet<Integer> complement = rangeSet.complement();
+
+        assertEquals(1, complement.size());
+        assertTrue(complement.encloses(Ranges.<Integer>all()));
+
+        rangeSet.add(closed(3, 9));
+        rangeSet.add(closed(13, 19));
+        rangeSet.add(atLeast(90));
+        assertEquals(3, complement.size());
+        assertEquals(complement.size(), complement.asSet().size());
+        assertFalse(complement.contains(5));
+        assertTrue(complement.contains(10));
+        assertTrue(complement.encloses(closed(10, 12)));
+        assertFalse(complement.encloses(closed(10, 13)));
+
+        TreeRangeSet<Integer> materialized = complement.materialize();
+        assertEquals(new DiscreteTreeRangeSet<Integer>(DiscreteDomains.integers()).getClass(), materialized.getClass());
+        assertEquals(materialized.asSet(), complement.asSet());
+
+        //the view is read only, so it can not be mistaken for an independent copy.
+        try {
+            complement.add(closed(3, 4));
+            fail();
+        } catch (UnsupportedOperationException ignored) {}
+        try {
+            complement.clear();
+            fail();
+        } catch (UnsupportedOperationException ignored) {}
+        assertTrue(rangeSet.contains(4));
+
+        materialized.add(closed(3, 4));
+        assertTrue(rangeSet.contains(4));
+        assertTrue(materialized.contains(12) && materialized.contains(4));
+
+        rangeSet.add(atMost(Integer.MIN_VALUE + 1));
+        assertEquals(3, complement.size());
+        assertSame(rangeSet, complement.complement());
+
+        rangeSet.add(Ranges.<Integer>all());
+        assertEquals(0, complement.size());
+        assertFalse(complement.iterator().hasNext());
+    }
+
+    @Test
+    public void testWindowedQueries() {
+        Random random = new Random(17);
+        TreeRangeSet<Integer> rangeSet = new DiscreteTreeRangeSet<Integer>(DiscreteDomains.integers());
+        LongRangeSet longRangeSet = new LongRangeSet();
+        for (int i = 0; i < 300; i++) {
+            int lower = random.nextInt(3000);
+            Range<Integer> range = range(
+                    lower, (random.nextBoolean() ? CLOSED : OPEN),
+                    lower + 1 + random.nextInt(10), (random.nextBoolean() ? CLOSED : OPEN)
+            );
+            rangeSet.add(range);
+            longRangeSet.add(range(
+                    (long) range.lowerEndpoint(), range.lowerBoundType(),
+                    (long) range.upperEndpoint(), range.upperBoundType()
+            ));
+        }
+        ImmutableRangeSet<Integer> snapshot = rangeSet.snapshot();
+
+        for (int i = -5; i < 3020; i++) {
+            Range<Integer> containing = null;
+            for (Range<Integer> range : rangeSet)
+                if (range.contains(i))
+                    containing = range;
+
+            assertEquals(containing, rangeSet.rangeContaining(i));
+            assertEquals(containing, snapshot.rangeContaining(i));
+            assertEquals(containing != null, longRangeSet.rangeContaining((long) i) != null);
+
+            Range<Integer> window = open(i, i + 4);
+            boolean intersects = false;
+            for (int j = i + 1; j < i + 4; j++)
+                intersects |= rangeSet.contains(j);
+
+            assertEquals(intersects, rangeSet.intersects(window));
+            assertEquals(intersects, snapshot.intersects(window));
+            assertEquals(intersects, longRangeSet.intersects(open((long) i, (long) i + 4)));
+            assertEquals(!rangeSet.encloses(window), rangeSet.complement().intersects(window));
+        }
+
+        assertEquals(rangeSet.asSet().first().span(rangeSet.asSet().last()), rangeSet.span());
+        assertEquals(rangeSet.span(), snapshot.span());
+        assertEquals(rangeSet.span(), new ConcurrentRangeSet<Integer>(rangeSet).span());
+        try {
+            new TreeRangeSet<Integer>().span();
+            fail();
+        } catch (NoSuchElementException ignored) {}
+    }
+
+    @Test
+    public void testSubRangeSet() {
+        Random random = new Random(19);
+        TreeRangeSet<Integer> rangeSet = new DiscreteTreeRangeSet<Integer>(DiscreteDomains.integers());
+        for (int i = 0; i < 300; i++) {
+            int lower = random.nextInt(3000);
+            rangeSet.add(closed(lower, lower + random.nextInt(10)));
+        }
+
+        for (int i = 0; i < 200; i++) {
+            int lower = random.nextInt(3100) - 50;
+            Range<Integer> window = closedOpen(lower, lower + random.nextInt(200));
+
+            TreeRangeSet<Integer> expected = new DiscreteTreeRangeSet<Integer>(DiscreteDomains.integers());
+            expected.add(rangeSet);
+            expected.remove(lessThan(window.lowerEndpoint()));
+            expected.remove(atLeast(window.upperEndpoint()));
+
+            RangeSet<Integer> view = rangeSet.subRangeSet(window);
+            assertEquals(expected.asSet(), new HashSet<Range<Integer>>(view.asSet()));
+            assertEquals(expected.size(), view.size());
+            assertEquals(expected.isEmpty(), view.isEmpty());
+            assertEquals(expected.asSet(), new HashSet<Range<Integer>>(rangeSet.snapshot().subRangeSet(window).asSet()));
+            for (int j = lower - 5; j < window.upperEndpoint() + 5; j++) {
+                assertEquals(expected.contains(j), view.contains(j));
+                assertEquals(expected.rangeContaining(j), view.rangeContaining(j));
+            }
+        }
+
+        //changes are visible through the view and written through to the backing set.
+        RangeSet<Integer> view = rangeSet.subRangeSet(closed(5000, 5100));
+        assertTrue(view.isEmpty());
+        rangeSet.add(closed(4990, 5010));
+        assertEquals(closed(5000, 5010).canonical(DiscreteDomains.integers()), view.span());
+
+        view.add(closed(5050, 5060));
+        assertTrue(rangeSet.encloses(closed(5050, 5060)));
+        try {
+            view.add(closed(5090, 5110));
+            fail();
+        } catch (IllegalArgumentException ignored) {}
+
+        view.clear();
+        assertTrue(view.isEmpty());
+        assertTrue(rangeSet.encloses(closed(4990, 4999)));
+        assertFalse(rangeSet.contains(5000));
+    }
+
+    private static Range<Long> expectedGap(TreeRangeSet<Long> rangeSet, long size) {
+        for (Range<Long> gap : rangeSet.complement()) {
+            if (!gap.hasLowerBound())
+                continue;
+
+            long gapSize = (gap.hasUpperBound() ? gap.upperEndpoint() - gap.lowerEndpoint() : Long.MAX_VALUE);
+            if (gapSize >= size)
+                return gap;
+        }
+        return null;
+    }
+
+    @Test
+    public void testGapAllocation() {
+        Random random = new Random(23);
+        DiscreteTreeRangeSet<Long> allocated = new DiscreteTreeRangeSet<Long>(DiscreteDomains.longs());
+        allocated.add(lessThan(0L));
+        assertEquals(atLeast(0L), allocated.nextGapOfAtLeast(1));
+
+        for (int i = 0; i < 3000; i++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    long lower = random.nextInt(20000);
+                    allocated.remove(closedOpen(lower, lower + random.nextInt(20)));
+                    break;
+                case 1:
+                    lower = random.nextInt(20000);
+                    allocated.add(closedOpen(lower, lower + random.nextInt(5)));
+                    break;
+                default:
+                    long size = 1 + random.nextInt(8);
+                    Range<Long> gap = expectedGap(allocated, size);
+                    assertEquals(gap, allocated.nextGapOfAtLeast(size));
+
+                    Range<Long> block = allocated.allocate(size);
+                    assertEquals(closedOpen(gap.lowerEndpoint(), gap.lowerEndpoint() + size), block);
+                    assertTrue(allocated.encloses(block));
+            }
+
+            long value = random.nextInt(20100);
+            Range<Long> expected = null;
+            for (Range<Long> gap : allocated.complement()) {
+                if (gap.contains(value)) {
+                    expected = gap.intersection(atLeast(value)).canonical(DiscreteDomains.longs());
+                    break;
+                }
+                if (gap.lowerEndpoint() > value) {
+                    expected = gap;
+                    break;
+                }
+            }
+            assertEquals(expected, allocated.firstGapAtOrAfter(value));
+        }
+
+        //bulk operations discard the index, which is rebuilt on the next query.
+        allocated.addAll(allocated.complement().materialize().asSet());
+        assertNull(allocated.nextGapOfAtLeast(1));
+        assertNull(allocated.allocate(1));
+        assertNull(allocated.firstGapAtOrAfter(5L));
+
+        allocated.clear();
+        assertEquals(closedOpen(Long.MIN_VALUE, Long.MIN_VALUE + 3), allocated.allocate(3));
+        assertEquals(atLeast(Long.MIN_VALUE + 3), allocated.nextGapOfAtLeast(Long.MAX_VALUE));
+
+        //large blocks are computed directly rather than by stepping through every value.
+        assertEquals(closedOpen(Long.MIN_VALUE + 3, 2L), allocated.allocate(Long.MAX_VALUE));
+        assertEquals(closedOpen(2L, Long.MAX_VALUE), allocated.allocate(Long.MAX_VALUE - 2));
+        DiscreteTreeRangeSet<Integer> integers = new DiscreteTreeRangeSet<Integer>(DiscreteDomains.integers());
+        assertEquals(closedOpen(Integer.MIN_VALUE, -1), integers.allocate(Integer.MAX_VALUE));
+        assertEquals(closedOpen(-1, Integer.MAX_VALUE), integers.allocate(Integer.MAX_VALUE + 1L));
+
+        try {
+            allocated.allocate(0);
+            fail();
+        } catch (IllegalArgumentException ignored) {}
+    }
+
+    private static int lookups(TreeRangeSet<Integer> rangeSet, Integer[] items, Range<Integer>[] windows) {
+        int found = 0;
+        for (Integer item : items) {
+            if (rangeSet.contains(item))
+                found++;
+            if (rangeSet.rangeContaining(item) != null)
+                found++;
+        }
+        for (Range<Integer> window : windows) {
+            if (rangeSet.encloses(window))
+                found++;
+            if (rangeSet.intersects(window))
+                found++;
+        }
+        return found;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testLookupsDoNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        TreeRangeSet<Integer> rangeSet = new TreeRangeSet<Integer>();
+        for (int i = 0; i < 1000; i++)
+            rangeSet.add(closedOpen(i * 10, i * 10 + 5));
+
+        Integer[] items = new Integer[10000];
+        Range<Integer>[] windows = new Range[10000];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = i;
+            windows[i] = closedOpen(i, i + 3);
+        }
+
+        //Warm up first so class loading and compilation are not measured.
+        for (int i = 0; i < 20; i++)
+            lookups(rangeSet, items, windows);
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        int found = lookups(rangeSet, items, windows);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        //Reading the counter may allocate a few bytes itself, which is far less than a byte per lookup.
+        assertTrue(found > 0);
+        assertTrue("Allocated " + allocated + " bytes for 40000 lookups", allocated < 1024);
+    }
+
     @Ignore
     @Test
     public void speedTest() {
@@ -0,0 +1,242 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.DiscreteDomains;
+import com.google.common.collect.Range;
+import com.google.common.collect.Ranges;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.google.common.collect.BoundType.CLOSED;
+import static com.google.common.collect.BoundType.OPEN;
+import static com.google.common.collect.Iterables.elementsEqual;
+import static com.google.common.collect.Ranges.*;
+import static java.util.Arrays.asList;
+import static junit.framework.Assert.*;
+
+public class RangeSetsTest {
+
+    private static final int MAX_VALUE = 500;
+
+    private static RangeSet<Integer> randomRangeSet(Random random, int numRanges) {
+        RangeSet<Integer> rangeSet = new TreeRangeSet<Integer>();
+        for (int i = 0; i < numRanges; i++) {
+            int lower = random.nextInt(MAX_VALUE);
+            rangeSet.add(range(
+                    lower, (random.nextBoolean() ? CLOSED : OPEN),
+                    lower + 1 + random.nextInt(10), (random.nextBoolean() ? CLOSED : OPEN)
+            ));
+        }
+        if (random.nextInt(4) == 0)
+            rangeSet.add(lessThan(-random.nextInt(5)));
+        if (random.nextInt(4) == 0)
+            rangeSet.add(atLeast(MAX_VALUE + random.nextInt(5)));
+
+        return rangeSet;
+    }
+
+    private static void assertCoalesced(RangeSet<Integer> rangeSet) {
+        Range<Integer> previous = null;
+        for (Range<Integer> range : rangeSet) {
+            assertFalse(range.isEmpty());
+            if (previous != null) {
+                assertTrue(RangeComparators.upperOnlyComparator().compare(previous, range) < 0);
+                assertFalse(previous.isConnected(range));
+            }
+            previous = range;
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSetAlgebra() {
+        Random random = new Random(7);
+        for (int run = 0; run < 200; run++) {
+            RangeSet<Integer> first = randomRangeSet(random, random.nextInt(40));
+            RangeSet<Integer> second = randomRangeSet(random, random.nextInt(40));
+            RangeSet<Integer> third = randomRangeSet(random, random.nextInt(40));
+
+            RangeSet<Integer> union = RangeSets.union(first, second, third);
+            RangeSet<Integer> intersection = RangeSets.intersection(first, second, third);
+            RangeSet<Integer> difference = RangeSets.difference(first, second);
+            RangeSet<Integer> symmetricDifference = RangeSets.symmetricDifference(first, second);
+            RangeSet<Integer> discreteUnion = RangeSets.union(DiscreteDomains.integers(), first, second, third);
+            RangeSet<Integer> discreteIntersection = RangeSets.intersection(DiscreteDomains.integers(), first, second, third);
+
+            for (RangeSet<Integer> result : asList(union, intersection, difference, symmetricDifference, discreteUnion, discreteIntersection))
+                assertCoalesced(result);
+
+            //Probe every integer, and use the open range between integers to probe the non integer values.
+            for (int i = -10; i < MAX_VALUE + 20; i++) {
+                boolean a = first.contains(i);
+                boolean b = second.contains(i);
+                boolean c = third.contains(i);
+
+                assertEquals(a || b || c, union.contains(i));
+                assertEquals(a && b && c, intersection.contains(i));
+                assertEquals(a && !b, difference.contains(i));
+                assertEquals(a ^ b, symmetricDifference.contains(i));
+                assertEquals(a || b || c, discreteUnion.contains(i));
+                assertEquals(a && b && c, discreteIntersection.contains(i));
+
+                Range<Integer> gap = open(i, i + 1);
+                boolean gapA = first.encloses(gap);
+                boolean gapB = second.encloses(gap);
+                boolean gapC = third.encloses(gap);
+                assertEquals(gapA && gapB && gapC, intersection.encloses(gap));
+                assertEquals(gapA && !gapB, difference.encloses(gap));
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testViews() {
+        Random random = new Random(13);
+        for (int run = 0; run < 100; run++) {
+            RangeSet<Integer> first = randomRangeSet(random, random.nextInt(40));
+            RangeSet<Integer> second = randomRangeSet(random, random.nextInt(40));
+            RangeSet<Integer> third = randomRangeSet(random, random.nextInt(40));
+
+            RangeSet<Integer> unionView = RangeSets.unionView(first, second, third);
+            RangeSet<Integer> intersectionView = RangeSets.intersectionView(first, second, third);
+            RangeSet<Integer> union = RangeSets.union(first, second, third);
+            RangeSet<Integer> intersection = RangeSets.intersection(first, second, third);
+
+            assertEquals(union.asSet(), unionView.asSet());
+            assertEquals(intersection.asSet(), intersectionView.asSet());
+            assertEquals(union.complement().asSet(), unionView.complement().asSet());
+
+            for (int i = -10; i < MAX_VALUE + 20; i++) {
+                assertEquals(union.contains(i), unionView.contains(i));
+                assertEquals(intersection.contains(i), intersectionView.contains(i));
+                assertEquals(union.encloses(closed(i, i + 5)), unionView.encloses(closed(i, i + 5)));
+                assertEquals(intersection.encloses(closed(i, i + 5)), intersectionView.encloses(closed(i, i + 5)));
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testEmptyInputs() {
+        RangeSet<Integer> empty = new TreeRangeSet<Integer>();
+
+        assertTrue(RangeSets.union(empty, empty).isEmpty());
+        assertTrue(RangeSets.intersection(empty, empty).isEmpty());
+        assertTrue(RangeSets.<Integer>intersection().encloses(Ranges.<Integer>all()));
+        assertTrue(RangeSets.difference(empty, empty).isEmpty());
+        assertTrue(RangeSets.difference(RangeSets.<Integer>intersection(), empty).encloses(Ranges.<Integer>all()));
+    }
+
+    @Test
+    public void testContainsEach() {
+        Random random = new Random(11);
+        for (int trial = 0; trial < 200; trial++) {
+            RangeSet<Integer> rangeSet = randomRangeSet(random, random.nextInt(20));
+            RangeSet<Long> longRangeSet = new TreeRangeSet<Long>();
+            LongRangeSet primitive = new LongRangeSet();
+            for (Range<Integer> range : rangeSet) {
+                if (!range.hasLowerBound() || !range.hasUpperBound())
+                    continue;
+
+                Range<Long> widened = range(
+                        (long) range.lowerEndpoint(), range.lowerBoundType(),
+                        (long) range.upperEndpoint(), range.upperBoundType()
+                );
+                longRangeSet.add(widened);
+                primitive.add(widened);
+            }
+
+            List<Integer> items = new ArrayList<Integer>();
+            long[] values = new long[random.nextInt(50)];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = random.nextInt(MAX_VALUE + 20) - 10;
+                items.add((int) values[i]);
+            }
+            if (random.nextBoolean()) {
+                Collections.sort(items);
+                Arrays.sort(values);
+            }
+
+            BitSet found = RangeSets.containsEach(rangeSet, items);
+            BitSet foundLongs = RangeSets.containsEach(longRangeSet, values);
+            BitSet foundPrimitive = RangeSets.containsEach(primitive, values);
+            for (int i = 0; i < items.size(); i++) {
+                assertEquals(rangeSet.contains(items.get(i)), found.get(i));
+                assertEquals(longRangeSet.contains(values[i]), foundLongs.get(i));
+                assertEquals(primitive.contains(values[i]), foundPrimitive.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testParallelUnionAndIntersection() throws InterruptedException {
+        Random random = new Random(29);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int count : new int[] {0, 1, 3, 50, 300}) {
+                List<RangeSet<Integer>> rangeSets = new ArrayList<RangeSet<Integer>>();
+                List<RangeSet<Integer>> complements = new ArrayList<RangeSet<Integer>>();
+                for (int i = 0; i < count; i++) {
+                    RangeSet<Integer> rangeSet = randomRangeSet(random, random.nextInt(20));
+                    rangeSets.add(rangeSet);
+                    //the complements of sparse sets overlap heavily, so their intersection is rarely empty.
+                    complements.add(RangeSets.copyOf(rangeSet.complement()));
+                }
+
+                for (int threshold : new int[] {2, 7, 1000}) {
+                    //TreeRangeSet.equals only compares lower bounds, so compare the ranges themselves.
+                    assertTrue(elementsEqual(RangeSets.union(rangeSets), RangeSets.parallelUnion(rangeSets, executor, threshold)));
+                    assertTrue(elementsEqual(
+                            RangeSets.intersection(complements),
+                            RangeSets.parallelIntersection(complements, executor, threshold)
+                    ));
+                    assertTrue(elementsEqual(
+                            RangeSets.union(DiscreteDomains.integers(), rangeSets),
+                            RangeSets.parallelUnion(DiscreteDomains.integers(), rangeSets, executor, threshold)
+                    ));
+                    assertTrue(elementsEqual(
+                            RangeSets.intersection(DiscreteDomains.integers(), complements),
+                            RangeSets.parallelIntersection(DiscreteDomains.integers(), complements, executor, threshold)
+                    ));
+                }
+            }
+
+            try {
+                RangeSets.parallelUnion(new ArrayList<RangeSet<Integer>>(), executor, 1);
+                fail();
+            } catch (IllegalArgumentException ignored) {}
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPartition() {
+        Random random = new Random(37);
+        RangeSet<Integer> rangeSet = new TreeRangeSet<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            int lower = random.nextInt(100000);
+            rangeSet.add(closed(lower, lower + random.nextInt(10)));
+        }
+
+        List<ImmutableRangeSet<Integer>> partitions = RangeSets.partition(rangeSet, 7);
+        assertEquals(7, partitions.size());
+
+        List<Range<Integer>> ranges = new ArrayList<Range<Integer>>();
+        for (ImmutableRangeSet<Integer> partition : partitions) {
+            assertTrue(Math.abs(partition.size() - rangeSet.size() / 7) <= 1);
+            for (Range<Integer> range : partition)
+                ranges.add(range);
+        }
+        assertEquals(new ArrayList<Range<Integer>>(rangeSet.asSet()), ranges);
+        assertEquals(0, RangeSets.partition(new TreeRangeSet<Integer>(), 4).size());
+    }
+}
@@ -0,0 +1,111 @@
+package abbot.collection.util.range;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import static com.google.common.collect.Iterables.elementsEqual;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Ranges.closedOpen;
+import static java.util.Arrays.asList;
+import static junit.framework.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class SequenceTrackerTest {
+
+    @Test
+    public void simpleTest() {
+        SequenceTracker tracker = new SequenceTracker(1);
+        assertEquals(0, tracker.contiguousWatermark());
+
+        assertTrue(tracker.ack(2));
+        assertTrue(tracker.ack(5));
+        assertTrue(tracker.ackRange(7, 10));
+        assertFalse(tracker.ack(8));
+        assertEquals(0, tracker.contiguousWatermark());
+        assertEquals(3, tracker.pendingRanges());
+        assertEquals(asList(closedOpen(1L, 2L), closedOpen(3L, 5L), closedOpen(6L, 7L)), newArrayList(tracker.missing(10)));
+        assertEquals(asList(closedOpen(1L, 2L)), newArrayList(tracker.missing(1)));
+
+        assertTrue(tracker.ack(1));
+        assertEquals(2, tracker.contiguousWatermark());
+        assertTrue(tracker.ackRange(3, 7));
+        assertEquals(9, tracker.contiguousWatermark());
+        assertEquals(0, tracker.pendingRanges());
+        assertTrue(tracker.isAcked(4));
+        assertFalse(tracker.isAcked(10));
+        assertFalse(tracker.ack(9));
+
+        assertTrue(tracker.ackRange(Long.MAX_VALUE - 5, Long.MAX_VALUE));
+        assertTrue(tracker.ack(Long.MAX_VALUE));
+        assertTrue(tracker.ackRange(10, Long.MAX_VALUE - 5));
+        assertEquals(Long.MAX_VALUE, tracker.contiguousWatermark());
+        assertEquals(0, tracker.pendingRanges());
+    }
+
+    @Test
+    public void testMatchesLongRangeSet() {
+        Random random = new Random(53);
+        SequenceTracker tracker = new SequenceTracker();
+        LongRangeSet acked = new LongRangeSet();
+        for (int i = 0; i < 20000; i++) {
+            long watermark = tracker.contiguousWatermark();
+            long lower = watermark + 1 - random.nextInt(5) + random.nextInt(100);
+            boolean modified;
+            if (random.nextBoolean()) {
+                long upper = lower + random.nextInt(8);
+                modified = tracker.ackRange(lower, upper);
+                assertEquals(acked.add(Math.max(lower, 0), Math.max(upper, 0)), modified);
+            } else {
+                modified = tracker.ack(lower);
+                assertEquals(lower >= 0 && acked.add(lower, lower + 1), modified);
+            }
+
+            long expected = (acked.contains(0L) ? acked.rangeContaining(0L).upperEndpoint() - 1 : -1);
+            assertEquals(expected, tracker.contiguousWatermark());
+            assertEquals(Math.max(acked.size() - (expected >= 0 ? 1 : 0), 0), tracker.pendingRanges());
+
+            LongRangeSet missing = new LongRangeSet();
+            if (!acked.isEmpty())
+                missing.add(closedOpen(0L, acked.span().upperEndpoint()));
+            missing.removeAll(acked);
+            assertTrue(elementsEqual(missing, tracker.missing(Integer.MAX_VALUE)));
+
+            long probe = watermark + random.nextInt(120) - 10;
+            assertEquals(probe < 0 || acked.contains(probe), tracker.isAcked(probe));
+        }
+    }
+
+    @Test
+    public void testAcksDoNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        //Swap neighbouring pairs so every other ack arrives early and has to wait above the watermark.
+        long[] sequences = new long[100000];
+        for (int i = 0; i < sequences.length; i++)
+            sequences[i] = (i % 2 == 0 ? i + 1 : i - 1);
+
+        //Warm up first so class loading and compilation are not measured.
+        SequenceTracker tracker = new SequenceTracker();
+        for (int i = 0; i < 20; i++) {
+            tracker.reset(0);
+            for (long sequence : sequences)
+                tracker.ack(sequence);
+        }
+
+        tracker.reset(0);
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (long sequence : sequences)
+            tracker.ack(sequence);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(sequences.length - 1, tracker.contiguousWatermark());
+        assertTrue("Allocated " + allocated + " bytes for " + sequences.length + " acks", allocated < 1024);
+    }
+}
@@ -0,0 +1,111 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.Range;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static com.google.common.collect.BoundType.CLOSED;
+import static com.google.common.collect.BoundType.OPEN;
+import static com.google.common.collect.Ranges.*;
+import static junit.framework.Assert.*;
+
+public class TreeRangeMapTest {
+
+    private static final int MAX_VALUE = 200;
+
+    @Test
+    public void simpleTest() {
+        RangeMap<Integer, String> rangeMap = new TreeRangeMap<Integer, String>();
+        rangeMap.put(closed(1, 10), "a");
+        rangeMap.put(closed(4, 6), "b");
+        assertEquals(3, rangeMap.size());
+        assertEquals("a", rangeMap.get(3));
+        assertEquals("b", rangeMap.get(4));
+        assertEquals("a", rangeMap.get(7));
+        assertEquals(closedOpen(1, 4), rangeMap.getEntry(1).getKey());
+        assertNull(rangeMap.get(11));
+
+        //Putting the original value back merges everything into a single range.
+        rangeMap.put(closed(4, 6), "a");
+        assertEquals(1, rangeMap.size());
+        assertEquals(closed(1, 10), rangeMap.span());
+
+        rangeMap.put(openClosed(10, 20), "a");
+        assertEquals(1, rangeMap.size());
+        assertEquals(closed(1, 20), rangeMap.span());
+
+        rangeMap.remove(open(5, 15));
+        assertEquals(2, rangeMap.size());
+        assertEquals("a", rangeMap.get(5));
+        assertNull(rangeMap.get(6));
+        assertEquals("a", rangeMap.get(15));
+        System.out.println(rangeMap);
+    }
+
+    @Test
+    public void testMatchesArray() {
+        Random random = new Random(31);
+        RangeMap<Integer, Integer> rangeMap = new TreeRangeMap<Integer, Integer>();
+        Integer[] expected = new Integer[MAX_VALUE];
+        for (int i = 0; i < 2000; i++) {
+            int lower = random.nextInt(MAX_VALUE);
+            int upper = Math.min(MAX_VALUE - 1, lower + random.nextInt(20));
+            Range<Integer> range = range(lower, CLOSED, upper, (upper > lower && random.nextBoolean() ? OPEN : CLOSED));
+            Integer value = (random.nextInt(4) == 0 ? null : random.nextInt(3));
+
+            if (value == null)
+                rangeMap.remove(range);
+            else
+                rangeMap.put(range, value);
+
+            for (int key = lower; key <= upper; key++)
+                if (range.contains(key))
+                    expected[key] = value;
+
+            for (int key = 0; key < MAX_VALUE; key++)
+                assertEquals(expected[key], rangeMap.get(key));
+
+            //Connected ranges must never map to the same value.
+            Map.Entry<Range<Integer>, Integer> previous = null;
+            for (Map.Entry<Range<Integer>, Integer> entry : rangeMap.asMap().entrySet()) {
+                if (previous != null && previous.getKey().isConnected(entry.getKey()))
+                    assertFalse(previous.getValue().equals(entry.getValue()));
+                previous = entry;
+            }
+        }
+    }
+
+    @Test
+    public void testSubRangeMap() {
+        RangeMap<Integer, String> rangeMap = new TreeRangeMap<Integer, String>();
+        rangeMap.put(closed(1, 10), "a");
+        rangeMap.put(closed(20, 30), "b");
+
+        RangeMap<Integer, String> sub = rangeMap.subRangeMap(closed(5, 25));
+        assertEquals(2, sub.size());
+        assertEquals(closed(5, 10), sub.asMap().keySet().iterator().next());
+        assertEquals(closed(5, 25), sub.span());
+        assertNull(sub.get(2));
+        assertEquals("b", sub.get(25));
+
+        sub.put(open(10, 20), "a");
+        assertEquals(2, rangeMap.size());
+        assertEquals(closedOpen(1, 20), rangeMap.getEntry(15).getKey());
+
+        try {
+            sub.put(closed(0, 3), "c");
+            fail();
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+
+        sub.clear();
+        assertTrue(sub.isEmpty());
+        assertEquals(2, rangeMap.size());
+        assertEquals(closedOpen(1, 5), rangeMap.getEntry(1).getKey());
+        assertEquals(openClosed(25, 30), rangeMap.getEntry(30).getKey());
+        assertTrue(sub.subRangeMap(closed(40, 50)).isEmpty());
+    }
+}
@@ -0,0 +1,129 @@
+package abbot.collection.util.range;
+
+import com.google.common.collect.DiscreteDomains;
+import com.google.common.collect.Range;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static abbot.collection.util.range.WatermarkRangeSet.EvictionCause;
+import static abbot.collection.util.range.WatermarkRangeSet.EvictionListener;
+import static com.google.common.collect.Iterables.elementsEqual;
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Ranges.*;
+import static java.util.Arrays.asList;
+import static junit.framework.Assert.*;
+
+public class WatermarkRangeSetTest {
+
+    private static class RecordingListener implements EvictionListener<Long> {
+        final List<Range<Long>> evicted = new ArrayList<Range<Long>>();
+        final List<EvictionCause> causes = new ArrayList<EvictionCause>();
+
+        @Override
+        public void evicted(Range<Long> range, EvictionCause cause) {
+            evicted.add(range);
+            causes.add(cause);
+        }
+    }
+
+    @Test
+    public void simpleTest() {
+        RecordingListener listener = new RecordingListener();
+        WatermarkRangeSet<Long> rangeSet = new WatermarkRangeSet<Long>(DiscreteDomains.longs(), Integer.MAX_VALUE, Long.MAX_VALUE, listener);
+        rangeSet.add(closed(1L, 5L));
+        rangeSet.add(closed(10L, 15L));
+        rangeSet.add(closed(20L, 25L));
+
+        assertTrue(rangeSet.advanceWatermark(12L));
+        assertEquals(12L, (long) rangeSet.watermark());
+        assertEquals(asList(closedOpen(12L, 16L), closedOpen(20L, 26L)), newArrayList(rangeSet));
+        assertEquals(asList(closedOpen(1L, 6L), closedOpen(10L, 12L)), listener.evicted);
+        listener.evicted.clear();
+        assertEquals(asList(EvictionCause.WATERMARK, EvictionCause.WATERMARK), listener.causes);
+
+        //Late values are clipped to the watermark, and the watermark never moves back.
+        assertFalse(rangeSet.add(closed(3L, 8L)));
+        assertTrue(rangeSet.add(closed(8L, 17L)));
+        assertEquals(asList(closedOpen(12L, 18L), closedOpen(20L, 26L)), newArrayList(rangeSet));
+        assertFalse(rangeSet.advanceWatermark(5L));
+        assertTrue(rangeSet.advanceWatermark(21L));
+        assertEquals(21L, (long) rangeSet.watermark());
+        assertEquals(asList(closedOpen(21L, 26L)), newArrayList(rangeSet));
+        assertEquals(asList(closedOpen(12L, 18L), closedOpen(20L, 21L)), listener.evicted);
+    }
+
+    @Test
+    public void testEvictionPolicies() {
+        RecordingListener listener = new RecordingListener();
+        WatermarkRangeSet<Long> bySize = new WatermarkRangeSet<Long>(DiscreteDomains.longs(), 2, Long.MAX_VALUE, listener);
+        bySize.add(closed(1L, 2L));
+        bySize.add(closed(4L, 5L));
+        bySize.add(closed(7L, 8L));
+        assertEquals(asList(closedOpen(4L, 6L), closedOpen(7L, 9L)), newArrayList(bySize));
+        assertEquals(asList(closedOpen(1L, 3L)), listener.evicted);
+        assertEquals(asList(EvictionCause.SIZE), listener.causes);
+        assertEquals(3L, (long) bySize.watermark());
+        assertFalse(bySize.add(closed(1L, 2L)));
+
+        //Splitting a range on remove does not evict anything, even though the set now holds more than the maximum.
+        listener = new RecordingListener();
+        WatermarkRangeSet<Long> splitting = new WatermarkRangeSet<Long>(DiscreteDomains.longs(), 2, Long.MAX_VALUE, listener);
+        splitting.add(closedOpen(0L, 10L));
+        splitting.add(closedOpen(20L, 30L));
+        assertTrue(splitting.remove(closedOpen(3L, 5L)));
+        assertEquals(asList(closedOpen(0L, 3L), closedOpen(5L, 10L), closedOpen(20L, 30L)), newArrayList(splitting));
+        assertTrue(listener.evicted.isEmpty());
+        assertNull(splitting.watermark());
+
+        listener = new RecordingListener();
+        WatermarkRangeSet<Long> byAge = new WatermarkRangeSet<Long>(DiscreteDomains.longs(), Integer.MAX_VALUE, 10, listener);
+        byAge.add(closed(1L, 2L));
+        byAge.add(closed(5L, 6L));
+        byAge.add(closed(12L, 14L));
+        assertEquals(asList(closedOpen(5L, 7L), closedOpen(12L, 15L)), newArrayList(byAge));
+        assertEquals(asList(closedOpen(1L, 3L)), listener.evicted);
+        assertEquals(asList(EvictionCause.AGE), listener.causes);
+
+        try {
+            new WatermarkRangeSet<Long>(DiscreteDomains.longs(), 0, Long.MAX_VALUE, null);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void testMatchesClippedRangeSet() {
+        Random random = new Random(47);
+        RecordingListener listener = new RecordingListener();
+        WatermarkRangeSet<Long> rangeSet = new WatermarkRangeSet<Long>(DiscreteDomains.longs(), Integer.MAX_VALUE, Long.MAX_VALUE, listener);
+        RangeSet<Long> expected = new DiscreteTreeRangeSet<Long>(DiscreteDomains.longs());
+        RangeSet<Long> everything = new DiscreteTreeRangeSet<Long>(DiscreteDomains.longs());
+
+        long watermark = 0;
+        rangeSet.advanceWatermark(watermark);
+        for (int i = 0; i < 5000; i++) {
+            if (random.nextInt(10) == 0) {
+                watermark += random.nextInt(50);
+                rangeSet.advanceWatermark(watermark);
+                expected.remove(lessThan(watermark));
+            } else {
+                long lower = watermark - 20 + random.nextInt(200);
+                Range<Long> range = closedOpen(lower, lower + 1 + random.nextInt(10));
+                rangeSet.add(range);
+                everything.add(range.isConnected(atLeast(watermark)) ? range.intersection(atLeast(watermark)) : closedOpen(watermark, watermark));
+                if (range.isConnected(atLeast(watermark)))
+                    expected.add(range.intersection(atLeast(watermark)));
+            }
+            assertTrue(elementsEqual(expected, rangeSet));
+        }
+
+        //Every value that was held is either still held or was reported as evicted.
+        RangeSet<Long> seen = new DiscreteTreeRangeSet<Long>(DiscreteDomains.longs());
+        seen.addAll(rangeSet);
+        seen.addAll(listener.evicted);
+        assertTrue(elementsEqual(everything, seen));
+    }
+}